@@ -0,0 +1,323 @@
+package com.brunorozendo.mcphost.perf;
+
+import com.brunorozendo.mcphost.control.ChatController;
+import com.brunorozendo.mcphost.control.ChatOptions;
+import com.brunorozendo.mcphost.control.McpConnectionManager;
+import com.brunorozendo.mcphost.model.OllamaApi;
+import com.brunorozendo.mcphost.service.McpConfigLoader;
+import com.brunorozendo.mcphost.service.llm.ChatStreamListener;
+import com.brunorozendo.mcphost.service.llm.LlmApiClient;
+import com.brunorozendo.mcphost.service.llm.LlmApiClientFactory;
+import com.brunorozendo.mcphost.util.TerminalRenderer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the overhead mcphost adds to a chat turn, independent of model speed. {@link ChatController} sessions
+ * run in this JVM against a {@link FakeLlmServer} and a {@link FakeMcpServer}, each in a child process, so the CPU
+ * time and allocation of this process are the host's own. Every session alternates a tool-calling turn and a plain
+ * turn.
+ * <p>
+ * The load is raised level by level (e.g. 1, 2, 4, ... concurrent sessions). For each level it reports host CPU
+ * per turn, allocation rate, and the p50/p99 added latency: the turn's wall time minus the latency scripted into
+ * the fake servers. Waiting for the single-threaded MCP server counts as added latency, as it would in a real
+ * deployment. The highest level whose p99 added latency stays within {@code --slo-ms} without errors is
+ * reported as the maximum sustainable number of sessions.
+ * <p>
+ * Usage: {@code LoadTest [--provider ollama|llama-server|hf] [--sessions 1,2,4,...] [--turns N] [--llm-latency-ms N]
+ * [--tool-latency-ms N] [--payload-chars N] [--slo-ms N] [--no-stream] [--workdir DIR] [--report FILE]}
+ */
+public class LoadTest {
+
+    private static final List<String> SCRIPT = List.of("please use a tool", "hello");
+    private static final long LEVEL_TIMEOUT_MINUTES = 10;
+
+    private String provider = "ollama";
+    private List<Integer> sessionLevels = List.of(1, 2, 4, 8, 16, 32);
+    private int turnsPerSession = 10;
+    private long llmLatencyMillis = 50;
+    private long toolLatencyMillis = 20;
+    private int payloadChars = 2000;
+    private double sloMillis = 50;
+    private boolean streaming = true;
+    private Path workDir = Path.of("build", "load-test");
+    private Path reportFile;
+
+    /**
+     * The measurements of one load level.
+     */
+    record LevelResult(int sessions, int turns, int errors, double wallSeconds, double cpuMillisPerTurn,
+                       double allocatedMbPerSecond, double allocatedKbPerTurn, double p50AddedMillis,
+                       double p99AddedMillis, double turnsPerSecond) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTest loadTest = new LoadTest();
+        loadTest.parse(args);
+        System.exit(loadTest.run() ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--provider" -> provider = args[++i];
+                case "--sessions" -> sessionLevels = Arrays.stream(args[++i].split(",")).map(String::trim).map(Integer::parseInt).toList();
+                case "--turns" -> turnsPerSession = Integer.parseInt(args[++i]);
+                case "--llm-latency-ms" -> llmLatencyMillis = Long.parseLong(args[++i]);
+                case "--tool-latency-ms" -> toolLatencyMillis = Long.parseLong(args[++i]);
+                case "--payload-chars" -> payloadChars = Integer.parseInt(args[++i]);
+                case "--slo-ms" -> sloMillis = Double.parseDouble(args[++i]);
+                case "--no-stream" -> streaming = false;
+                case "--workdir" -> workDir = Path.of(args[++i]);
+                case "--report" -> reportFile = Path.of(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+    }
+
+    private boolean run() throws Exception {
+        Files.createDirectories(workDir);
+        Process llmProcess = startFakeLlmServer();
+        McpConnectionManager mcpConnectionManager = new McpConnectionManager();
+        try {
+            String baseUrl = readBaseUrl(llmProcess);
+            mcpConnectionManager.initializeClients(new McpConfigLoader().load(writeMcpConfig().toFile()));
+            if (mcpConnectionManager.getAllTools().isEmpty()) {
+                System.err.println("The fake MCP server did not start; see the log in " + workDir.resolve("logs"));
+                return false;
+            }
+            LlmApiClient llmApiClient = LlmApiClientFactory.createClient(provider + ":fake", baseUrl, null);
+
+            System.out.printf("Load test: provider=%s, streaming=%s, %d turns per session, LLM latency %d ms, tool latency %d ms, payload %d chars%n",
+                    provider, streaming, turnsPerSession, llmLatencyMillis, toolLatencyMillis, payloadChars);
+            // Warm-up: JIT compilation and connection set-up should not count against the first level
+            runLevel(1, Math.max(turnsPerSession, 10), mcpConnectionManager, llmApiClient);
+
+            List<LevelResult> results = new ArrayList<>();
+            System.out.printf("%8s %7s %6s %12s %12s %12s %12s %12s %10s%n",
+                    "sessions", "turns", "errors", "cpu ms/turn", "alloc MB/s", "alloc KB/t", "p50 added", "p99 added", "turns/s");
+            for (int sessions : sessionLevels) {
+                LevelResult result = runLevel(sessions, turnsPerSession, mcpConnectionManager, llmApiClient);
+                results.add(result);
+                System.out.printf("%8d %7d %6d %12.2f %12.1f %12.1f %9.2f ms %9.2f ms %10.1f%n",
+                        result.sessions(), result.turns(), result.errors(), result.cpuMillisPerTurn(), result.allocatedMbPerSecond(),
+                        result.allocatedKbPerTurn(), result.p50AddedMillis(), result.p99AddedMillis(), result.turnsPerSecond());
+            }
+
+            int sustainable = results.stream()
+                    .filter(result -> result.errors() == 0 && result.p99AddedMillis() <= sloMillis)
+                    .mapToInt(LevelResult::sessions).max().orElse(0);
+            System.out.printf("Maximum sustainable sessions (p99 added latency <= %.0f ms, no errors): %d%n", sloMillis, sustainable);
+            if (reportFile != null) {
+                writeReport(results, sustainable);
+            }
+            return results.stream().allMatch(result -> result.errors() == 0);
+        } finally {
+            mcpConnectionManager.closeAllClients();
+            llmProcess.destroy();
+        }
+    }
+
+    private LevelResult runLevel(int sessions, int turns, McpConnectionManager mcpConnectionManager, LlmApiClient llmApiClient) throws Exception {
+        List<Double> addedMillis = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger errors = new AtomicInteger();
+
+        List<ChatController> controllers = new ArrayList<>();
+        List<CountingClient> clients = new ArrayList<>();
+        List<TerminalRenderer> renderers = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            CountingClient client = new CountingClient(llmApiClient);
+            ChatOptions options = new ChatOptions();
+            options.setStreaming(streaming);
+            // Each session spills large tool results into its own directory
+            options.setToolResultDirectory(Files.createDirectories(workDir.resolve("results/session-" + sessions + "-" + i)));
+            TerminalRenderer renderer = new TerminalRenderer(new PrintStream(PrintStream.nullOutputStream()), 0);
+            renderers.add(renderer);
+            controllers.add(new ChatController("fake", client, mcpConnectionManager, renderer, mcpConnectionManager.getCatalog(), options));
+            clients.add(client);
+        }
+
+        com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long cpuBefore = os.getProcessCpuTime();
+        long allocatedBefore = threads.getTotalThreadAllocatedBytes();
+        long start = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < sessions; i++) {
+                ChatController controller = controllers.get(i);
+                CountingClient client = clients.get(i);
+                futures.add(executor.submit(() -> {
+                    for (int turn = 0; turn < turns; turn++) {
+                        int requestsBefore = client.requests.get();
+                        int toolCallsBefore = client.toolCalls.get();
+                        int errorsBefore = client.errors.get();
+                        long turnStart = System.nanoTime();
+                        controller.handleUserInput(SCRIPT.get(turn % SCRIPT.size()));
+                        double wallMillis = (System.nanoTime() - turnStart) / 1_000_000.0;
+                        if (client.errors.get() > errorsBefore) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        double scriptedMillis = (client.requests.get() - requestsBefore) * llmLatencyMillis
+                                + (client.toolCalls.get() - toolCallsBefore) * toolLatencyMillis;
+                        addedMillis.add(Math.max(wallMillis - scriptedMillis, 0));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(LEVEL_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            }
+        } finally {
+            renderers.forEach(TerminalRenderer::close);
+        }
+
+        double wallSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        long cpuNanos = os.getProcessCpuTime() - cpuBefore;
+        long allocatedBytes = threads.getTotalThreadAllocatedBytes() - allocatedBefore;
+        int totalTurns = sessions * turns;
+
+        List<Double> sorted = new ArrayList<>(addedMillis);
+        Collections.sort(sorted);
+        return new LevelResult(sessions, totalTurns, errors.get(), wallSeconds,
+                cpuNanos / 1_000_000.0 / totalTurns,
+                allocatedBytes / 1024.0 / 1024.0 / wallSeconds,
+                allocatedBytes / 1024.0 / totalTurns,
+                percentile(sorted, 0.50), percentile(sorted, 0.99),
+                totalTurns / wallSeconds);
+    }
+
+    private static double percentile(List<Double> sorted, double fraction) {
+        if (sorted.isEmpty()) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(fraction * sorted.size()) - 1;
+        return sorted.get(Math.min(Math.max(index, 0), sorted.size() - 1));
+    }
+
+    /**
+     * Counts the LLM requests and the tool calls they asked for, so the scripted latency can be subtracted.
+     */
+    private static final class CountingClient implements LlmApiClient {
+        private final LlmApiClient delegate;
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger toolCalls = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+
+        CountingClient(LlmApiClient delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public OllamaApi.ChatResponse chat(OllamaApi.ChatRequest request) throws Exception {
+            return count(() -> delegate.chat(request));
+        }
+
+        @Override
+        public OllamaApi.ChatResponse chatStream(OllamaApi.ChatRequest request, ChatStreamListener listener) throws Exception {
+            return count(() -> delegate.chatStream(request, listener));
+        }
+
+        @Override
+        public String getProviderName() {
+            return delegate.getProviderName();
+        }
+
+        private OllamaApi.ChatResponse count(java.util.concurrent.Callable<OllamaApi.ChatResponse> call) throws Exception {
+            requests.incrementAndGet();
+            try {
+                OllamaApi.ChatResponse response = call.call();
+                if (response != null && response.message() != null && response.message().tool_calls() != null) {
+                    toolCalls.addAndGet(response.message().tool_calls().size());
+                }
+                return response;
+            } catch (Exception e) {
+                errors.incrementAndGet();
+                throw e;
+            }
+        }
+    }
+
+    private Process startFakeLlmServer() throws IOException {
+        return new ProcessBuilder(ScriptedSession.currentJava(), "-cp", System.getProperty("java.class.path"),
+                FakeLlmServer.class.getName(), "0", String.valueOf(llmLatencyMillis))
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    /**
+     * Reads the URL the fake LLM server announces on stderr once it listens.
+     */
+    private static String readBaseUrl(Process llmProcess) throws IOException {
+        BufferedReader stderr = new BufferedReader(new InputStreamReader(llmProcess.getErrorStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = stderr.readLine()) != null) {
+            int index = line.indexOf("http://");
+            if (index >= 0) {
+                return line.substring(index).trim();
+            }
+        }
+        throw new IOException("The fake LLM server exited before it started listening.");
+    }
+
+    private Path writeMcpConfig() throws IOException {
+        String json = """
+                {
+                  "mcpServers": {
+                    "fake": {
+                      "command": %s,
+                      "args": ["-cp", %s, "%s", "--tool-latency-ms", "%d", "--payload-chars", "%d"]
+                    }
+                  }
+                }
+                """.formatted(quote(ScriptedSession.currentJava()), quote(System.getProperty("java.class.path")),
+                FakeMcpServer.class.getName(), toolLatencyMillis, payloadChars);
+        Path config = workDir.resolve("mcp.json");
+        Files.writeString(config, json);
+        return config;
+    }
+
+    private void writeReport(List<LevelResult> results, int sustainable) throws IOException {
+        Properties report = new Properties();
+        for (LevelResult result : results) {
+            String prefix = "sessions." + result.sessions() + ".";
+            report.setProperty(prefix + "turns", String.valueOf(result.turns()));
+            report.setProperty(prefix + "errors", String.valueOf(result.errors()));
+            report.setProperty(prefix + "cpuMillisPerTurn", String.format("%.3f", result.cpuMillisPerTurn()));
+            report.setProperty(prefix + "allocatedMbPerSecond", String.format("%.2f", result.allocatedMbPerSecond()));
+            report.setProperty(prefix + "allocatedKbPerTurn", String.format("%.2f", result.allocatedKbPerTurn()));
+            report.setProperty(prefix + "p50AddedMillis", String.format("%.3f", result.p50AddedMillis()));
+            report.setProperty(prefix + "p99AddedMillis", String.format("%.3f", result.p99AddedMillis()));
+            report.setProperty(prefix + "turnsPerSecond", String.format("%.2f", result.turnsPerSecond()));
+        }
+        report.setProperty("maxSustainableSessions", String.valueOf(sustainable));
+        Files.createDirectories(reportFile.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(reportFile)) {
+            report.store(writer, "mcphost load test: provider=" + provider + ", streaming=" + streaming);
+        }
+        System.out.println("Report written to " + reportFile);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
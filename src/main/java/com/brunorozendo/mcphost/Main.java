@@ -1,15 +1,21 @@
 package com.brunorozendo.mcphost;
 
+import com.brunorozendo.mcphost.control.CapabilityCatalog;
 import com.brunorozendo.mcphost.control.ChatController;
+import com.brunorozendo.mcphost.control.ChatOptions;
 import com.brunorozendo.mcphost.control.McpConnectionManager;
 import com.brunorozendo.mcphost.control.SystemPromptBuilder;
 import com.brunorozendo.mcphost.model.McpConfig;
 import com.brunorozendo.mcphost.model.OllamaApi;
 import com.brunorozendo.mcphost.service.McpConfigLoader;
+import com.brunorozendo.mcphost.service.SessionJournal;
+import com.brunorozendo.mcphost.service.llm.CachingLlmApiClient;
+import com.brunorozendo.mcphost.service.llm.CascadingLlmApiClient;
 import com.brunorozendo.mcphost.service.llm.LlmApiClient;
 import com.brunorozendo.mcphost.service.llm.LlmApiClientFactory;
-import com.brunorozendo.mcphost.util.LoadingAnimator;
-import io.modelcontextprotocol.spec.McpSchema;
+import com.brunorozendo.mcphost.util.StartupTimeline;
+import com.brunorozendo.mcphost.util.TerminalRenderer;
+import com.brunorozendo.mcphost.util.TokenEstimator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
@@ -17,9 +23,18 @@ import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 
 import java.io.File;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Command(name = "mcphost", mixinStandardHelpOptions = true, version = "mcphost 1.0",
         description = "A host that connects Large Language Models with MCP-compliant servers (tools, resources, etc.).")
@@ -35,6 +50,25 @@ public class Main implements Callable<Integer> {
                          "  - model-name (defaults to Ollama for backward compatibility)")
     private String llmModelFullName;
 
+    @Option(names = {"--small-model"}, paramLabel = "MODEL",
+            description = "A small, fast model (same formats as --model) that answers the request classes given by " +
+                          "--small-model-for; its unreliable answers and anything else go to --model")
+    private String smallModelFullName;
+
+    @Option(names = {"--small-base-url"}, paramLabel = "URL",
+            description = "Base URL of the small model's server. Defaults to --base-url when both models use the same " +
+                          "provider, else to the provider's default")
+    private String smallBaseUrl;
+
+    @Option(names = {"--small-model-for"}, split = ",", paramLabel = "CLASS", defaultValue = "after-tools,short",
+            description = "Request classes sent to the small model first: after-tools (requests that follow tool " +
+                          "results) and short (answers to short messages). Default: ${DEFAULT-VALUE}")
+    private List<String> smallModelClasses;
+
+    @Option(names = {"--short-message-chars"}, defaultValue = "200",
+            description = "A user message up to this many characters counts as short. Default: ${DEFAULT-VALUE}")
+    private int shortMessageChars;
+
     @Option(names = {"--config"}, required = true, description = "Path to the mcp.json configuration file")
     private File mcpConfigFile;
 
@@ -46,9 +80,130 @@ public class Main implements Callable<Integer> {
     @Option(names = {"--api-key"}, description = "API key for authentication (required for HuggingFace with auth)")
     private String apiKey;
 
+    @Option(names = {"--max-requests-per-second"}, defaultValue = "0",
+            description = "Highest request rate to a HuggingFace endpoint; the rate also adapts to the server's 429 " +
+                          "answers (0 = no client-side limit). Default: ${DEFAULT-VALUE}")
+    private double maxRequestsPerSecond;
+
+    @Option(names = {"--no-compress-requests"}, description = "Do not gzip large request bodies sent to a remote HuggingFace endpoint")
+    private boolean noCompressRequests;
+
     @Option(names = {"--hf-token"}, description = "HuggingFace token (alias for --api-key)")
     private String hfToken;
 
+    @Option(names = {"--tool-top-k"}, defaultValue = "0",
+            description = "Expose only the K tools most relevant to the recent conversation on each request " +
+                          "(0 = expose all tools, default)")
+    private int toolTopK;
+
+    @Option(names = {"--pin-tool"}, split = ",", paramLabel = "TOOL",
+            description = "Tool(s) that are always exposed when --tool-top-k is set. Repeatable or comma-separated.")
+    private List<String> pinnedTools;
+
+    @Option(names = {"--prompt-profile"}, defaultValue = "FULL",
+            description = "How tools are described in the system prompt: FULL (name, description and parameters), " +
+                          "COMPACT (name and one-line description) or NONE (rely on native tool support). Default: ${DEFAULT-VALUE}")
+    private SystemPromptBuilder.Profile promptProfile;
+
+    @Option(names = {"--resume"}, paramLabel = "SESSION",
+            description = "Resume a previous session from its journal. Tool results are replayed from the journal, not re-executed.")
+    private String resumeSessionId;
+
+    @Option(names = {"--session-dir"}, paramLabel = "DIR",
+            description = "Directory for session journals. Default: ~/.mcphost/sessions")
+    private File sessionDir;
+
+    @Option(names = {"--no-journal"}, description = "Do not record the session in a journal (it cannot be resumed)")
+    private boolean noJournal;
+
+    @Option(names = {"--response-cache"},
+            description = "Answer requests identical to earlier ones (same model, messages, tools and options) from a " +
+                          "cache instead of the server. Meant for deterministic reruns, e.g. with temperature 0")
+    private boolean responseCache;
+
+    @Option(names = {"--response-cache-dir"}, paramLabel = "DIR",
+            description = "Directory of the response cache. Default: ~/.mcphost/response-cache")
+    private File responseCacheDir;
+
+    @Option(names = {"--response-cache-size"}, defaultValue = "256", paramLabel = "MB",
+            description = "Most disk space the response cache may use; the least recently used responses are " +
+                          "evicted beyond it. Default: ${DEFAULT-VALUE}")
+    private long responseCacheMegabytes;
+
+    @Option(names = {"--max-tool-result-chars"}, defaultValue = "20000",
+            description = "Tool results longer than this are written to disk and replaced by a head/tail preview " +
+                          "the model can page through (0 = never truncate). Default: ${DEFAULT-VALUE}")
+    private int maxToolResultChars;
+
+    @Option(names = {"--thinking"}, defaultValue = "COLLAPSED",
+            description = "How the model's reasoning (<think> blocks) is shown: LIVE (printed as it is generated), " +
+                          "COLLAPSED (a token counter, then a one-line summary) or HIDDEN. Default: ${DEFAULT-VALUE}")
+    private ChatOptions.ThinkingDisplay thinkingDisplay;
+
+    @Option(names = {"--no-stream"},
+            description = "Wait for each complete answer instead of streaming it token by token")
+    private boolean noStream;
+
+    @Option(names = {"--speculative-tools"}, split = ",", paramLabel = "TOOL",
+            description = "Side-effect-free tool(s) that may start as soon as the model has streamed the call, " +
+                          "while it is still generating the rest of its message. Repeatable or comma-separated.")
+    private List<String> speculativeTools;
+
+    @Option(names = {"--max-turn-tokens"}, defaultValue = "0",
+            description = "Stop a turn once its LLM requests have used this many prompt and completion tokens, " +
+                          "e.g. to break a runaway tool loop (0 = no limit). Default: ${DEFAULT-VALUE}")
+    private long maxTurnTokens;
+
+    @Option(names = {"--max-session-tokens"}, defaultValue = "0",
+            description = "Refuse further turns once the session has used this many prompt and completion tokens " +
+                          "(0 = no limit). Type /stats in the chat to see the usage. Default: ${DEFAULT-VALUE}")
+    private long maxSessionTokens;
+
+    @Option(names = {"--min-context"}, defaultValue = "0",
+            description = "Size the context window (Ollama num_ctx) adaptively, starting at this many tokens. The window " +
+                          "grows in power-of-two steps as the conversation does and never shrinks, so the model is rarely " +
+                          "reloaded. num_ctx overrides the model's own setting, so set this to at least the context the " +
+                          "model is configured with (0 = leave num_ctx to the server). Default: ${DEFAULT-VALUE}")
+    private int minContext;
+
+    @Option(names = {"--max-context"}, defaultValue = "32768",
+            description = "Largest context window the conversation may grow to with --min-context. Default: ${DEFAULT-VALUE}")
+    private int maxContext;
+
+    @Option(names = {"--max-answer-tokens"}, defaultValue = "0",
+            description = "Generation limit (num_predict, or max_tokens for OpenAI-compatible servers) of the first " +
+                          "answer to each message (0 = no limit). Default: ${DEFAULT-VALUE}")
+    private int maxAnswerTokens;
+
+    @Option(names = {"--max-tool-turn-tokens"}, defaultValue = "0",
+            description = "Generation limit of the requests that follow tool results, which mostly produce the " +
+                          "arguments of the next tool call (0 = no limit). Default: ${DEFAULT-VALUE}")
+    private int maxToolTurnTokens;
+
+    @Option(names = {"--max-tool-rounds"}, defaultValue = "20",
+            description = "Rounds of tool calls one turn may make before the model is asked for a final answer " +
+                          "without tools (0 = no limit). Default: ${DEFAULT-VALUE}")
+    private int maxToolRounds;
+
+    @Option(names = {"--max-tool-calls"}, defaultValue = "50",
+            description = "Tool calls one turn may make; further calls are not executed and the model is asked " +
+                          "for a final answer (0 = no limit). Default: ${DEFAULT-VALUE}")
+    private int maxToolCalls;
+
+    @Option(names = {"--turn-timeout"}, defaultValue = "600", paramLabel = "SECONDS",
+            description = "Time after which a turn stops calling tools and the model is asked to answer with what " +
+                          "it has (0 = no limit). Default: ${DEFAULT-VALUE}")
+    private long turnTimeoutSeconds;
+
+    @Option(names = {"--display-lines"}, defaultValue = "20",
+            description = "Show at most this many lines of each tool call and tool result in the chat; the model " +
+                          "still receives the full text (0 = no limit). Default: ${DEFAULT-VALUE}")
+    private int displayLines;
+
+    @Option(names = {"--startup-report"},
+            description = "Print how long each startup phase took, and which phases overlapped, before the chat starts")
+    private boolean startupReport;
+
     // Deprecated option for backward compatibility
     @Option(names = {"--ollama-base-url"}, description = "Base URL for the Ollama API (deprecated, use --base-url)", 
             hidden = true)
@@ -56,8 +211,8 @@ public class Main implements Callable<Integer> {
 
     @Override
     public Integer call() throws Exception {
-        PrintWriter consoleWriter = new PrintWriter(System.out, true);
-        LoadingAnimator animator = new LoadingAnimator(consoleWriter);
+        StartupTimeline timeline = new StartupTimeline();
+        TerminalRenderer renderer = new TerminalRenderer(System.out, displayLines);
 
         logger.info("mcphost is starting...");
         logger.info("LLM Model: {}", llmModelFullName);
@@ -73,80 +228,246 @@ public class Main implements Callable<Integer> {
             apiKey = hfToken;
         }
 
-        // 1. Load Configuration
-        McpConfig mcpConfig = loadConfiguration(mcpConfigFile);
-        if (mcpConfig == null) {
-            return 1; // Indicate error
+        // Resolve and validate the journal location up front, before anything is started
+        Path journalDir = sessionDir != null
+                ? sessionDir.toPath()
+                : Path.of(System.getProperty("user.home"), ".mcphost", "sessions");
+        boolean useJournal = !noJournal || resumeSessionId != null;
+        if (resumeSessionId != null && !SessionJournal.exists(journalDir, resumeSessionId)) {
+            logger.error("Fatal: No journal found for session '{}' in {}", resumeSessionId, journalDir);
+            return 1;
         }
 
-        // 2. Initialize MCP Connection Manager
         McpConnectionManager mcpConnectionManager = new McpConnectionManager();
-        mcpConnectionManager.initializeClients(mcpConfig);
+        CapabilityCatalog catalog = mcpConnectionManager.getCatalog();
+        catalog.setPromptProfile(promptProfile);
+
+        // Startup runs as a small dependency graph instead of a fixed sequence:
+        //   load config -> start MCP servers (concurrently) -> encode capabilities (schemas, system prompt)
+        //              \-> open session journal
+        //   create LLM client -> warm up its connection
+        // The LLM client does not depend on the MCP servers, so it is ready by the time they are.
+        ExecutorService startupExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        CompletableFuture<McpConfig> configFuture = CompletableFuture.supplyAsync(
+                () -> timeline.measure("load-config", () -> loadConfiguration(mcpConfigFile)), startupExecutor);
+        CompletableFuture<Void> capabilitiesFuture = configFuture.thenAcceptAsync(config -> {
+            if (config == null) return;
+            timeline.measure("mcp-servers", () -> mcpConnectionManager.initializeClients(config, timeline));
+            // Convert the tool schemas and build the system prompt now rather than on the first turn
+            timeline.measure("encode-capabilities", () -> {
+                catalog.getOllamaTools();
+                catalog.getSystemPrompt();
+                logPromptFootprints(catalog);
+            });
+        }, startupExecutor);
+        CompletableFuture<SessionJournal> journalFuture = configFuture.thenApplyAsync(
+                config -> config != null && useJournal ? timeline.measure("open-journal", () -> openJournal(journalDir)) : null,
+                startupExecutor);
+        CompletableFuture<LlmApiClient> llmClientFuture = CompletableFuture.supplyAsync(
+                () -> timeline.measure("llm-client", this::createLlmClient),
+                startupExecutor);
+        // The warm-up is not waited for; if it is still running, the first chat request simply reuses its connection
+        llmClientFuture.thenAcceptAsync(client -> timeline.measure("llm-warm-up", client::warmUp), startupExecutor);
+        startupExecutor.shutdown();
+
+        McpConfig mcpConfig = configFuture.join();
+        capabilitiesFuture.join();
+        SessionJournal journal = journalFuture.join();
 
-        // 3. Initialize LLM API Client
         LlmApiClient llmApiClient;
         String modelName;
         try {
-            llmApiClient = LlmApiClientFactory.createClient(llmModelFullName, baseUrl, apiKey);
+            llmApiClient = llmClientFuture.join();
             modelName = LlmApiClientFactory.extractModelName(llmModelFullName);
-            logger.info("{} API Client initialized", llmApiClient.getProviderName());
-            logger.info("Target model: {}", modelName);
-            if (baseUrl != null) {
-                logger.info("API URL: {}", baseUrl);
+        } catch (CompletionException e) {
+            if (!(e.getCause() instanceof IllegalArgumentException)) {
+                throw e;
             }
-        } catch (IllegalArgumentException e) {
-            logger.error("Invalid model specification: {}", e.getMessage());
+            logger.error("Invalid model specification: {}", e.getCause().getMessage());
+            if (journal != null) journal.close();
+            mcpConnectionManager.closeAllClients();
             return 1;
         }
+        if (mcpConfig == null) {
+            return 1; // Indicate error
+        }
+        if (resumeSessionId != null && journal == null) {
+            mcpConnectionManager.closeAllClients();
+            return 1; // The journal to resume could not be opened
+        }
+        logger.info("{} API Client initialized", llmApiClient.getProviderName());
+        logger.info("Target model: {}", modelName);
+        if (baseUrl != null) {
+            logger.info("API URL: {}", baseUrl);
+        }
 
-        // 4. Register a shutdown hook to clean up resources
-        registerShutdownHook(animator, mcpConnectionManager);
-
-        // 5. Fetch all capabilities from MCP servers
-        List<McpSchema.Tool> allMcpTools = mcpConnectionManager.getAllTools();
-        List<McpSchema.Resource> allMcpResources = mcpConnectionManager.getAllResources();
-        List<McpSchema.Prompt> allMcpPrompts = mcpConnectionManager.getAllPrompts();
+        // Register a shutdown hook to clean up resources
+        registerShutdownHook(renderer, mcpConnectionManager, journal);
 
-        // 6. Prepare for the LLM: Convert MCP tools to Ollama format and build a system prompt
-        List<OllamaApi.Tool> ollamaTools = SchemaConverter.convertMcpToolsToOllamaTools(allMcpTools);
-        String systemPrompt = SystemPromptBuilder.build(allMcpTools, allMcpResources, allMcpPrompts);
+        // Start the interactive chat once every startup phase has finished
+        ChatOptions chatOptions = new ChatOptions();
+        chatOptions.setToolTopK(toolTopK);
+        chatOptions.setPinnedTools(pinnedTools);
+        chatOptions.setMaxToolResultChars(maxToolResultChars);
+        chatOptions.setStreaming(!noStream);
+        chatOptions.setThinkingDisplay(thinkingDisplay);
+        chatOptions.setSpeculativeTools(speculativeTools);
+        chatOptions.setMaxTurnTokens(maxTurnTokens);
+        chatOptions.setMaxSessionTokens(maxSessionTokens);
+        chatOptions.setMinContextTokens(minContext);
+        chatOptions.setMaxContextTokens(maxContext);
+        chatOptions.setMaxAnswerTokens(maxAnswerTokens);
+        chatOptions.setMaxToolTurnTokens(maxToolTurnTokens);
+        chatOptions.setMaxToolRounds(maxToolRounds);
+        chatOptions.setMaxToolCalls(maxToolCalls);
+        chatOptions.setTurnTimeout(Duration.ofSeconds(turnTimeoutSeconds));
+        if (journal != null) {
+            // Keep spilled tool results next to the journal so they survive a resume
+            chatOptions.setToolResultDirectory(journal.getFile().resolveSibling(journal.getSessionId() + ".results"));
+        }
 
-        // 7. Start the interactive chat
-        ChatController chatController = new ChatController(
+        ChatController chatController = timeline.measure("chat-controller", () -> new ChatController(
                 modelName,
                 llmApiClient,
                 mcpConnectionManager,
-                animator,
-                systemPrompt,
-                ollamaTools
-        );
+                renderer,
+                catalog,
+                chatOptions
+        ));
+
+        if (journal != null) {
+            if (resumeSessionId != null) {
+                List<OllamaApi.Message> recovered = journal.getRecoveredMessages();
+                timeline.measure("resume", () -> chatController.resumeFrom(recovered));
+                renderer.println("Resumed session " + journal.getSessionId() + " (" + recovered.size() + " messages).");
+            } else {
+                renderer.println("Session " + journal.getSessionId() + " (resume with --resume " + journal.getSessionId() + ")");
+            }
+            chatController.setJournal(journal);
+        }
+
+        logger.debug("{}", timeline.report());
+        if (startupReport) {
+            renderer.println(timeline.report());
+        }
 
         chatController.startInteractiveSession();
+        renderer.close();
 
         return 0;
     }
 
+    /**
+     * Creates the client of --model, wrapped in a cascade when a --small-model is given and behind the response
+     * cache when it is enabled.
+     */
+    private LlmApiClient createLlmClient() {
+        LlmApiClient client = LlmApiClientFactory.createClient(llmModelFullName, baseUrl, apiKey,
+                maxRequestsPerSecond, !noCompressRequests);
+        if (smallModelFullName != null) {
+            client = createCascade(client);
+        }
+        if (!responseCache) {
+            return client;
+        }
+        Path cacheDir = responseCacheDir != null
+                ? responseCacheDir.toPath()
+                : Path.of(System.getProperty("user.home"), ".mcphost", "response-cache");
+        try {
+            return new CachingLlmApiClient(client, cacheDir, responseCacheMegabytes * 1024 * 1024);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Could not open the response cache in {}: {}. Continuing without it.", cacheDir, e.getMessage());
+            return client;
+        }
+    }
+
+    private LlmApiClient createCascade(LlmApiClient client) {
+        String smallUrl = smallBaseUrl;
+        if (smallUrl == null && providerOf(smallModelFullName).equals(providerOf(llmModelFullName))) {
+            smallUrl = baseUrl;
+        }
+        LlmApiClient smallClient = LlmApiClientFactory.createClient(smallModelFullName, smallUrl, apiKey,
+                maxRequestsPerSecond, !noCompressRequests);
+        Set<CascadingLlmApiClient.RequestClass> classes = EnumSet.noneOf(CascadingLlmApiClient.RequestClass.class);
+        for (String name : smallModelClasses) {
+            classes.add(CascadingLlmApiClient.RequestClass.parse(name));
+        }
+        logger.info("Routing {} requests to the small model {}", classes, smallModelFullName);
+        return new CascadingLlmApiClient(client, smallClient, LlmApiClientFactory.extractModelName(smallModelFullName),
+                classes, shortMessageChars);
+    }
+
+    private static String providerOf(String modelSpec) {
+        // A spec without a provider is an Ollama model
+        return modelSpec.contains(":") ? modelSpec.substring(0, modelSpec.indexOf(':')).toLowerCase() : "ollama";
+    }
+
     private McpConfig loadConfiguration(File configFile) {
         McpConfigLoader configLoader = new McpConfigLoader();
         try {
-            return configLoader.load(configFile);
+            McpConfig config = configLoader.load(configFile);
+            applyDebugLogging(config);
+            return config;
         } catch (Exception e) {
             logger.error("Fatal: Failed to load MCP configuration from {}: {}", configFile.getAbsolutePath(), e.getMessage());
             return null;
         }
     }
 
-    private void registerShutdownHook(LoadingAnimator animator, McpConnectionManager mcpConnectionManager) {
+    /**
+     * Honours globalSettings.enableDebugLogging by lowering the application's log level to DEBUG.
+     */
+    private static void applyDebugLogging(McpConfig config) {
+        if (config.getGlobalSettings() != null && config.getGlobalSettings().isEnableDebugLogging()
+                && LoggerFactory.getLogger("com.brunorozendo") instanceof ch.qos.logback.classic.Logger appLogger) {
+            appLogger.setLevel(ch.qos.logback.classic.Level.DEBUG);
+            logger.debug("Debug logging enabled by globalSettings.enableDebugLogging");
+        }
+    }
+
+    private SessionJournal openJournal(Path journalDir) {
+        try {
+            return SessionJournal.open(journalDir, resumeSessionId);
+        } catch (Exception e) {
+            if (resumeSessionId != null) {
+                // The caller treats this as fatal: a resumed session without its history would be a different session
+                logger.error("Fatal: Could not open the journal of session '{}' in {}: {}", resumeSessionId, journalDir, e.getMessage());
+            } else {
+                logger.error("Could not open session journal in {}: {}. Continuing without a journal.", journalDir, e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    private void logPromptFootprints(CapabilityCatalog catalog) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        Map<SystemPromptBuilder.Profile, Integer> footprints = catalog.estimatePromptFootprints();
+        int toolTokens = TokenEstimator.estimateTools(catalog.getOllamaTools());
+        logger.info("System prompt footprint (estimated tokens): FULL ~{}, COMPACT ~{}, NONE ~{}; active profile: {}. " +
+                        "Native tool definitions add ~{} tokens per request.",
+                footprints.get(SystemPromptBuilder.Profile.FULL),
+                footprints.get(SystemPromptBuilder.Profile.COMPACT),
+                footprints.get(SystemPromptBuilder.Profile.NONE),
+                catalog.getPromptProfile(),
+                toolTokens);
+    }
+
+    private void registerShutdownHook(TerminalRenderer renderer, McpConnectionManager mcpConnectionManager, SessionJournal journal) {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             logger.info("Initiating mcphost shutdown sequence...");
-            if (animator != null) animator.stop();
+            if (renderer != null) renderer.close();
+            if (journal != null) journal.close();
             if (mcpConnectionManager != null) mcpConnectionManager.closeAllClients();
             logger.info("mcphost shutdown complete. Goodbye!");
         }));
     }
 
     public static void main(String[] args) {
-        int exitCode = new CommandLine(new Main()).execute(args);
+        int exitCode = new CommandLine(new Main())
+                .setCaseInsensitiveEnumValuesAllowed(true)
+                .execute(args);
         System.exit(exitCode);
     }
 }
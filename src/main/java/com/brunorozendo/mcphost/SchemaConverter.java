@@ -1,25 +1,42 @@
 package com.brunorozendo.mcphost;
 
 import com.brunorozendo.mcphost.model.OllamaApi;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.modelcontextprotocol.spec.McpSchema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.stream.Collectors;
 
 /**
  * Handles the conversion of MCP (Model Context Protocol) schemas to Ollama API compatible schemas.
  * This is crucial for correctly exposing MCP capabilities (like tools) to the Ollama LLM.
+ * <p>
+ * The JSON schema of a tool arrives as nested maps, which are walked directly. {@code $ref} targets (in
+ * {@code $defs}, {@code definitions} or anywhere in the schema) are converted once per tool, and the composition
+ * keywords are folded into the single schema Ollama understands: {@code allOf} is merged, and {@code anyOf} /
+ * {@code oneOf} keep their first non-null alternative, with the others listed in the description. Converted
+ * schemas are interned, so the identical subschemas that large catalogs repeat across tools share one instance.
  */
 public class SchemaConverter {
 
     private static final Logger logger = LoggerFactory.getLogger(SchemaConverter.class);
-    private static final ObjectMapper generalObjectMapper = new ObjectMapper();
+
+    // Weak on both sides, so schemas of tools that are gone can be collected
+    private static final Map<OllamaApi.JsonSchema, WeakReference<OllamaApi.JsonSchema>> interned =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final OllamaApi.JsonSchema UNDEFINED_SCHEMA = new OllamaApi.JsonSchema("string", "Undefined schema");
 
     /**
      * Converts a list of MCP Tools into a list of Ollama Tools.
@@ -58,8 +75,8 @@ public class SchemaConverter {
     }
 
     /**
-     * Recursively converts an MCP JSON schema to an Ollama-compatible JSON schema.
-     * This method handles nested objects and arrays, and attempts to preserve as much detail as possible.
+     * Converts an MCP JSON schema, including its nested properties, items and references, to an Ollama-compatible
+     * JSON schema.
      *
      * @param mcpSchema The MCP schema to convert.
      * @return The converted Ollama-compatible schema.
@@ -67,69 +84,297 @@ public class SchemaConverter {
     public static OllamaApi.JsonSchema convertMcpSchemaRecursive(McpSchema.JsonSchema mcpSchema) {
         if (mcpSchema == null) {
             // Default to a string type if a sub-schema is unexpectedly null.
-            return new OllamaApi.JsonSchema("string", "Undefined schema");
+            return UNDEFINED_SCHEMA;
+        }
+        // The record splits the top level of the schema into fields; put it back together as the map it came from
+        Map<String, Object> root = new LinkedHashMap<>();
+        putIfNotNull(root, "type", mcpSchema.type());
+        putIfNotNull(root, "properties", mcpSchema.properties());
+        putIfNotNull(root, "required", mcpSchema.required());
+        putIfNotNull(root, "$defs", mcpSchema.defs());
+        putIfNotNull(root, "definitions", mcpSchema.definitions());
+        return convertSchemaMap(root);
+    }
+
+    /**
+     * Converts a JSON schema given as nested maps and lists, as parsed from JSON.
+     */
+    public static OllamaApi.JsonSchema convertSchemaMap(Map<String, Object> schema) {
+        return new Conversion(schema).convert(schema, "#");
+    }
+
+    private static void putIfNotNull(Map<String, Object> map, String key, Object value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+
+    /**
+     * Returns the shared instance equal to the given schema.
+     */
+    private static OllamaApi.JsonSchema intern(OllamaApi.JsonSchema schema) {
+        if (schema == null) {
+            return null;
+        }
+        synchronized (interned) {
+            WeakReference<OllamaApi.JsonSchema> existing = interned.get(schema);
+            OllamaApi.JsonSchema shared = existing != null ? existing.get() : null;
+            if (shared != null) {
+                return shared;
+            }
+            interned.put(schema, new WeakReference<>(schema));
+            return schema;
         }
+    }
+
+    /**
+     * The conversion of one schema, holding its resolved references.
+     */
+    private static final class Conversion {
+        private final Map<String, Object> root;
+        private final Map<String, OllamaApi.JsonSchema> resolved = new HashMap<>();
+        private final Set<String> resolving = new HashSet<>();
 
-        // Directly supported fields
-        String type = mcpSchema.type();
-        List<String> required = mcpSchema.required() != null ? new ArrayList<>(mcpSchema.required()) : null;
-
-        // Fields that need to be extracted from the generic 'properties' map in McpSchema
-        String description = null;
-        List<Object> enumValues = null;
-        String format = null;
-        OllamaApi.JsonSchema itemsSchema = null;
-        Map<String, OllamaApi.JsonSchema> propertiesSchema = null;
-
-        Map<String, Object> mcpProperties = mcpSchema.properties();
-
-        if (mcpProperties != null) {
-            description = (String) mcpProperties.get("description");
-            enumValues = (List<Object>) mcpProperties.get("enum");
-            format = (String) mcpProperties.get("format");
-
-            if ("object".equals(type)) {
-                Object propsField = mcpProperties.get("properties");
-                if (propsField instanceof Map) {
-                    propertiesSchema = new HashMap<>();
-                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) propsField).entrySet()) {
-                        String propKey = (String) entry.getKey();
-                        McpSchema.JsonSchema propertyMcpSchema = convertObjectToMcpSchema(entry.getValue(), propKey);
-                        propertiesSchema.put(propKey, convertMcpSchemaRecursive(propertyMcpSchema));
-                    }
+        Conversion(Map<String, Object> root) {
+            this.root = root;
+        }
+
+        OllamaApi.JsonSchema convert(Object node, String path) {
+            if (!(node instanceof Map<?, ?> map)) {
+                if (!Boolean.TRUE.equals(node)) {
+                    logger.warn("Schema at '{}' has unexpected type: {}. Defaulting to string.", path,
+                            node != null ? node.getClass().getName() : "null");
+                }
+                return UNDEFINED_SCHEMA;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> schema = (Map<String, Object>) map;
+
+            if (schema.get("$ref") instanceof String ref) {
+                OllamaApi.JsonSchema target = resolve(ref);
+                // A description next to the reference describes this use of it
+                String description = stringOf(schema.get("description"));
+                if (description != null && !description.equals(target.description())) {
+                    target = intern(new OllamaApi.JsonSchema(target.type(), description, target.properties(), target.items(),
+                            target.required(), target.enumValues(), target.format()));
                 }
-            } else if ("array".equals(type)) {
-                Object itemsField = mcpProperties.get("items");
+                return target;
+            }
+            if (schema.get("allOf") instanceof List<?> allOf && !allOf.isEmpty()) {
+                return convertAllOf(schema, allOf, path);
+            }
+            for (String keyword : List.of("anyOf", "oneOf")) {
+                if (schema.get(keyword) instanceof List<?> alternatives && !alternatives.isEmpty()) {
+                    return convertAlternatives(schema, alternatives, path + "/" + keyword);
+                }
+            }
+            return convertPlain(schema, path);
+        }
+
+        private OllamaApi.JsonSchema convertPlain(Map<String, Object> schema, String path) {
+            String description = stringOf(schema.get("description"));
+            String format = stringOf(schema.get("format"));
+            List<Object> enumValues = null;
+            if (schema.get("enum") instanceof List<?> values) {
+                enumValues = List.copyOf(values);
+            } else if (schema.containsKey("const") && schema.get("const") != null) {
+                enumValues = List.of(schema.get("const"));
+            }
+
+            Map<String, OllamaApi.JsonSchema> properties = null;
+            if (schema.get("properties") instanceof Map<?, ?> propertyMap) {
+                properties = new LinkedHashMap<>();
+                for (Map.Entry<?, ?> entry : propertyMap.entrySet()) {
+                    String name = String.valueOf(entry.getKey());
+                    properties.put(name, convert(entry.getValue(), path + "/properties/" + name));
+                }
+                properties = Collections.unmodifiableMap(properties);
+            }
+
+            String type = typeOf(schema, properties != null, enumValues);
+            OllamaApi.JsonSchema items = null;
+            if ("array".equals(type)) {
+                Object itemsField = schema.get("items");
                 if (itemsField != null) {
-                    McpSchema.JsonSchema itemsMcpSchema = convertObjectToMcpSchema(itemsField, "array items");
-                    itemsSchema = convertMcpSchemaRecursive(itemsMcpSchema);
+                    items = convert(itemsField, path + "/items");
                 } else {
-                    logger.warn("Array type schema for '{}' does not have a parsable 'items' definition. Defaulting to array of strings.", type);
-                    itemsSchema = new OllamaApi.JsonSchema("string", "Array item");
+                    logger.warn("Array schema at '{}' does not have a parsable 'items' definition. Defaulting to array of strings.", path);
+                    items = new OllamaApi.JsonSchema("string", "Array item");
                 }
             }
+
+            List<String> required = null;
+            if (schema.get("required") instanceof List<?> requiredList) {
+                required = requiredList.stream().map(String::valueOf).toList();
+            }
+            return intern(new OllamaApi.JsonSchema(type, description, properties, intern(items), required, enumValues, format));
         }
 
-        return new OllamaApi.JsonSchema(type, description, propertiesSchema, itemsSchema, required, enumValues, format);
-    }
+        /**
+         * Merges the parts of an {@code allOf} (and the keywords next to it) into one schema.
+         */
+        private OllamaApi.JsonSchema convertAllOf(Map<String, Object> schema, List<?> parts, String path) {
+            List<OllamaApi.JsonSchema> converted = new ArrayList<>();
+            Map<String, Object> rest = new LinkedHashMap<>(schema);
+            rest.remove("allOf");
+            if (!rest.isEmpty()) {
+                converted.add(convert(rest, path));
+            }
+            for (int i = 0; i < parts.size(); i++) {
+                converted.add(convert(parts.get(i), path + "/allOf/" + i));
+            }
 
-    /**
-     * A helper to safely convert a generic Object from the schema properties map into an McpSchema.JsonSchema instance.
-     */
-    private static McpSchema.JsonSchema convertObjectToMcpSchema(Object schemaObject, String propertyName) {
-        if (schemaObject instanceof McpSchema.JsonSchema) {
-            return (McpSchema.JsonSchema) schemaObject;
+            String type = null;
+            String description = null;
+            String format = null;
+            List<Object> enumValues = null;
+            OllamaApi.JsonSchema items = null;
+            Map<String, OllamaApi.JsonSchema> properties = null;
+            Set<String> required = null;
+            for (OllamaApi.JsonSchema part : converted) {
+                if (part == UNDEFINED_SCHEMA) {
+                    continue;
+                }
+                type = type != null ? type : part.type();
+                description = description != null ? description : part.description();
+                format = format != null ? format : part.format();
+                enumValues = enumValues != null ? enumValues : part.enumValues();
+                items = items != null ? items : part.items();
+                if (part.properties() != null) {
+                    properties = properties != null ? properties : new LinkedHashMap<>();
+                    properties.putAll(part.properties());
+                }
+                if (part.required() != null) {
+                    required = required != null ? required : new LinkedHashSet<>();
+                    required.addAll(part.required());
+                }
+            }
+            if (properties != null) {
+                // Parts that only constrain properties may omit the type
+                type = "object";
+            }
+            return intern(new OllamaApi.JsonSchema(type != null ? type : "string", description,
+                    properties != null ? Collections.unmodifiableMap(properties) : null, items,
+                    required != null ? List.copyOf(required) : null, enumValues, format));
+        }
+
+        /**
+         * Keeps the first alternative that is not {@code null}, as Ollama schemas have a single type. Alternatives
+         * that are all constants become one enum; otherwise the other alternatives are named in the description.
+         */
+        private OllamaApi.JsonSchema convertAlternatives(Map<String, Object> schema, List<?> alternatives, String path) {
+            List<OllamaApi.JsonSchema> converted = new ArrayList<>();
+            for (int i = 0; i < alternatives.size(); i++) {
+                Object alternative = alternatives.get(i);
+                if (alternative instanceof Map<?, ?> map && "null".equals(map.get("type"))) {
+                    continue;
+                }
+                converted.add(convert(alternative, path + "/" + i));
+            }
+            if (converted.isEmpty()) {
+                return UNDEFINED_SCHEMA;
+            }
+
+            String description = stringOf(schema.get("description"));
+            OllamaApi.JsonSchema first = converted.get(0);
+            if (converted.size() > 1 && converted.stream().allMatch(c -> c.enumValues() != null && first.type().equals(c.type()))) {
+                List<Object> values = new ArrayList<>();
+                converted.forEach(c -> values.addAll(c.enumValues()));
+                return intern(new OllamaApi.JsonSchema(first.type(), description != null ? description : first.description(),
+                        null, null, null, List.copyOf(values), first.format()));
+            }
+
+            if (converted.size() > 1) {
+                String others = converted.subList(1, converted.size()).stream()
+                        .map(c -> c.type() + (c.description() != null ? " (" + c.description() + ")" : ""))
+                        .distinct()
+                        .collect(Collectors.joining(", "));
+                String base = description != null ? description : first.description();
+                description = (base != null ? base + " " : "") + "May also be: " + others + ".";
+            } else if (description == null) {
+                return first;
+            }
+            return intern(new OllamaApi.JsonSchema(first.type(), description, first.properties(), first.items(),
+                    first.required(), first.enumValues(), first.format()));
         }
-        if (schemaObject instanceof Map) {
+
+        /**
+         * Converts the target of a reference, once per conversion. A reference to a schema that is still being
+         * converted (a recursive type) becomes a plain object.
+         */
+        private OllamaApi.JsonSchema resolve(String ref) {
+            OllamaApi.JsonSchema cached = resolved.get(ref);
+            if (cached != null) {
+                return cached;
+            }
+            if (!resolving.add(ref)) {
+                return intern(new OllamaApi.JsonSchema("object", "Recursive reference to " + ref, null, null, null, null, null));
+            }
             try {
-                // Use Jackson's converter to map the Map to the record
-                return generalObjectMapper.convertValue(schemaObject, McpSchema.JsonSchema.class);
-            } catch (IllegalArgumentException e) {
-                logger.warn("Could not convert property '{}' schema (Map) to McpSchema.JsonSchema. Defaulting to string. Error: {}", propertyName, e.getMessage());
-                return new McpSchema.JsonSchema("string", null, null, null, null, null);
+                Object target = lookup(ref);
+                OllamaApi.JsonSchema schema;
+                if (target == null) {
+                    logger.warn("Could not resolve schema reference '{}'. Defaulting to string.", ref);
+                    schema = UNDEFINED_SCHEMA;
+                } else {
+                    schema = convert(target, ref);
+                }
+                resolved.put(ref, schema);
+                return schema;
+            } finally {
+                resolving.remove(ref);
+            }
+        }
+
+        /**
+         * Follows a local JSON pointer ({@code #/$defs/Name}); references to other documents are not supported.
+         */
+        private Object lookup(String ref) {
+            if (!ref.startsWith("#")) {
+                return null;
+            }
+            Object node = root;
+            for (String token : ref.substring(1).split("/")) {
+                if (token.isEmpty()) {
+                    continue;
+                }
+                String key = token.replace("~1", "/").replace("~0", "~");
+                if (node instanceof Map<?, ?> map) {
+                    node = map.get(key);
+                } else if (node instanceof List<?> list && key.chars().allMatch(Character::isDigit) && Integer.parseInt(key) < list.size()) {
+                    node = list.get(Integer.parseInt(key));
+                } else {
+                    return null;
+                }
             }
+            return node;
+        }
+
+        private static String typeOf(Map<String, Object> schema, boolean hasProperties, List<Object> enumValues) {
+            Object type = schema.get("type");
+            if (type instanceof List<?> types) {
+                // e.g. ["string", "null"]
+                type = types.stream().filter(t -> !"null".equals(t)).findFirst().orElse(null);
+            }
+            if (type instanceof String name) {
+                return name;
+            }
+            if (hasProperties) {
+                return "object";
+            }
+            if (schema.containsKey("items")) {
+                return "array";
+            }
+            if (enumValues != null && !enumValues.isEmpty()) {
+                Object value = enumValues.get(0);
+                return value instanceof Number ? (value instanceof Integer || value instanceof Long ? "integer" : "number")
+                        : value instanceof Boolean ? "boolean" : "string";
+            }
+            return "string";
+        }
+
+        private static String stringOf(Object value) {
+            return value instanceof String text ? text : null;
         }
-        logger.warn("Property '{}' has unexpected schema type: {}. Defaulting to string.", propertyName, (schemaObject != null ? schemaObject.getClass().getName() : "null"));
-        return new McpSchema.JsonSchema("string", null, null, null, null, null);
     }
 }
@@ -0,0 +1,122 @@
+package com.brunorozendo.mcphost.control;
+
+import com.brunorozendo.mcphost.service.llm.ChatStreamListener;
+import com.brunorozendo.mcphost.util.TerminalRenderer;
+import com.brunorozendo.mcphost.util.ThinkTagStreamParser;
+import com.brunorozendo.mcphost.util.TokenEstimator;
+
+/**
+ * Prints one assistant message to the console while it is generated. The text is split into reasoning and answer
+ * by a {@link ThinkTagStreamParser}; the answer is printed as it arrives and the reasoning according to the
+ * {@link ChatOptions.ThinkingDisplay} setting. A spinner task runs until there is something to print.
+ */
+class AssistantStreamPrinter implements ChatStreamListener, ThinkTagStreamParser.Listener {
+
+    private static final String WAITING_MESSAGE = "LLM is thinking...";
+
+    private final TerminalRenderer renderer;
+    private final ChatOptions.ThinkingDisplay thinkingDisplay;
+    private final boolean streamed;
+    private final ThinkTagStreamParser parser = new ThinkTagStreamParser(this);
+
+    private boolean printingThinking;
+    private boolean printingAnswer;
+    private boolean thinkingSummarized;
+    private TerminalRenderer.Task waiting;
+
+    AssistantStreamPrinter(TerminalRenderer renderer, ChatOptions.ThinkingDisplay thinkingDisplay, boolean streamed) {
+        this.renderer = renderer;
+        this.thinkingDisplay = thinkingDisplay;
+        this.streamed = streamed;
+    }
+
+    /**
+     * Shows the spinner until the first output arrives.
+     */
+    void start() {
+        waiting = renderer.startTask(WAITING_MESSAGE);
+    }
+
+    @Override
+    public void onContent(String delta) {
+        parser.accept(delta);
+        if (thinkingDisplay == ChatOptions.ThinkingDisplay.COLLAPSED && parser.isThinking() && !printingAnswer) {
+            waiting.update(WAITING_MESSAGE + " (" + getThinkingTokens() + " tokens)");
+        }
+    }
+
+    @Override
+    public void onThinking(String text) {
+        if (thinkingDisplay != ChatOptions.ThinkingDisplay.LIVE) {
+            return;
+        }
+        if (!printingThinking) {
+            text = text.stripLeading();
+            if (text.isEmpty()) {
+                return;
+            }
+            endLine();
+            stopWaiting();
+            renderer.print("LLM (thinking): ");
+            printingThinking = true;
+        }
+        renderer.print(text);
+    }
+
+    @Override
+    public void onAnswer(String text) {
+        if (!printingAnswer) {
+            // The old whole-message display trimmed the answer; leading whitespace after </think> is dropped the same way
+            text = text.stripLeading();
+            if (text.isEmpty()) {
+                return;
+            }
+            stopWaiting();
+            endLine();
+            summarizeThinking();
+            renderer.print("LLM: ");
+            printingAnswer = true;
+        }
+        renderer.print(text);
+    }
+
+    /**
+     * Ends the message: flushes a partial tag held back by the parser, stops the spinner and finishes the line.
+     */
+    void finish() {
+        parser.finish();
+        stopWaiting();
+        endLine();
+        summarizeThinking();
+    }
+
+    /**
+     * Tokens spent on reasoning. Streaming servers send about one token per chunk; a message that arrived in one
+     * piece is estimated from its length instead.
+     */
+    int getThinkingTokens() {
+        return streamed ? parser.getThinkingChunks() : TokenEstimator.estimateChars(parser.getThinkingChars());
+    }
+
+    private void summarizeThinking() {
+        if (thinkingSummarized || thinkingDisplay != ChatOptions.ThinkingDisplay.COLLAPSED || parser.getThinkingChars() == 0) {
+            return;
+        }
+        thinkingSummarized = true;
+        renderer.println("LLM (thought for ~" + getThinkingTokens() + " tokens)");
+    }
+
+    private void stopWaiting() {
+        if (waiting != null) {
+            waiting.finish();
+        }
+    }
+
+    private void endLine() {
+        if (printingThinking || printingAnswer) {
+            renderer.print("\n");
+            printingThinking = false;
+            printingAnswer = false;
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package com.brunorozendo.mcphost.control;
+
+import com.brunorozendo.mcphost.SchemaConverter;
+import com.brunorozendo.mcphost.model.OllamaApi;
+import com.brunorozendo.mcphost.util.TokenEstimator;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Holds the capabilities (tools, resources, prompts) discovered from every MCP server, grouped by server,
+ * together with their LLM-facing encodings (converted tool schemas and system prompt fragments).
+ * <p>
+ * Updates are applied one server at a time and encodings are produced lazily, so a {@code list_changed}
+ * notification from one server only re-encodes the entries that actually changed on that server.
+ */
+public class CapabilityCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(CapabilityCatalog.class);
+
+    // Keeps servers in discovery order so the assembled tool list and system prompt are stable
+    private final Map<String, ServerEntry> servers = new LinkedHashMap<>();
+
+    // Maps a capability name (e.g., a tool name) to the server that provides it
+    private final Map<String, String> toolToServerMapping = new LinkedHashMap<>();
+    private final Map<String, String> resourceToServerMapping = new LinkedHashMap<>();
+    private final Map<String, String> promptToServerMapping = new LinkedHashMap<>();
+
+    private final List<Consumer<CatalogDiff>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile long version;
+    private SystemPromptBuilder.Profile promptProfile = SystemPromptBuilder.Profile.FULL;
+    private List<OllamaApi.Tool> cachedOllamaTools;
+    private String cachedSystemPrompt;
+
+    /**
+     * Describes what changed in one server's capability list after an update.
+     */
+    public record CatalogDiff(String serverName, String kind, List<String> added, List<String> removed, List<String> changed) {
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s of server '%s': +%s -%s ~%s", kind, serverName, added, removed, changed);
+        }
+    }
+
+    /**
+     * A capability together with its lazily computed encodings. The source record is kept so that
+     * an unchanged capability can be recognised (records compare by value) and its encodings reused.
+     */
+    private static final class Encoded<T> {
+        final T source;
+        OllamaApi.Tool ollamaTool;
+        String promptFragment;
+
+        Encoded(T source) {
+            this.source = source;
+        }
+    }
+
+    private static final class ServerEntry {
+        final Map<String, Encoded<McpSchema.Tool>> tools = new LinkedHashMap<>();
+        final Map<String, Encoded<McpSchema.Resource>> resources = new LinkedHashMap<>();
+        final Map<String, Encoded<McpSchema.Prompt>> prompts = new LinkedHashMap<>();
+    }
+
+    /**
+     * Registers a listener that is notified after every non-empty update.
+     */
+    public void addListener(Consumer<CatalogDiff> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Replaces the tool list of a single server.
+     *
+     * @return The difference between the previous and the new list.
+     */
+    public CatalogDiff updateTools(String serverName, List<McpSchema.Tool> tools) {
+        CatalogDiff diff;
+        synchronized (this) {
+            diff = replace(serverName, "tools", entry(serverName).tools, tools, McpSchema.Tool::name, toolToServerMapping);
+        }
+        publish(diff);
+        return diff;
+    }
+
+    /**
+     * Replaces the resource list of a single server.
+     *
+     * @return The difference between the previous and the new list.
+     */
+    public CatalogDiff updateResources(String serverName, List<McpSchema.Resource> resources) {
+        CatalogDiff diff;
+        synchronized (this) {
+            diff = replace(serverName, "resources", entry(serverName).resources, resources, McpSchema.Resource::uri, resourceToServerMapping);
+        }
+        publish(diff);
+        return diff;
+    }
+
+    /**
+     * Replaces the prompt list of a single server.
+     *
+     * @return The difference between the previous and the new list.
+     */
+    public CatalogDiff updatePrompts(String serverName, List<McpSchema.Prompt> prompts) {
+        CatalogDiff diff;
+        synchronized (this) {
+            diff = replace(serverName, "prompts", entry(serverName).prompts, prompts, McpSchema.Prompt::name, promptToServerMapping);
+        }
+        publish(diff);
+        return diff;
+    }
+
+    /**
+     * Registers servers in configuration order before their capabilities are discovered, so that the order
+     * of the catalog (and which server wins a duplicate name) does not depend on which server starts first.
+     */
+    public synchronized void registerServers(Collection<String> serverNames) {
+        serverNames.forEach(this::entry);
+    }
+
+    private boolean comesBefore(String serverName, String otherServer) {
+        for (String name : servers.keySet()) {
+            if (name.equals(serverName)) return true;
+            if (name.equals(otherServer)) return false;
+        }
+        return false;
+    }
+
+    private ServerEntry entry(String serverName) {
+        return servers.computeIfAbsent(serverName, k -> new ServerEntry());
+    }
+
+    private <T> CatalogDiff replace(String serverName, String kind, Map<String, Encoded<T>> current, List<T> updated,
+                                    Function<T, String> keyOf, Map<String, String> mapping) {
+        Map<String, Encoded<T>> next = new LinkedHashMap<>();
+        List<String> added = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+
+        for (T item : updated != null ? updated : List.<T>of()) {
+            String key = keyOf.apply(item);
+            Encoded<T> previous = current.get(key);
+            if (previous == null) {
+                added.add(key);
+                next.put(key, new Encoded<>(item));
+            } else if (!Objects.equals(previous.source, item)) {
+                changed.add(key);
+                next.put(key, new Encoded<>(item));
+            } else {
+                next.put(key, previous); // Unchanged: keep the cached encodings
+            }
+        }
+
+        List<String> removed = new ArrayList<>();
+        for (String key : current.keySet()) {
+            if (!next.containsKey(key)) {
+                removed.add(key);
+                // Only drop the mapping if it still points at this server, and fall back to
+                // another server that exposes the same name, if any
+                if (mapping.remove(key, serverName)) {
+                    servers.forEach((otherServer, otherEntry) -> {
+                        if (!otherServer.equals(serverName) && containsKey(otherEntry, kind, key)) {
+                            mapping.put(key, otherServer);
+                        }
+                    });
+                }
+            }
+        }
+        for (String key : added) {
+            String previousServer = mapping.get(key);
+            if (previousServer != null && !previousServer.equals(serverName)) {
+                if (comesBefore(serverName, previousServer)) {
+                    // Servers are discovered concurrently; the later server in the configuration still wins
+                    logger.warn("Duplicate {} name '{}' found. Keeping the mapping from server '{}' over server '{}'.",
+                            kind, key, previousServer, serverName);
+                    continue;
+                }
+                logger.warn("Duplicate {} name '{}' found. Previous mapping from server '{}' will be overwritten by server '{}'.",
+                        kind, key, previousServer, serverName);
+            }
+            mapping.put(key, serverName);
+        }
+
+        current.clear();
+        current.putAll(next);
+
+        CatalogDiff diff = new CatalogDiff(serverName, kind, added, removed, changed);
+        if (!diff.isEmpty()) {
+            invalidate();
+        }
+        return diff;
+    }
+
+    private static boolean containsKey(ServerEntry entry, String kind, String key) {
+        return switch (kind) {
+            case "tools" -> entry.tools.containsKey(key);
+            case "resources" -> entry.resources.containsKey(key);
+            default -> entry.prompts.containsKey(key);
+        };
+    }
+
+    private void publish(CatalogDiff diff) {
+        if (diff.isEmpty()) {
+            return;
+        }
+        for (Consumer<CatalogDiff> listener : listeners) {
+            try {
+                listener.accept(diff);
+            } catch (Exception e) {
+                logger.error("Catalog listener failed while handling {}: {}", diff, e.getMessage(), e);
+            }
+        }
+    }
+
+    private void invalidate() {
+        cachedOllamaTools = null;
+        cachedSystemPrompt = null;
+        version++;
+    }
+
+    /**
+     * A counter that increases every time the catalog changes. Consumers holding derived data
+     * (e.g., a system prompt already placed in a conversation) compare it to detect staleness.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Changes how tools are described in the system prompt. Cached tool fragments are dropped;
+     * converted schemas are kept since they do not depend on the profile.
+     */
+    public synchronized void setPromptProfile(SystemPromptBuilder.Profile profile) {
+        if (profile == promptProfile) {
+            return;
+        }
+        promptProfile = profile;
+        servers.values().forEach(entry -> entry.tools.values().forEach(encoded -> encoded.promptFragment = null));
+        invalidate();
+    }
+
+    public synchronized SystemPromptBuilder.Profile getPromptProfile() {
+        return promptProfile;
+    }
+
+    /**
+     * Estimates the token footprint of the full system prompt under each profile, so the cost of
+     * the active profile can be compared with the alternatives.
+     */
+    public synchronized Map<SystemPromptBuilder.Profile, Integer> estimatePromptFootprints() {
+        Map<SystemPromptBuilder.Profile, Integer> footprints = new EnumMap<>(SystemPromptBuilder.Profile.class);
+        List<String> resourceSections = collect(resourceToServerMapping, e -> e.resources, this::resourceFragmentOf);
+        List<String> promptSections = collect(promptToServerMapping, e -> e.prompts, this::promptFragmentOf);
+        for (SystemPromptBuilder.Profile profile : SystemPromptBuilder.Profile.values()) {
+            String prompt = profile == promptProfile
+                    ? getSystemPrompt()
+                    : SystemPromptBuilder.assemble(
+                            collect(toolToServerMapping, e -> e.tools, enc -> SystemPromptBuilder.formatTool(ollamaToolOf(enc), profile)),
+                            resourceSections, promptSections, profile);
+            footprints.put(profile, TokenEstimator.estimate(prompt));
+        }
+        return footprints;
+    }
+
+    public synchronized void clear() {
+        servers.clear();
+        toolToServerMapping.clear();
+        resourceToServerMapping.clear();
+        promptToServerMapping.clear();
+        invalidate();
+    }
+
+    public synchronized String getServerForTool(String toolName) {
+        return toolToServerMapping.get(toolName);
+    }
+
+    public synchronized String getServerForResource(String resourceUri) {
+        return resourceToServerMapping.get(resourceUri);
+    }
+
+    public synchronized String getServerForPrompt(String promptName) {
+        return promptToServerMapping.get(promptName);
+    }
+
+    public synchronized Optional<McpSchema.Tool> findTool(String toolName) {
+        return Optional.ofNullable(lookup(toolToServerMapping, toolName, e -> e.tools));
+    }
+
+    public synchronized Optional<McpSchema.Resource> findResource(String resourceUri) {
+        return Optional.ofNullable(lookup(resourceToServerMapping, resourceUri, e -> e.resources));
+    }
+
+    public synchronized Optional<McpSchema.Prompt> findPrompt(String promptName) {
+        return Optional.ofNullable(lookup(promptToServerMapping, promptName, e -> e.prompts));
+    }
+
+    private <T> T lookup(Map<String, String> mapping, String key, Function<ServerEntry, Map<String, Encoded<T>>> section) {
+        String serverName = mapping.get(key);
+        ServerEntry entry = serverName != null ? servers.get(serverName) : null;
+        Encoded<T> encoded = entry != null ? section.apply(entry).get(key) : null;
+        return encoded != null ? encoded.source : null;
+    }
+
+    /**
+     * Gathers all unique tools from all servers. When two servers expose the same name, the mapped one wins.
+     */
+    public synchronized List<McpSchema.Tool> getAllTools() {
+        return collect(toolToServerMapping, e -> e.tools, enc -> enc.source);
+    }
+
+    public synchronized List<McpSchema.Resource> getAllResources() {
+        return collect(resourceToServerMapping, e -> e.resources, enc -> enc.source);
+    }
+
+    public synchronized List<McpSchema.Prompt> getAllPrompts() {
+        return collect(promptToServerMapping, e -> e.prompts, enc -> enc.source);
+    }
+
+    /**
+     * Returns the tools converted to the Ollama format. Only entries that changed since the last call are converted.
+     */
+    public synchronized List<OllamaApi.Tool> getOllamaTools() {
+        if (cachedOllamaTools == null) {
+            cachedOllamaTools = List.copyOf(collect(toolToServerMapping, e -> e.tools, this::ollamaToolOf));
+        }
+        return cachedOllamaTools;
+    }
+
+    /**
+     * Returns the system prompt describing every capability. Fragments of unchanged entries are reused.
+     */
+    public synchronized String getSystemPrompt() {
+        if (cachedSystemPrompt == null) {
+            cachedSystemPrompt = SystemPromptBuilder.assemble(
+                    collect(toolToServerMapping, e -> e.tools, this::toolFragmentOf),
+                    collect(resourceToServerMapping, e -> e.resources, this::resourceFragmentOf),
+                    collect(promptToServerMapping, e -> e.prompts, this::promptFragmentOf),
+                    promptProfile);
+        }
+        return cachedSystemPrompt;
+    }
+
+    /**
+     * Returns a system prompt that only describes the given tools, for requests that expose a subset of the catalog.
+     *
+     * @param toolNames The tools to describe, or {@code null} to describe all of them.
+     */
+    public synchronized String getSystemPrompt(Set<String> toolNames) {
+        if (toolNames == null) {
+            return getSystemPrompt();
+        }
+        List<String> toolSections = new ArrayList<>();
+        servers.forEach((serverName, entry) -> entry.tools.forEach((name, encoded) -> {
+            if (toolNames.contains(name) && serverName.equals(toolToServerMapping.get(name))) {
+                toolSections.add(toolFragmentOf(encoded));
+            }
+        }));
+        return SystemPromptBuilder.assemble(
+                toolSections,
+                collect(resourceToServerMapping, e -> e.resources, this::resourceFragmentOf),
+                collect(promptToServerMapping, e -> e.prompts, this::promptFragmentOf),
+                promptProfile);
+    }
+
+    private <T, R> List<R> collect(Map<String, String> mapping, Function<ServerEntry, Map<String, Encoded<T>>> section,
+                                   Function<Encoded<T>, R> mapper) {
+        List<R> result = new ArrayList<>();
+        servers.forEach((serverName, entry) -> section.apply(entry).forEach((key, encoded) -> {
+            if (serverName.equals(mapping.get(key))) {
+                result.add(mapper.apply(encoded));
+            }
+        }));
+        return result;
+    }
+
+    private OllamaApi.Tool ollamaToolOf(Encoded<McpSchema.Tool> encoded) {
+        if (encoded.ollamaTool == null) {
+            encoded.ollamaTool = SchemaConverter.convertMcpToolsToOllamaTools(List.of(encoded.source)).get(0);
+        }
+        return encoded.ollamaTool;
+    }
+
+    private String toolFragmentOf(Encoded<McpSchema.Tool> encoded) {
+        if (encoded.promptFragment == null) {
+            // Reuse the converted schema instead of converting the MCP schema again
+            encoded.promptFragment = SystemPromptBuilder.formatTool(ollamaToolOf(encoded), promptProfile);
+        }
+        return encoded.promptFragment;
+    }
+
+    private String resourceFragmentOf(Encoded<McpSchema.Resource> encoded) {
+        if (encoded.promptFragment == null) {
+            encoded.promptFragment = SystemPromptBuilder.formatResource(encoded.source);
+        }
+        return encoded.promptFragment;
+    }
+
+    private String promptFragmentOf(Encoded<McpSchema.Prompt> encoded) {
+        if (encoded.promptFragment == null) {
+            encoded.promptFragment = SystemPromptBuilder.formatPrompt(encoded.source);
+        }
+        return encoded.promptFragment;
+    }
+}
@@ -1,20 +1,23 @@
 package com.brunorozendo.mcphost.control;
 
 import com.brunorozendo.mcphost.model.OllamaApi;
+import com.brunorozendo.mcphost.service.SessionJournal;
+import com.brunorozendo.mcphost.service.llm.ChatStreamListener;
 import com.brunorozendo.mcphost.service.llm.LlmApiClient;
-import com.brunorozendo.mcphost.util.LoadingAnimator;
+import com.brunorozendo.mcphost.util.TerminalRenderer;
 import io.modelcontextprotocol.spec.McpSchema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 /**
@@ -23,145 +26,392 @@ import java.util.stream.Collectors;
 public class ChatController {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatController.class);
-    private static final Logger cliLogger = LoggerFactory.getLogger("CLI");
-    private static final Pattern THINK_TAG_PATTERN = Pattern.compile("<think>(.*?)</think>", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    public static final String STATS_COMMAND = "/stats";
 
     private final String modelName;
     private final LlmApiClient llmApiClient;
     private final McpConnectionManager mcpConnectionManager;
-    private final LoadingAnimator animator;
-    private final List<OllamaApi.Tool> ollamaTools;
+    private final TerminalRenderer renderer;
+    private final CapabilityCatalog catalog;
+    private final ToolSelector toolSelector;
+    private final ToolResultStore toolResultStore;
+    private final SpeculativeToolDispatcher speculativeTools;
+    private final ResourceReader resourceReader;
+    private final PromptCommands promptCommands;
+    private final UsageTracker usage;
+    private final GenerationOptions generationOptions;
+    private final TurnGuard turnGuard;
+    private final Map<String, LocalTool> localTools = new LinkedHashMap<>();
     private final List<OllamaApi.Message> conversationHistory = new ArrayList<>();
+    private final boolean streaming;
+    private final ChatOptions.ThinkingDisplay thinkingDisplay;
+    private SessionJournal journal;
+    private int thinkingTokens;
+    private int thinkingResponses;
 
     public ChatController(String modelName, LlmApiClient llmApiClient, McpConnectionManager mcpConnectionManager,
-                          LoadingAnimator animator, String systemPrompt, List<OllamaApi.Tool> ollamaTools) {
+                          TerminalRenderer renderer, CapabilityCatalog catalog, ChatOptions options) {
         this.modelName = modelName;
         this.llmApiClient = llmApiClient;
         this.mcpConnectionManager = mcpConnectionManager;
-        this.animator = animator;
-        this.ollamaTools = ollamaTools;
+        this.renderer = renderer;
+        this.catalog = catalog;
+        this.toolSelector = new ToolSelector(catalog, options.getToolTopK(), options.getPinnedTools());
+        this.streaming = options.isStreaming();
+        this.thinkingDisplay = options.getThinkingDisplay();
+
+        boolean ephemeralResults = options.getToolResultDirectory() == null;
+        Path resultDirectory = ephemeralResults
+                ? Path.of(System.getProperty("java.io.tmpdir"), "mcphost-results-" + ProcessHandle.current().pid())
+                : options.getToolResultDirectory();
+        this.toolResultStore = new ToolResultStore(resultDirectory, options.getMaxToolResultChars(),
+                options.getToolResultPreviewChars(), ephemeralResults);
+        registerLocalTool(toolResultStore);
+        this.resourceReader = new ResourceReader(mcpConnectionManager, catalog, options.getMaxToolResultChars());
+        registerLocalTool(resourceReader);
+        this.promptCommands = new PromptCommands(mcpConnectionManager, catalog);
+        this.usage = new UsageTracker(options.getMaxTurnTokens(), options.getMaxSessionTokens());
+        this.generationOptions = new GenerationOptions(options.getMinContextTokens(), options.getMaxContextTokens(),
+                options.getMaxAnswerTokens(), options.getMaxToolTurnTokens());
+        this.turnGuard = new TurnGuard(options.getMaxToolRounds(), options.getMaxToolCalls(), options.getTurnTimeout());
+        this.speculativeTools = new SpeculativeToolDispatcher(options.getSpeculativeTools(), mcpConnectionManager, catalog, renderer);
 
         // Initialize conversation with the system prompt
+        String systemPrompt = catalog.getSystemPrompt();
         if (systemPrompt != null && !systemPrompt.isBlank()) {
-            logger.debug("Initializing with System Prompt:\n{}", systemPrompt);
+            // The prompt can be long and changes with every tool selection, so only its size is logged at DEBUG
+            logger.debug("Initializing with a system prompt of {} chars", systemPrompt.length());
+            logger.trace("System prompt:\n{}", systemPrompt);
             this.conversationHistory.add(new OllamaApi.Message("system", systemPrompt));
         }
     }
 
+    private void registerLocalTool(LocalTool tool) {
+        localTools.put(tool.definition().function().name(), tool);
+    }
+
+    /**
+     * Records every message added to the conversation (except the system prompt, which is rebuilt
+     * from the live catalog) in the given journal, so the session can be resumed after a crash.
+     */
+    public void setJournal(SessionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Restores a previous conversation, e.g. replayed from a session journal. The messages, including
+     * tool results, are placed in the history as they were; no tool is invoked again.
+     *
+     * @param messages The messages to restore, in order. System messages are skipped.
+     */
+    public void resumeFrom(List<OllamaApi.Message> messages) {
+        int restored = 0;
+        for (OllamaApi.Message message : messages) {
+            if (!"system".equals(message.role())) {
+                conversationHistory.add(message);
+                restored++;
+            }
+        }
+        logger.info("Restored {} messages into the conversation history.", restored);
+    }
+
     /**
      * Starts and manages the main interactive loop with the user.
      */
     public void startInteractiveSession() {
-        cliLogger.info("\n✅ Interactive chat started. Type 'exit' or 'quit' to end.");
-        cliLogger.info("============================================================");
+        renderer.println("\n✅ Interactive chat started. Type 'exit' or 'quit' to end.");
+        renderer.println("============================================================");
 
         try (BufferedReader consoleReader = new BufferedReader(new InputStreamReader(System.in))) {
             while (true) {
-                cliLogger.info(""); // New line for readability
+                renderer.println(""); // New line for readability
                 String userInput = promptUser(consoleReader);
 
                 if (userInput == null || "exit".equalsIgnoreCase(userInput.trim()) || "quit".equalsIgnoreCase(userInput.trim())) {
                     break;
                 }
 
-                // Add user message to history
-                conversationHistory.add(new OllamaApi.Message("user", userInput));
-
-                // Process the turn, including potential tool calls
-                processConversationTurn(userInput);
+                handleUserInput(userInput);
             }
         } catch (Exception e) {
             logger.error("An unexpected error occurred in the chat loop.", e);
-            cliLogger.error("An unexpected error occurred. Please check the logs.");
+            renderer.println("An unexpected error occurred. Please check the logs.");
+        } finally {
+            speculativeTools.close();
         }
 
-        cliLogger.info("\n============================================================");
-        cliLogger.info("Chat session ended.");
+        logger.debug("Prompt expansion cache: {}", promptCommands.stats());
+        logger.info("Session usage: {}", usage.formatSession());
+        String clientStats = llmApiClient.stats();
+        if (clientStats != null) {
+            logger.info("{}", clientStats);
+        }
+        if (thinkingResponses > 0) {
+            logger.info("The model spent ~{} tokens on reasoning across {} responses.", thinkingTokens, thinkingResponses);
+        }
+        renderer.println("\n============================================================");
+        renderer.println("Chat session ended.");
+        renderer.flush();
+    }
+
+    /**
+     * Handles one line of user input as the interactive session does: a slash command or a chat message with its
+     * resource references attached, followed by the LLM turn and any tool calls. Also used to drive sessions
+     * without a console, e.g. by the load test.
+     */
+    public void handleUserInput(String userInput) {
+        if (STATS_COMMAND.equals(userInput.strip())) {
+            renderer.println(usage.format());
+            if (generationOptions.contextSize() > 0) {
+                renderer.println(String.format("Context window (num_ctx): %,d tokens", generationOptions.contextSize()));
+            }
+            String clientStats = llmApiClient.stats();
+            if (clientStats != null) {
+                renderer.println(clientStats);
+            }
+            return;
+        }
+        String exhausted = usage.sessionBudgetExceeded();
+        if (exhausted != null) {
+            renderer.println(exhausted + " Start a new session to continue.");
+            return;
+        }
+        if (promptCommands.isCommand(userInput)) {
+            // A /prompt command is replaced by the messages of its expanded template
+            List<OllamaApi.Message> promptMessages = runPromptCommand(userInput);
+            if (promptMessages == null) {
+                return;
+            }
+            promptMessages.forEach(this::appendToHistory);
+        } else {
+            // Add user message to history, with the contents of any @<uri> resource references attached
+            ResourceReader.Expansion expansion = resourceReader.expandReferences(userInput);
+            for (ResourceReader.Attachment attachment : expansion.attachments()) {
+                renderer.println("Attached resource " + attachment.uri() + " (" + attachment.chars() + " characters)");
+            }
+            for (String failure : expansion.failures()) {
+                renderer.println("Could not attach resource " + failure);
+            }
+            appendToHistory(new OllamaApi.Message("user", expansion.text()));
+        }
+
+        // Process the turn, including potential tool calls
+        processConversationTurn();
+    }
+
+    /**
+     * Expands a slash command, or lists the prompts for {@value PromptCommands#LIST_COMMAND}.
+     *
+     * @return The messages to add to the conversation, or null if there is nothing to send to the LLM.
+     */
+    private List<OllamaApi.Message> runPromptCommand(String command) {
+        if (PromptCommands.LIST_COMMAND.equals(command.strip()) && catalog.findPrompt("prompts").isEmpty()) {
+            renderer.println(promptCommands.listPrompts());
+            return null;
+        }
+        try {
+            PromptCommands.Expansion expansion = promptCommands.expand(command);
+            renderer.println("Expanded prompt /" + expansion.promptName() + " into " + expansion.messages().size()
+                    + (expansion.messages().size() == 1 ? " message" : " messages") + (expansion.cached() ? " (cached)" : ""));
+            return expansion.messages();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            renderer.println(e.getMessage());
+            return null;
+        }
     }
 
     private String promptUser(BufferedReader reader) throws Exception {
-        PrintWriter consoleWriter = new PrintWriter(System.out, true);
-        consoleWriter.print("You: ");
-        consoleWriter.flush();
-        return reader.readLine();
+        renderer.print("You: ");
+        // Everything printed so far must be on screen before the user types
+        renderer.flush();
+        String line = reader.readLine();
+        renderer.inputLineEntered();
+        return line;
     }
 
     /**
      * Handles a single turn of the conversation, which may involve multiple calls to the LLM
      * if tool usage is required.
      */
-    private void processConversationTurn(String userInput) {
-        boolean requiresFollowUp;
+    private void processConversationTurn() {
+        toolSelector.startTurn();
+        usage.startTurn();
+        turnGuard.startTurn();
+        boolean requiresFollowUp = false;
+        boolean wrapUp = false;
         do {
+            // Requests after tool results get their own generation limit
+            GenerationOptions.RequestKind kind = requiresFollowUp
+                    ? GenerationOptions.RequestKind.AFTER_TOOLS : GenerationOptions.RequestKind.ANSWER;
             requiresFollowUp = false;
 
-            // 1. Call the LLM with the current conversation history
-            OllamaApi.ChatResponse chatResponse = callLlm(userInput);
+            // 1. Call the LLM with the current conversation history; its thinking and text are displayed as they arrive
+            OllamaApi.ChatResponse chatResponse = callLlm(kind, wrapUp);
             if (chatResponse == null || chatResponse.message() == null) {
-                cliLogger.error("LLM: (No response received due to an API error)");
+                renderer.println("LLM: (No response received due to an API error)");
                 break; // Exit the loop on API error
             }
 
             OllamaApi.Message assistantMessage = chatResponse.message();
-            conversationHistory.add(assistantMessage); // Add assistant's response to history
-
-            // 2. Display the assistant's thinking and text content
-            displayAssistantMessage(assistantMessage);
+            boolean hasToolCalls = assistantMessage.tool_calls() != null && !assistantMessage.tool_calls().isEmpty();
+            if (wrapUp && hasToolCalls) {
+                // It was offered no tools; the answer it gave, if any, is all there is. The calls are dropped, since
+                // calls without results would make the next request (and a resumed session) invalid.
+                logger.warn("The model requested tools after being told to wrap up; ending the turn.");
+                appendToHistory(new OllamaApi.Message(assistantMessage.role(), assistantMessage.content(),
+                        assistantMessage.images(), null));
+                break;
+            }
+            appendToHistory(assistantMessage); // Add assistant's response to history
 
-            // 3. If the assistant requested tool calls, execute them
-            if (assistantMessage.tool_calls() != null && !assistantMessage.tool_calls().isEmpty()) {
+            // 2. If the assistant requested tool calls, execute them
+            if (hasToolCalls) {
                 executeToolCalls(assistantMessage.tool_calls());
+                turnGuard.toolRoundCompleted();
                 requiresFollowUp = true; // A tool was called, so we need to send the result back to the LLM
             }
 
+            // Stop a turn that keeps calling tools once it runs out of tokens
+            String exceeded = requiresFollowUp ? usage.turnBudgetExceeded() : null;
+            if (exceeded != null) {
+                logger.warn("Stopping the turn before sending the tool results back: {}", exceeded);
+                renderer.println("LLM: (Stopped: " + exceeded + ")");
+                break;
+            }
+
+            // A turn that keeps calling tools gets one last request, without tools, to answer with what it has
+            String stopReason = requiresFollowUp ? turnGuard.stopReason() : null;
+            if (stopReason != null) {
+                logger.warn("Asking the model to wrap up the turn: {}", stopReason);
+                renderer.println("LLM: (" + stopReason + " Asking for a final answer.)");
+                appendToHistory(new OllamaApi.Message("user", stopReason
+                        + " Do not call any more tools; answer now with the information you already have."));
+                wrapUp = true;
+            }
+
         } while (requiresFollowUp);
+        logger.debug("Turn summary: {}", turnGuard.summary());
+        usage.endTurn();
     }
 
-    private OllamaApi.ChatResponse callLlm(String userInput) {
+    /**
+     * Places the given system prompt at the head of the conversation. This picks up capability changes announced by
+     * MCP servers and per-turn tool selection; the rest of the conversation is left untouched.
+     */
+    private void updateSystemMessage(String systemPrompt) {
+        boolean hasSystemMessage = !conversationHistory.isEmpty() && "system".equals(conversationHistory.get(0).role());
+        if (hasSystemMessage) {
+            String current = conversationHistory.get(0).content();
+            if (current == systemPrompt || current.equals(systemPrompt)) {
+                return;
+            }
+            conversationHistory.set(0, new OllamaApi.Message("system", systemPrompt));
+        } else {
+            conversationHistory.add(0, new OllamaApi.Message("system", systemPrompt));
+        }
+        logger.debug("Updated the system prompt ({} chars)", systemPrompt.length());
+        logger.trace("System prompt:\n{}", systemPrompt);
+    }
+
+    /**
+     * @param wrapUp Whether to offer no tools, so the model has to answer.
+     */
+    private OllamaApi.ChatResponse callLlm(GenerationOptions.RequestKind kind, boolean wrapUp) {
+        ToolSelector.Selection selection = toolSelector.select(conversationHistory);
+        updateSystemMessage(catalog.getSystemPrompt(selection.toolNames()));
+
+        List<OllamaApi.Message> messages = new ArrayList<>(conversationHistory); // Send a copy
+        List<OllamaApi.Tool> tools = wrapUp ? null : withLocalTools(selection.tools());
         OllamaApi.ChatRequest chatRequest = new OllamaApi.ChatRequest(
                 modelName,
-                new ArrayList<>(conversationHistory), // Send a copy
-                false,
-                ollamaTools.isEmpty() ? null : ollamaTools
+                messages,
+                streaming,
+                tools,
+                null,
+                generationOptions.forRequest(messages, tools, kind),
+                null
         );
 
-        String thinkingMessage = extractThinkingMessage(userInput, "LLM is thinking...");
-        animator.start(thinkingMessage);
+        AssistantStreamPrinter printer = new AssistantStreamPrinter(renderer, thinkingDisplay, streaming);
+        long startNanos = System.nanoTime();
+        long[] firstTokenNanos = {0};
+        // Text goes to the screen; whitelisted tool calls start running while the rest of the message is generated
+        ChatStreamListener listener = new ChatStreamListener() {
+            @Override
+            public void onContent(String delta) {
+                markFirstToken();
+                printer.onContent(delta);
+            }
+
+            @Override
+            public void onToolCall(OllamaApi.ToolCall toolCall) {
+                markFirstToken();
+                speculativeTools.offer(toolCall);
+            }
+
+            private void markFirstToken() {
+                if (firstTokenNanos[0] == 0) {
+                    firstTokenNanos[0] = System.nanoTime();
+                }
+            }
+        };
+        printer.start();
+        OllamaApi.ChatResponse response = null;
+        Exception failure = null;
         try {
-            return llmApiClient.chat(chatRequest);
+            if (streaming) {
+                response = llmApiClient.chatStream(chatRequest, listener);
+            } else {
+                response = llmApiClient.chat(chatRequest);
+                ChatStreamListener.replay(response, listener);
+                firstTokenNanos[0] = 0; // Replayed content says nothing about when it was generated
+            }
         } catch (Exception e) {
-            logger.error("Error communicating with {} API: {}", llmApiClient.getProviderName(), e.getMessage(), e);
-            cliLogger.error("LLM: (Error communicating with {} API: {})", llmApiClient.getProviderName(), e.getMessage());
-            return null;
+            failure = e;
         } finally {
-            animator.stop();
+            printer.finish();
+            recordThinking(printer.getThinkingTokens());
         }
-    }
-
-    private void displayAssistantMessage(OllamaApi.Message assistantMessage) {
-        String assistantContent = assistantMessage.content() != null ? assistantMessage.content() : "";
-        String displayContent = assistantContent;
 
-        Matcher assistantThinkMatcher = THINK_TAG_PATTERN.matcher(assistantContent);
-        boolean assistantIsThinking = assistantThinkMatcher.find();
-        String assistantThinkContent = "";
+        // Reported only now, after a partly printed answer has been ended
+        if (failure != null) {
+            speculativeTools.discardAll();
+            logger.error("Error communicating with {} API: {}", llmApiClient.getProviderName(), failure.getMessage(), failure);
+            renderer.println("LLM: (Error communicating with " + llmApiClient.getProviderName() + " API: " + failure.getMessage() + ")");
+            return null;
+        }
+        recordUsage(response, startNanos, firstTokenNanos[0]);
+        return response;
+    }
 
-        if (assistantIsThinking) {
-            assistantThinkContent = assistantThinkMatcher.group(1).trim();
-            // Remove the <think> tags for final display
-            displayContent = assistantThinkMatcher.replaceAll("").trim();
+    private void recordUsage(OllamaApi.ChatResponse response, long startNanos, long firstTokenNanos) {
+        if (response == null) {
+            return;
         }
+        generationOptions.onResponse(response);
+        UsageTracker.RequestUsage requestUsage = usage.record(response, startNanos, firstTokenNanos, System.nanoTime());
+        if (journal != null) {
+            journal.appendUsage(requestUsage.toRecord());
+        }
+    }
 
-        // Display the main text content if it exists
-        if (!displayContent.isEmpty()) {
-            cliLogger.info("LLM: " + displayContent);
+    private void recordThinking(int tokens) {
+        if (tokens > 0) {
+            thinkingTokens += tokens;
+            thinkingResponses++;
+            logger.debug("Reasoning used ~{} tokens in this response", tokens);
         }
-        // If there's no text but there was a thought, display the thought
-        else if (assistantIsThinking && (assistantMessage.tool_calls() == null || assistantMessage.tool_calls().isEmpty())) {
-            if (!assistantThinkContent.isEmpty()) {
-                cliLogger.info("LLM (thinking): " + assistantThinkContent);
+    }
+
+    private List<OllamaApi.Tool> withLocalTools(List<OllamaApi.Tool> tools) {
+        List<OllamaApi.Tool> result = new ArrayList<>(tools);
+        for (LocalTool localTool : localTools.values()) {
+            if (localTool.isAvailable()) {
+                result.add(localTool.definition());
             }
         }
+        return result.isEmpty() ? null : result;
     }
 
     private void executeToolCalls(List<OllamaApi.ToolCall> toolCalls) {
@@ -169,7 +419,33 @@ public class ChatController {
             String toolName = toolCall.function().name();
             Map<String, Object> toolArgs = toolCall.function().arguments();
 
-            cliLogger.info("LLM -> Tool Call: {} | Args: {}", toolName, toolArgs);
+            renderer.printBlock("LLM -> Tool Call: " + toolName + " | Args: ", String.valueOf(toolArgs));
+
+            String refused = turnGuard.admitToolCall();
+            if (refused != null) {
+                renderer.printBlock("Tool -> Result: ", refused);
+                addToolResultToHistory(refused);
+                continue;
+            }
+            String previous = turnGuard.previousResult(toolName, toolArgs);
+            if (previous != null) {
+                renderer.println("Tool -> Same call as earlier in this turn; its result is reused.");
+                addToolResultToHistory("(Identical to an earlier call in this turn; the result is repeated.)\n" + previous);
+                continue;
+            }
+
+            LocalTool localTool = localTools.get(toolName);
+            if (localTool != null) {
+                String localResult = formatLocalToolResult(toolName, localTool.call(toolArgs != null ? toolArgs : Map.of()));
+                renderer.printBlock("Tool -> Result: ", localResult);
+                turnGuard.remember(toolName, toolArgs, localResult);
+                addToolResultToHistory(localResult);
+                continue;
+            }
+
+            if (!toolSelector.wasExposed(toolName)) {
+                toolSelector.widen(toolName);
+            }
 
             if (toolArgs == null) {
                 logger.error("Tool call for '{}' received null arguments.", toolName);
@@ -177,59 +453,56 @@ public class ChatController {
                 continue;
             }
 
-            String toolThinkingMessage = "Executing tool " + toolName + "...";
-            animator.start(toolThinkingMessage);
+            // A whitelisted call may already be running (or done) since it was streamed
+            CompletableFuture<McpSchema.CallToolResult> speculative = speculativeTools.take(toolCall);
+            TerminalRenderer.Task progress = speculative == null ? renderer.startTask("Executing tool " + toolName + "...") : null;
 
             McpSchema.CallToolResult mcpToolResult;
             try {
-                mcpToolResult = mcpConnectionManager.callTool(toolName, toolArgs);
+                mcpToolResult = speculative != null ? speculative.join() : mcpConnectionManager.callTool(toolName, toolArgs);
             } catch (Exception e) {
-                logger.error("Error executing MCP tool '{}': {}", toolName, e.getMessage(), e);
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                logger.error("Error executing MCP tool '{}': {}", toolName, cause.getMessage(), cause);
                 mcpToolResult = new McpSchema.CallToolResult(
-                        List.of(new McpSchema.TextContent("Error during tool execution: " + e.getMessage())), true);
+                        List.of(new McpSchema.TextContent("Error during tool execution: " + cause.getMessage())), true);
             } finally {
-                animator.stop();
+                if (progress != null) {
+                    progress.finish();
+                }
             }
 
             String toolResultString = formatToolResult(toolName, mcpToolResult);
-            cliLogger.info("Tool -> Result: {}", toolResultString);
+            renderer.printBlock("Tool -> Result: ", toolResultString);
+            turnGuard.remember(toolName, toolArgs, toolResultString);
             addToolResultToHistory(toolResultString);
         }
+        // Calls started for tool calls that were handled differently (local tools, invalid arguments)
+        speculativeTools.discardAll();
     }
 
     private String formatToolResult(String toolName, McpSchema.CallToolResult result) {
-        // Join the text content from the result.
+        // Large results are spilled to disk and non-text content is summarised
+        return toolResultStore.format(toolName, result);
+    }
+
+    private String formatLocalToolResult(String toolName, McpSchema.CallToolResult result) {
+        // Local tools already bound their output, so it is never spilled again
         String content = result.content().stream()
                 .filter(c -> c instanceof McpSchema.TextContent)
                 .map(c -> ((McpSchema.TextContent) c).text())
                 .collect(Collectors.joining("\n"));
-
-        if (content.isEmpty() && !result.content().isEmpty()) {
-            // Fallback for non-text content, just use toString()
-            content = result.content().get(0).toString();
-        } else if (content.isEmpty()) {
-            content = "Tool " + toolName + " executed with no output.";
-        }
-
-        if (result.isError() != null && result.isError()) {
-            return "Error from tool " + toolName + ": " + content;
-        }
-        return content;
+        return Boolean.TRUE.equals(result.isError()) ? "Error from tool " + toolName + ": " + content : content;
     }
 
     private void addToolResultToHistory(String toolResultString) {
         // The role for tool results is 'tool'
-        conversationHistory.add(new OllamaApi.Message("tool", toolResultString));
+        appendToHistory(new OllamaApi.Message("tool", toolResultString));
     }
 
-    private String extractThinkingMessage(String text, String defaultMessage) {
-        Matcher matcher = THINK_TAG_PATTERN.matcher(text);
-        if (matcher.find()) {
-            String thinkContent = matcher.group(1).trim();
-            if (!thinkContent.isEmpty()) {
-                return "LLM: " + thinkContent;
-            }
+    private void appendToHistory(OllamaApi.Message message) {
+        conversationHistory.add(message);
+        if (journal != null) {
+            journal.appendMessage(message);
         }
-        return defaultMessage;
     }
 }
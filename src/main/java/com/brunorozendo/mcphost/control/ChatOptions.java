@@ -0,0 +1,91 @@
+package com.brunorozendo.mcphost.control;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tunable settings for a chat session. {@link com.brunorozendo.mcphost.Main} fills them from the command line.
+ */
+public class ChatOptions {
+
+    /**
+     * How the model's reasoning (text inside {@code <think>} tags) is shown.
+     */
+    public enum ThinkingDisplay {
+        // Print the reasoning as it is generated
+        LIVE,
+        // Show a token counter while the model thinks and a one-line summary afterwards
+        COLLAPSED,
+        // Show nothing
+        HIDDEN
+    }
+
+    // 0 exposes every tool on every request
+    private int toolTopK = 0;
+    private List<String> pinnedTools = new ArrayList<>();
+
+    // Tool results longer than this are spilled to disk and replaced by a preview (0 disables spilling)
+    private int maxToolResultChars = 20_000;
+    private int toolResultPreviewChars = 2_000;
+    // Where spilled results are kept; null uses a temporary directory that is removed on exit
+    private Path toolResultDirectory;
+
+    // Stream answers token by token; without it the whole message is shown once it is complete
+    private boolean streaming = true;
+    private ThinkingDisplay thinkingDisplay = ThinkingDisplay.COLLAPSED;
+    // Side-effect-free tools that may start while the model is still streaming the rest of its message
+    private List<String> speculativeTools = new ArrayList<>();
+
+    // Token budgets (prompt + completion, summed over requests); 0 means no limit
+    private long maxTurnTokens = 0;
+    private long maxSessionTokens = 0;
+
+    // The context window (num_ctx) grows in power-of-two steps between these; a minimum of 0 leaves it to the server
+    private int minContextTokens = GenerationOptions.DEFAULT_MIN_CONTEXT;
+    private int maxContextTokens = GenerationOptions.DEFAULT_MAX_CONTEXT;
+    // Generation limits (num_predict / max_tokens) of answers and of requests after tool results; 0 means no limit
+    private int maxAnswerTokens = 0;
+    private int maxToolTurnTokens = 0;
+
+    // Loop limits of a single turn; 0 (or a zero timeout) means no limit
+    private int maxToolRounds = TurnGuard.DEFAULT_MAX_TOOL_ROUNDS;
+    private int maxToolCalls = TurnGuard.DEFAULT_MAX_TOOL_CALLS;
+    private Duration turnTimeout = TurnGuard.DEFAULT_TURN_TIMEOUT;
+
+    public int getToolTopK() { return toolTopK; }
+    public void setToolTopK(int toolTopK) { this.toolTopK = toolTopK; }
+    public List<String> getPinnedTools() { return pinnedTools; }
+    public void setPinnedTools(List<String> pinnedTools) { this.pinnedTools = pinnedTools != null ? pinnedTools : new ArrayList<>(); }
+    public int getMaxToolResultChars() { return maxToolResultChars; }
+    public void setMaxToolResultChars(int maxToolResultChars) { this.maxToolResultChars = maxToolResultChars; }
+    public int getToolResultPreviewChars() { return toolResultPreviewChars; }
+    public void setToolResultPreviewChars(int toolResultPreviewChars) { this.toolResultPreviewChars = toolResultPreviewChars; }
+    public Path getToolResultDirectory() { return toolResultDirectory; }
+    public void setToolResultDirectory(Path toolResultDirectory) { this.toolResultDirectory = toolResultDirectory; }
+    public boolean isStreaming() { return streaming; }
+    public void setStreaming(boolean streaming) { this.streaming = streaming; }
+    public ThinkingDisplay getThinkingDisplay() { return thinkingDisplay; }
+    public void setThinkingDisplay(ThinkingDisplay thinkingDisplay) { this.thinkingDisplay = thinkingDisplay; }
+    public List<String> getSpeculativeTools() { return speculativeTools; }
+    public void setSpeculativeTools(List<String> speculativeTools) { this.speculativeTools = speculativeTools != null ? speculativeTools : new ArrayList<>(); }
+    public long getMaxTurnTokens() { return maxTurnTokens; }
+    public void setMaxTurnTokens(long maxTurnTokens) { this.maxTurnTokens = maxTurnTokens; }
+    public long getMaxSessionTokens() { return maxSessionTokens; }
+    public void setMaxSessionTokens(long maxSessionTokens) { this.maxSessionTokens = maxSessionTokens; }
+    public int getMinContextTokens() { return minContextTokens; }
+    public void setMinContextTokens(int minContextTokens) { this.minContextTokens = minContextTokens; }
+    public int getMaxContextTokens() { return maxContextTokens; }
+    public void setMaxContextTokens(int maxContextTokens) { this.maxContextTokens = maxContextTokens; }
+    public int getMaxAnswerTokens() { return maxAnswerTokens; }
+    public void setMaxAnswerTokens(int maxAnswerTokens) { this.maxAnswerTokens = maxAnswerTokens; }
+    public int getMaxToolTurnTokens() { return maxToolTurnTokens; }
+    public void setMaxToolTurnTokens(int maxToolTurnTokens) { this.maxToolTurnTokens = maxToolTurnTokens; }
+    public int getMaxToolRounds() { return maxToolRounds; }
+    public void setMaxToolRounds(int maxToolRounds) { this.maxToolRounds = maxToolRounds; }
+    public int getMaxToolCalls() { return maxToolCalls; }
+    public void setMaxToolCalls(int maxToolCalls) { this.maxToolCalls = maxToolCalls; }
+    public Duration getTurnTimeout() { return turnTimeout; }
+    public void setTurnTimeout(Duration turnTimeout) { this.turnTimeout = turnTimeout; }
+}
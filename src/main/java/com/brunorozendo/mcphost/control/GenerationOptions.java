@@ -0,0 +1,130 @@
+package com.brunorozendo.mcphost.control;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import com.brunorozendo.mcphost.util.TokenEstimator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses the {@code options} of each chat request: the context window ({@code num_ctx}) and the generation limit
+ * ({@code num_predict}, sent as {@code max_tokens} by the OpenAI-compatible clients).
+ * <p>
+ * The context window is sized from an estimate of the prompt tokens, rounded up to a power-of-two step and never
+ * shrunk within a session: Ollama reloads the model whenever {@code num_ctx} changes, so it should change rarely
+ * and only to make room. The {@link TokenEstimator} estimate is calibrated against the prompt token counts the
+ * server reports.
+ */
+class GenerationOptions {
+
+    private static final Logger logger = LoggerFactory.getLogger(GenerationOptions.class);
+
+    // Adaptive sizing is opt-in: num_ctx overrides the model's own setting, and changing it reloads the model
+    static final int DEFAULT_MIN_CONTEXT = 0;
+    static final int DEFAULT_MAX_CONTEXT = 32768;
+    // Room left for the answer when its length is not capped
+    private static final int DEFAULT_ANSWER_RESERVE = 1024;
+    // Bounds how far the calibration may scale the estimate up, e.g. for code or non-Latin text
+    private static final double MAX_ESTIMATE_SCALE = 3.0;
+
+    /**
+     * What a request is expected to produce, which decides its generation limit.
+     */
+    enum RequestKind {
+        // The first request of a turn, answering the user's message
+        ANSWER,
+        // A request that follows tool results; mostly the arguments of the next call or a short summary
+        AFTER_TOOLS
+    }
+
+    private final int minContext;
+    private final int maxContext;
+    private final int maxAnswerTokens;
+    private final int maxToolTurnTokens;
+
+    private int contextSize;
+    private double estimateScale = 1.0;
+    private int lastEstimate;
+    private boolean overflowReported;
+
+    /**
+     * @param minContext        The smallest context window to request; 0 leaves {@code num_ctx} to the server.
+     * @param maxContext        The largest context window to grow to.
+     * @param maxAnswerTokens   The generation limit of {@link RequestKind#ANSWER} requests (0 = no limit).
+     * @param maxToolTurnTokens The generation limit of {@link RequestKind#AFTER_TOOLS} requests (0 = no limit).
+     */
+    GenerationOptions(int minContext, int maxContext, int maxAnswerTokens, int maxToolTurnTokens) {
+        this.minContext = minContext;
+        this.maxContext = Math.max(maxContext, minContext);
+        this.maxAnswerTokens = maxAnswerTokens;
+        this.maxToolTurnTokens = maxToolTurnTokens;
+    }
+
+    /**
+     * @return The options for a request, or null if there is nothing to set.
+     */
+    Map<String, Object> forRequest(List<OllamaApi.Message> messages, List<OllamaApi.Tool> tools, RequestKind kind) {
+        Map<String, Object> options = new LinkedHashMap<>();
+        int limit = kind == RequestKind.ANSWER ? maxAnswerTokens : maxToolTurnTokens;
+        if (limit > 0) {
+            options.put("num_predict", limit);
+        }
+
+        lastEstimate = TokenEstimator.estimateMessages(messages) + TokenEstimator.estimateTools(tools);
+        if (minContext > 0) {
+            int promptTokens = (int) Math.ceil(lastEstimate * estimateScale);
+            options.put("num_ctx", contextFor(promptTokens + (limit > 0 ? limit : DEFAULT_ANSWER_RESERVE)));
+        }
+        return options.isEmpty() ? null : options;
+    }
+
+    /**
+     * Picks the smallest step that fits, without going below the current window.
+     */
+    private int contextFor(int neededTokens) {
+        int size = minContext;
+        while (size < neededTokens && size < maxContext) {
+            size *= 2;
+        }
+        size = Math.max(Math.min(size, maxContext), contextSize);
+
+        if (size != contextSize) {
+            if (contextSize > 0) {
+                logger.info("Growing the context window from {} to {} tokens (~{} needed); the model will be reloaded.",
+                        contextSize, size, neededTokens);
+            }
+            contextSize = size;
+        }
+        if (neededTokens > size && !overflowReported) {
+            overflowReported = true;
+            logger.warn("The conversation needs ~{} tokens but the context window is capped at {}; the server will "
+                    + "drop the oldest part of it.", neededTokens, size);
+        }
+        return size;
+    }
+
+    /**
+     * Calibrates the estimate against the prompt size the server reported. Servers that reuse a cached prefix
+     * report fewer tokens than the prompt has, so the estimate is only ever scaled up.
+     */
+    void onResponse(OllamaApi.ChatResponse response) {
+        Integer promptTokens = response.promptEvalCount();
+        if (promptTokens != null && promptTokens > 0 && lastEstimate > 0) {
+            double observed = (double) promptTokens / lastEstimate;
+            if (observed > estimateScale) {
+                estimateScale = Math.min(observed, MAX_ESTIMATE_SCALE);
+                logger.debug("Token estimate scaled by {} to match the reported prompt size", String.format("%.2f", estimateScale));
+            }
+        }
+        if ("length".equals(response.done_reason())) {
+            logger.warn("The response was cut off at its generation limit.");
+        }
+    }
+
+    int contextSize() {
+        return contextSize;
+    }
+}
@@ -0,0 +1,30 @@
+package com.brunorozendo.mcphost.control;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import io.modelcontextprotocol.spec.McpSchema;
+
+import java.util.Map;
+
+/**
+ * A tool implemented inside mcphost itself rather than by an MCP server. Local tools are offered to the LLM
+ * next to the MCP tools and are executed in-process, without IPC.
+ */
+public interface LocalTool {
+
+    /**
+     * The definition sent to the LLM.
+     */
+    OllamaApi.Tool definition();
+
+    /**
+     * Whether the tool is currently useful and should be offered to the LLM.
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * Executes the tool.
+     */
+    McpSchema.CallToolResult call(Map<String, Object> arguments);
+}
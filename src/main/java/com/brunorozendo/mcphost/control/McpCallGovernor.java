@@ -0,0 +1,210 @@
+package com.brunorozendo.mcphost.control;
+
+import com.brunorozendo.mcphost.model.McpConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the MCP requests in flight, per server and across all servers. Each server gets a bulkhead: at most
+ * {@code maxConcurrentCalls} requests run at once, at most {@code maxQueuedCalls} more wait for a slot, and any
+ * further request is rejected at once instead of piling up on a stdio server that handles one message at a time.
+ * The global limit ({@code maxConcurrentConnections}) works the same way over all servers.
+ * <p>
+ * Timeouts come from the configuration as well: {@code defaultTimeout} for listing, reading and prompts,
+ * {@code toolTimeout} for tool calls, each overridable per server. A request that cannot get a slot within its
+ * timeout is rejected too.
+ */
+class McpCallGovernor {
+
+    private static final Logger logger = LoggerFactory.getLogger(McpCallGovernor.class);
+
+    static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    static final Duration DEFAULT_TOOL_TIMEOUT = Duration.ofSeconds(120);
+    static final Duration DEFAULT_INITIALIZATION_TIMEOUT = Duration.ofSeconds(60);
+    static final int DEFAULT_MAX_CONCURRENT_CALLS_PER_SERVER = 4;
+    static final int DEFAULT_MAX_QUEUED_CALLS = 64;
+
+    /**
+     * The effective limits of one server.
+     */
+    record Limits(int maxConcurrentCalls, int maxQueuedCalls, Duration requestTimeout, Duration toolTimeout,
+                  Duration initializationTimeout) {
+
+        /**
+         * The longest a single request may take; the SDK's own request timeout must not cut it short.
+         */
+        Duration longestTimeout() {
+            return requestTimeout.compareTo(toolTimeout) >= 0 ? requestTimeout : toolTimeout;
+        }
+    }
+
+    /**
+     * A semaphore with a bounded number of waiters.
+     */
+    private static final class Bulkhead {
+        private final String name;
+        private final Semaphore permits;
+        private final int maxQueued;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicLong rejected = new AtomicLong();
+
+        Bulkhead(String name, int maxConcurrent, int maxQueued) {
+            this.name = name;
+            this.permits = new Semaphore(maxConcurrent, true);
+            this.maxQueued = maxQueued;
+        }
+
+        void acquire(String operation, Duration timeout) {
+            if (permits.tryAcquire()) {
+                return;
+            }
+            if (waiting.incrementAndGet() > maxQueued) {
+                waiting.decrementAndGet();
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("Too many MCP requests queued for " + name + " (limit " + maxQueued
+                        + "); rejected " + operation + ".");
+            }
+            try {
+                if (!permits.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    rejected.incrementAndGet();
+                    throw new RejectedExecutionException("Timed out after " + timeout.toMillis() + " ms waiting for a free slot on "
+                            + name + "; rejected " + operation + ".");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for a free slot on " + name + ".", e);
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        void release() {
+            permits.release();
+        }
+    }
+
+    private final McpConfig.GlobalSettings settings;
+    private final Bulkhead global;
+    private final Map<String, Limits> limits = new ConcurrentHashMap<>();
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * @param settings The global settings from mcp.json, or null to use the defaults.
+     */
+    McpCallGovernor(McpConfig.GlobalSettings settings) {
+        this.settings = settings;
+        int maxConnections = settings != null ? settings.getMaxConcurrentConnections() : 0;
+        int maxQueued = settings != null && settings.getMaxQueuedCalls() > 0 ? settings.getMaxQueuedCalls() : DEFAULT_MAX_QUEUED_CALLS;
+        // No global limit unless one is configured
+        this.global = maxConnections > 0 ? new Bulkhead("all servers", maxConnections, maxQueued) : null;
+    }
+
+    /**
+     * Resolves the limits of a server from its overrides and the global settings, and sets up its bulkhead.
+     */
+    Limits register(String serverName, McpConfig.McpServerEntry entry) {
+        Limits resolved = new Limits(
+                (int) firstPositive(DEFAULT_MAX_CONCURRENT_CALLS_PER_SERVER, entry.getMaxConcurrentCalls(),
+                        settings != null ? settings.getMaxConcurrentCallsPerServer() : null),
+                (int) firstPositive(DEFAULT_MAX_QUEUED_CALLS, entry.getMaxQueuedCalls(),
+                        settings != null ? settings.getMaxQueuedCalls() : null),
+                Duration.ofMillis(firstPositive(DEFAULT_REQUEST_TIMEOUT.toMillis(), entry.getTimeout(),
+                        settings != null ? settings.getDefaultTimeout() : null)),
+                Duration.ofMillis(firstPositive(DEFAULT_TOOL_TIMEOUT.toMillis(), entry.getToolTimeout(),
+                        settings != null ? settings.getToolTimeout() : null)),
+                Duration.ofMillis(firstPositive(DEFAULT_INITIALIZATION_TIMEOUT.toMillis(), entry.getInitializationTimeout(),
+                        settings != null ? settings.getInitializationTimeout() : null)));
+        limits.put(serverName, resolved);
+        bulkheads.put(serverName, new Bulkhead("server '" + serverName + "'", resolved.maxConcurrentCalls(), resolved.maxQueuedCalls()));
+        logger.debug("Limits for server '{}': {}", serverName, resolved);
+        return resolved;
+    }
+
+    Limits limitsOf(String serverName) {
+        Limits resolved = limits.get(serverName);
+        if (resolved == null) {
+            throw new IllegalStateException("Server '" + serverName + "' is not registered.");
+        }
+        return resolved;
+    }
+
+    /**
+     * Runs a listing, read or prompt request within the server's limits and request timeout.
+     *
+     * @throws RejectedExecutionException if the request could not get a slot.
+     */
+    <T> T request(String serverName, String operation, Mono<T> request) {
+        return execute(serverName, operation, request, limitsOf(serverName).requestTimeout());
+    }
+
+    /**
+     * Runs a tool call within the server's limits and tool timeout.
+     *
+     * @throws RejectedExecutionException if the call could not get a slot.
+     */
+    <T> T toolCall(String serverName, String operation, Mono<T> call) {
+        return execute(serverName, operation, call, limitsOf(serverName).toolTimeout());
+    }
+
+    private <T> T execute(String serverName, String operation, Mono<T> request, Duration timeout) {
+        Bulkhead bulkhead = bulkheads.get(serverName);
+        bulkhead.acquire(operation, timeout);
+        try {
+            if (global != null) {
+                global.acquire(operation, timeout);
+            }
+            try {
+                return request.block(timeout);
+            } finally {
+                if (global != null) {
+                    global.release();
+                }
+            }
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Rejections so far, per server and in total.
+     */
+    String stats() {
+        StringBuilder text = new StringBuilder();
+        long total = 0;
+        for (Map.Entry<String, Bulkhead> entry : bulkheads.entrySet()) {
+            long rejected = entry.getValue().rejected.get();
+            total += rejected;
+            if (rejected > 0) {
+                text.append(", ").append(entry.getKey()).append('=').append(rejected);
+            }
+        }
+        if (global != null) {
+            total += global.rejected.get();
+            text.append(", global limit=").append(global.rejected.get());
+        }
+        return total + " rejected MCP requests" + text;
+    }
+
+    /**
+     * The per-server override if set, else the global setting if set, else the default. Zero or less means unset.
+     */
+    private static long firstPositive(long fallback, Integer override, Integer global) {
+        if (override != null && override > 0) {
+            return override;
+        }
+        if (global != null && global > 0) {
+            return global;
+        }
+        return fallback;
+    }
+}
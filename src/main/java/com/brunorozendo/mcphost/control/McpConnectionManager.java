@@ -1,6 +1,7 @@
 package com.brunorozendo.mcphost.control;
 
 import com.brunorozendo.mcphost.model.McpConfig;
+import com.brunorozendo.mcphost.util.StartupTimeline;
 import com.brunorozendo.mcphost.validation.ToolParameterValidator;
 import io.modelcontextprotocol.client.McpAsyncClient;
 import io.modelcontextprotocol.client.McpClient;
@@ -9,13 +10,14 @@ import io.modelcontextprotocol.client.transport.StdioClientTransport;
 import io.modelcontextprotocol.spec.McpSchema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
 
 import java.time.Duration;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Manages connections to multiple MCP servers, discovers their capabilities (tools, resources, prompts),
@@ -23,14 +25,23 @@ import java.util.stream.Collectors;
  */
 public class McpConnectionManager {
     private static final Logger logger = LoggerFactory.getLogger(McpConnectionManager.class);
+    private static final long DEFAULT_RESOURCE_CACHE_BYTES = 8L * 1024 * 1024;
+    private static final Duration DEFAULT_RESOURCE_CACHE_TTL = Duration.ofMinutes(5);
 
     // Maps a server's logical name to its active client connection
     private final Map<String, McpAsyncClient> clients = new ConcurrentHashMap<>();
 
-    // Maps a capability name (e.g., a tool name) to the server that provides it
-    private final Map<String, String> toolToServerMapping = new ConcurrentHashMap<>();
-    private final Map<String, String> resourceToServerMapping = new ConcurrentHashMap<>();
-    private final Map<String, String> promptToServerMapping = new ConcurrentHashMap<>();
+    // Per-server capabilities and their cached LLM encodings, kept up to date by list_changed notifications
+    private final CapabilityCatalog catalog = new CapabilityCatalog();
+
+    // Contents of read resources; sized and timed by globalSettings, defaults used when they are not set
+    private final ResourceCache resourceCache = new ResourceCache(DEFAULT_RESOURCE_CACHE_BYTES, DEFAULT_RESOURCE_CACHE_TTL);
+
+    // Pinned resource URIs mapped to the server they were configured for; they need not be listed by it
+    private final Map<String, String> pinnedResourceServers = new ConcurrentHashMap<>();
+
+    // Concurrency limits and timeouts of every request; replaced with the configured one by initializeClients
+    private volatile McpCallGovernor governor = new McpCallGovernor(null);
 
     /**
      * Initializes clients for all servers defined in the configuration.
@@ -38,36 +49,70 @@ public class McpConnectionManager {
      * @param mcpConfig The loaded MCP configuration.
      */
     public void initializeClients(McpConfig mcpConfig) {
+        initializeClients(mcpConfig, new StartupTimeline());
+    }
+
+    /**
+     * Initializes clients for all servers defined in the configuration. Servers are started concurrently,
+     * one virtual thread each, and this method returns once all of them are ready or have failed.
+     *
+     * @param mcpConfig The loaded MCP configuration.
+     * @param timeline  Records how long each server took to start.
+     */
+    public void initializeClients(McpConfig mcpConfig, StartupTimeline timeline) {
         if (mcpConfig.getMcpServers() == null || mcpConfig.getMcpServers().isEmpty()) {
             logger.warn("No MCP servers defined in config. Cannot initialize any clients.");
             return;
         }
 
-        mcpConfig.getMcpServers().forEach(this::initializeClient);
+        McpConfig.GlobalSettings settings = mcpConfig.getGlobalSettings();
+        governor = new McpCallGovernor(settings);
+        if (settings != null) {
+            resourceCache.configure(
+                    settings.getResourceCacheMaxBytes() > 0 ? settings.getResourceCacheMaxBytes() : DEFAULT_RESOURCE_CACHE_BYTES,
+                    settings.getResourceCacheTtlSeconds() > 0 ? Duration.ofSeconds(settings.getResourceCacheTtlSeconds()) : DEFAULT_RESOURCE_CACHE_TTL);
+        }
+
+        catalog.registerServers(mcpConfig.getMcpServers().keySet());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            mcpConfig.getMcpServers().forEach((serverName, entry) ->
+                    executor.execute(() -> timeline.measure("mcp-server:" + serverName, () -> initializeClient(serverName, entry))));
+        }
     }
 
     private void initializeClient(String serverName, McpConfig.McpServerEntry entry) {
         StdioClientTransport transport = null;
+        McpCallGovernor.Limits limits = governor.register(serverName, entry);
         try {
             // 1. Build Server Parameters and Transport
             transport = createStdioTransport(entry);
 
-            // 2. Build the MCP Async Client
+            // 2. Build the MCP Async Client. The SDK re-lists the affected capability of this server
+            // whenever it sends a list_changed notification and hands us the fresh list.
             McpAsyncClient client = McpClient.async(transport)
-                    .requestTimeout(Duration.ofSeconds(30))
-                    .initializationTimeout(Duration.ofSeconds(60))
+                    // The governor enforces the per-operation timeouts; the SDK's must not be shorter than any of them
+                    .requestTimeout(limits.longestTimeout())
+                    .initializationTimeout(limits.initializationTimeout())
                     .clientInfo(new McpSchema.Implementation("mcphost-connector", "1.0"))
+                    .toolsChangeConsumer(tools -> Mono.fromRunnable(() -> onCapabilitiesChanged(serverName, () -> catalog.updateTools(serverName, tools))))
+                    .resourcesChangeConsumer(resources -> Mono.fromRunnable(() -> {
+                        // Any cached content of this server may be stale now, not only that of the entries that changed
+                        resourceCache.invalidateServer(serverName);
+                        onCapabilitiesChanged(serverName, () -> catalog.updateResources(serverName, resources));
+                    }))
+                    .promptsChangeConsumer(prompts -> Mono.fromRunnable(() -> onCapabilitiesChanged(serverName, () -> catalog.updatePrompts(serverName, prompts))))
                     .build();
 
             // 3. Initialize the connection (blocking)
             logger.info("Initializing MCP Client for server: '{}' with command: {}", serverName, entry.getCommand());
-            client.initialize().block(Duration.ofSeconds(60));
+            client.initialize().block(limits.initializationTimeout());
 
             // 4. If successful, store the client and discover its capabilities
             if (client.isInitialized()) {
                 clients.put(serverName, client);
                 logger.info("✅ MCP Client for server '{}' initialized successfully.", serverName);
                 discoverAndMapCapabilities(serverName, client);
+                prefetchPinnedResources(serverName, entry);
             } else {
                 logger.error("❌ Failed to initialize MCP Client for server: {}", serverName);
                 closeTransportGracefully(transport);
@@ -101,13 +146,10 @@ public class McpConnectionManager {
 
     private void discoverTools(String serverName, McpAsyncClient client) {
         try {
-            McpSchema.ListToolsResult toolsResult = client.listTools().block(Duration.ofSeconds(30));
+            McpSchema.ListToolsResult toolsResult = governor.request(serverName, "tools/list", client.listTools());
             if (toolsResult != null && toolsResult.tools() != null) {
-                for (McpSchema.Tool tool : toolsResult.tools()) {
-                    warnOnDuplicateMapping(toolToServerMapping, tool.name(), "tool", serverName);
-                    toolToServerMapping.put(tool.name(), serverName);
-                    logger.info("  -> Discovered Tool: {} (from server: {})", tool.name(), serverName);
-                }
+                catalog.updateTools(serverName, toolsResult.tools());
+                toolsResult.tools().forEach(tool -> logger.info("  -> Discovered Tool: {} (from server: {})", tool.name(), serverName));
             }
         } catch (Exception e) {
             logger.error("Error discovering tools from server '{}': {}", serverName, e.getMessage());
@@ -116,13 +158,10 @@ public class McpConnectionManager {
 
     private void discoverResources(String serverName, McpAsyncClient client) {
         try {
-            McpSchema.ListResourcesResult resourcesResult = client.listResources().block(Duration.ofSeconds(30));
+            McpSchema.ListResourcesResult resourcesResult = governor.request(serverName, "resources/list", client.listResources());
             if (resourcesResult != null && resourcesResult.resources() != null) {
-                for (McpSchema.Resource resource : resourcesResult.resources()) {
-                    warnOnDuplicateMapping(resourceToServerMapping, resource.uri(), "resource", serverName);
-                    resourceToServerMapping.put(resource.uri(), serverName);
-                    logger.info("  -> Discovered Resource: {} (from server: {})", resource.uri(), serverName);
-                }
+                catalog.updateResources(serverName, resourcesResult.resources());
+                resourcesResult.resources().forEach(resource -> logger.info("  -> Discovered Resource: {} (from server: {})", resource.uri(), serverName));
             }
         } catch (Exception e) {
             logger.error("Error discovering resources from server '{}': {}", serverName, e.getMessage());
@@ -131,109 +170,85 @@ public class McpConnectionManager {
 
     private void discoverPrompts(String serverName, McpAsyncClient client) {
         try {
-            McpSchema.ListPromptsResult promptsResult = client.listPrompts().block(Duration.ofSeconds(30));
+            McpSchema.ListPromptsResult promptsResult = governor.request(serverName, "prompts/list", client.listPrompts());
             if (promptsResult != null && promptsResult.prompts() != null) {
-                for (McpSchema.Prompt prompt : promptsResult.prompts()) {
-                    warnOnDuplicateMapping(promptToServerMapping, prompt.name(), "prompt", serverName);
-                    promptToServerMapping.put(prompt.name(), serverName);
-                    logger.info("  -> Discovered Prompt: {} (from server: {})", prompt.name(), serverName);
-                }
+                catalog.updatePrompts(serverName, promptsResult.prompts());
+                promptsResult.prompts().forEach(prompt -> logger.info("  -> Discovered Prompt: {} (from server: {})", prompt.name(), serverName));
             }
         } catch (Exception e) {
             logger.error("Error discovering prompts from server '{}': {}", serverName, e.getMessage());
         }
     }
 
-    private void warnOnDuplicateMapping(Map<String, String> map, String key, String type, String newServer) {
-        if (map.containsKey(key)) {
-            logger.warn("Duplicate {} name '{}' found. Previous mapping from server '{}' will be overwritten by server '{}'.",
-                    type, key, map.get(key), newServer);
+    /**
+     * Reads the resources pinned for a server in mcp.json into the cache, so the first reference costs no IPC.
+     */
+    private void prefetchPinnedResources(String serverName, McpConfig.McpServerEntry entry) {
+        if (entry.getPinnedResources() == null) {
+            return;
+        }
+        for (String uri : entry.getPinnedResources()) {
+            pinnedResourceServers.put(uri, serverName);
+            resourceCache.pin(uri);
+            try {
+                readResource(uri);
+                logger.info("  -> Prefetched pinned resource: {} (from server: {})", uri, serverName);
+            } catch (Exception e) {
+                logger.warn("Could not prefetch pinned resource '{}' from server '{}': {}", uri, serverName, e.getMessage());
+            }
         }
     }
 
+    /**
+     * Applies a list_changed notification from a single server. Only that server's entries in the
+     * catalog are touched; the other servers keep their cached encodings.
+     */
+    private void onCapabilitiesChanged(String serverName, java.util.function.Supplier<CapabilityCatalog.CatalogDiff> update) {
+        if (!clients.containsKey(serverName)) {
+            // Initial discovery has not run yet; it will pick up the current lists itself.
+            return;
+        }
+        CapabilityCatalog.CatalogDiff diff = update.get();
+        if (diff.isEmpty()) {
+            logger.debug("list_changed notification from server '{}' did not change the {}", serverName, diff.kind());
+        } else {
+            logger.info("🔄 Refreshed {}", diff);
+        }
+    }
+
+    /**
+     * Returns the live catalog of all discovered capabilities.
+     */
+    public CapabilityCatalog getCatalog() {
+        return catalog;
+    }
+
     /**
      * Gathers all unique tools from all connected and initialized servers.
      */
     public List<McpSchema.Tool> getAllTools() {
-        return toolToServerMapping.keySet().stream()
-                .map(this::getToolByName)
-                .flatMap(java.util.Optional::stream)
-                .distinct()
-                .collect(Collectors.toList());
+        return catalog.getAllTools();
     }
 
     /**
      * Gathers all unique resources from all connected and initialized servers.
      */
     public List<McpSchema.Resource> getAllResources() {
-        return resourceToServerMapping.keySet().stream()
-                .map(this::getResourceByUri)
-                .flatMap(java.util.Optional::stream)
-                .distinct()
-                .collect(Collectors.toList());
+        return catalog.getAllResources();
     }
 
     /**
      * Gathers all unique prompts from all connected and initialized servers.
      */
     public List<McpSchema.Prompt> getAllPrompts() {
-        return promptToServerMapping.keySet().stream()
-                .map(this::getPromptByName)
-                .flatMap(java.util.Optional::stream)
-                .distinct()
-                .collect(Collectors.toList());
-    }
-
-    private java.util.Optional<McpSchema.Tool> getToolByName(String toolName) {
-        String serverName = toolToServerMapping.get(toolName);
-        McpAsyncClient client = clients.get(serverName);
-        if (client != null && client.isInitialized()) {
-            try {
-                return client.listTools().block(Duration.ofSeconds(10)).tools().stream()
-                        .filter(t -> t.name().equals(toolName))
-                        .findFirst();
-            } catch (Exception e) {
-                logger.error("Error getting tool '{}' from server '{}': {}", toolName, serverName, e.getMessage());
-            }
-        }
-        return java.util.Optional.empty();
-    }
-
-    private java.util.Optional<McpSchema.Resource> getResourceByUri(String resourceUri) {
-        String serverName = resourceToServerMapping.get(resourceUri);
-        McpAsyncClient client = clients.get(serverName);
-        if (client != null && client.isInitialized()) {
-            try {
-                return client.listResources().block(Duration.ofSeconds(10)).resources().stream()
-                        .filter(r -> r.uri().equals(resourceUri))
-                        .findFirst();
-            } catch (Exception e) {
-                logger.error("Error getting resource '{}' from server '{}': {}", resourceUri, serverName, e.getMessage());
-            }
-        }
-        return java.util.Optional.empty();
-    }
-
-    private java.util.Optional<McpSchema.Prompt> getPromptByName(String promptName) {
-        String serverName = promptToServerMapping.get(promptName);
-        McpAsyncClient client = clients.get(serverName);
-        if (client != null && client.isInitialized()) {
-            try {
-                return client.listPrompts().block(Duration.ofSeconds(10)).prompts().stream()
-                        .filter(p -> p.name().equals(promptName))
-                        .findFirst();
-            } catch (Exception e) {
-                logger.error("Error getting prompt '{}' from server '{}': {}", promptName, serverName, e.getMessage());
-            }
-        }
-        return java.util.Optional.empty();
+        return catalog.getAllPrompts();
     }
 
     /**
      * Calls a specific tool with the given arguments.
      */
     public McpSchema.CallToolResult callTool(String toolName, Map<String, Object> arguments) {
-        String serverName = toolToServerMapping.get(toolName);
+        String serverName = catalog.getServerForTool(toolName);
         if (serverName == null) {
             String errorMsg = "Error: Tool '" + toolName + "' not found or its server is not mapped.";
             logger.error(errorMsg);
@@ -248,7 +263,7 @@ public class McpConnectionManager {
         }
 
         // Validate parameters before calling the tool
-        java.util.Optional<McpSchema.Tool> toolDefinition = getToolByName(toolName);
+        java.util.Optional<McpSchema.Tool> toolDefinition = catalog.findTool(toolName);
         if (toolDefinition.isPresent()) {
             ToolParameterValidator.ValidationResult validation = 
                 ToolParameterValidator.validateToolParameters(toolDefinition.get(), arguments);
@@ -266,7 +281,7 @@ public class McpConnectionManager {
         try {
             logger.info("Calling tool '{}' on server '{}' with args: {}", toolName, serverName, arguments);
             // Block for the result, as this is part of a synchronous workflow
-            return client.callTool(request).block(Duration.ofSeconds(120));
+            return governor.toolCall(serverName, "tools/call " + toolName, client.callTool(request));
         } catch (Exception e) {
             logger.error("Error calling tool '{}': {}", toolName, e.getMessage(), e);
             String errorMsg = "Error calling tool '" + toolName + "': " + e.getMessage();
@@ -274,6 +289,95 @@ public class McpConnectionManager {
         }
     }
 
+    /**
+     * Reads a resource, from the cache when possible.
+     *
+     * @param uri A resource URI listed by one of the servers or pinned in the configuration.
+     * @return The resource contents.
+     * @throws IllegalArgumentException if no server provides the resource.
+     * @throws IllegalStateException    if the server is not available or the read fails.
+     */
+    public McpSchema.ReadResourceResult readResource(String uri) {
+        McpSchema.ReadResourceResult cached = resourceCache.get(uri);
+        if (cached != null) {
+            logger.debug("Resource {} served from cache", uri);
+            return cached;
+        }
+
+        String serverName = catalog.getServerForResource(uri);
+        if (serverName == null) {
+            serverName = pinnedResourceServers.get(uri);
+        }
+        if (serverName == null) {
+            throw new IllegalArgumentException("Resource '" + uri + "' not found on any server.");
+        }
+        McpAsyncClient client = clients.get(serverName);
+        if (client == null || !client.isInitialized()) {
+            throw new IllegalStateException("Client for resource '" + uri + "' is not available or not initialized.");
+        }
+
+        McpSchema.ReadResourceResult result;
+        try {
+            logger.info("Reading resource '{}' from server '{}'", uri, serverName);
+            result = governor.request(serverName, "resources/read " + uri, client.readResource(new McpSchema.ReadResourceRequest(uri)));
+        } catch (Exception e) {
+            logger.error("Error reading resource '{}': {}", uri, e.getMessage(), e);
+            throw new IllegalStateException("Error reading resource '" + uri + "': " + e.getMessage(), e);
+        }
+        if (result == null) {
+            throw new IllegalStateException("Server '" + serverName + "' returned no contents for resource '" + uri + "'.");
+        }
+        resourceCache.put(uri, serverName, result);
+        return result;
+    }
+
+    /**
+     * Expands a prompt template on the server that provides it.
+     *
+     * @param promptName The prompt name as listed by its server.
+     * @param arguments  The template arguments.
+     * @return The expanded prompt messages.
+     * @throws IllegalArgumentException if no server provides the prompt.
+     * @throws IllegalStateException    if the server is not available or the request fails.
+     */
+    public McpSchema.GetPromptResult getPrompt(String promptName, Map<String, Object> arguments) {
+        String serverName = catalog.getServerForPrompt(promptName);
+        if (serverName == null) {
+            throw new IllegalArgumentException("Prompt '" + promptName + "' not found on any server.");
+        }
+        McpAsyncClient client = clients.get(serverName);
+        if (client == null || !client.isInitialized()) {
+            throw new IllegalStateException("Client for prompt '" + promptName + "' is not available or not initialized.");
+        }
+
+        McpSchema.GetPromptResult result;
+        try {
+            logger.info("Getting prompt '{}' from server '{}' with args: {}", promptName, serverName, arguments);
+            result = governor.request(serverName, "prompts/get " + promptName, client.getPrompt(new McpSchema.GetPromptRequest(promptName, arguments)));
+        } catch (Exception e) {
+            logger.error("Error getting prompt '{}': {}", promptName, e.getMessage(), e);
+            throw new IllegalStateException("Error getting prompt '" + promptName + "': " + e.getMessage(), e);
+        }
+        if (result == null) {
+            throw new IllegalStateException("Server '" + serverName + "' returned nothing for prompt '" + promptName + "'.");
+        }
+        return result;
+    }
+
+    /**
+     * Whether the resource was pinned in the configuration.
+     */
+    public boolean isPinnedResource(String uri) {
+        return pinnedResourceServers.containsKey(uri);
+    }
+
+    /**
+     * Whether any resource can be read: one is listed by a server or pinned in the configuration.
+     */
+    public boolean hasResources() {
+        return !pinnedResourceServers.isEmpty() || !catalog.getAllResources().isEmpty();
+    }
+
     /**
      * Closes all active client connections gracefully.
      */
@@ -290,9 +394,10 @@ public class McpConnectionManager {
             }
         });
         clients.clear();
-        toolToServerMapping.clear();
-        resourceToServerMapping.clear();
-        promptToServerMapping.clear();
+        catalog.clear();
+        logger.debug("Resource cache: {}", resourceCache.stats());
+        logger.debug("Request limits: {}", governor.stats());
+        resourceCache.clear();
         logger.info("All MCP clients have been closed.");
     }
 
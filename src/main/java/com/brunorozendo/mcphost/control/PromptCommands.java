@@ -0,0 +1,275 @@
+package com.brunorozendo.mcphost.control;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Runs MCP prompt templates as slash commands: {@code /name arg=value arg2="a longer value"}. The arguments are
+ * checked against an index of the prompts' argument metadata built from the catalog, so a mistyped command fails
+ * without a round trip. Expansions are cached by name and arguments until the providing server announces that its
+ * prompts changed.
+ */
+public class PromptCommands {
+
+    private static final Logger logger = LoggerFactory.getLogger(PromptCommands.class);
+
+    public static final String LIST_COMMAND = "/prompts";
+    private static final int MAX_CACHED_EXPANSIONS = 128;
+
+    private final McpConnectionManager mcpConnectionManager;
+    private final CapabilityCatalog catalog;
+
+    // Argument metadata of every prompt, rebuilt when the catalog version changes. Only the chat thread uses it.
+    private Map<String, Signature> index = Map.of();
+    private long indexVersion = -1;
+
+    // Guarded by itself: list_changed notifications arrive on the MCP client threads
+    private final Map<Key, List<OllamaApi.Message>> expansions = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, List<OllamaApi.Message>> eldest) {
+            return size() > MAX_CACHED_EXPANSIONS;
+        }
+    };
+    private long hits;
+    private long misses;
+
+    private record Signature(McpSchema.Prompt prompt, Set<String> arguments, Set<String> required) {
+    }
+
+    // Arguments are sorted, so the order they were typed in does not matter
+    private record Key(String promptName, TreeMap<String, Object> arguments) {
+    }
+
+    /**
+     * The messages a command expanded into.
+     */
+    public record Expansion(String promptName, List<OllamaApi.Message> messages, boolean cached) {
+    }
+
+    public PromptCommands(McpConnectionManager mcpConnectionManager, CapabilityCatalog catalog) {
+        this.mcpConnectionManager = mcpConnectionManager;
+        this.catalog = catalog;
+        catalog.addListener(this::onCatalogChanged);
+    }
+
+    /**
+     * Whether the input is a slash command rather than a chat message: {@value #LIST_COMMAND} or the name of a
+     * known prompt after the slash. Anything else, such as a message starting with a path like {@code /etc/hosts},
+     * is a chat message.
+     */
+    public boolean isCommand(String input) {
+        String trimmed = input.strip();
+        if (trimmed.length() < 2 || trimmed.charAt(0) != '/') {
+            return false;
+        }
+        return LIST_COMMAND.equals(trimmed) || signatures().containsKey(commandName(trimmed));
+    }
+
+    private static String commandName(String trimmed) {
+        int nameEnd = 1;
+        while (nameEnd < trimmed.length() && !Character.isWhitespace(trimmed.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        return trimmed.substring(1, nameEnd);
+    }
+
+    /**
+     * Expands a command into the messages of its prompt.
+     *
+     * @throws IllegalArgumentException if the prompt is unknown or the arguments do not match it.
+     * @throws IllegalStateException    if the server fails to expand the prompt.
+     */
+    public Expansion expand(String command) {
+        String trimmed = command.strip();
+        String promptName = commandName(trimmed);
+        String argumentText = trimmed.substring(1 + promptName.length()).strip();
+
+        Signature signature = signatures().get(promptName);
+        if (signature == null) {
+            throw new IllegalArgumentException("Unknown command /" + promptName + ". Type " + LIST_COMMAND + " to list the available prompts.");
+        }
+        TreeMap<String, Object> arguments = parseArguments(signature, argumentText);
+
+        Key key = new Key(promptName, arguments);
+        synchronized (expansions) {
+            List<OllamaApi.Message> cached = expansions.get(key);
+            if (cached != null) {
+                hits++;
+                logger.debug("Prompt /{} {} served from cache", promptName, arguments);
+                return new Expansion(promptName, cached, true);
+            }
+            misses++;
+        }
+
+        List<OllamaApi.Message> messages = toMessages(mcpConnectionManager.getPrompt(promptName, arguments));
+        if (messages.isEmpty()) {
+            throw new IllegalStateException("Prompt /" + promptName + " expanded to no messages.");
+        }
+        synchronized (expansions) {
+            expansions.put(key, messages);
+        }
+        return new Expansion(promptName, messages, false);
+    }
+
+    /**
+     * Describes the available prompts and their arguments, one per line.
+     */
+    public String listPrompts() {
+        Map<String, Signature> signatures = signatures();
+        if (signatures.isEmpty()) {
+            return "No prompts are available.";
+        }
+        StringBuilder text = new StringBuilder("Available prompts:");
+        for (Signature signature : signatures.values()) {
+            text.append("\n  ").append(usage(signature));
+            if (signature.prompt().description() != null && !signature.prompt().description().isBlank()) {
+                text.append(" - ").append(signature.prompt().description());
+            }
+        }
+        return text.toString();
+    }
+
+    String stats() {
+        synchronized (expansions) {
+            long lookups = hits + misses;
+            return String.format("%d expansions, %d hits / %d lookups (%.0f%%)",
+                    expansions.size(), hits, lookups, lookups == 0 ? 0.0 : 100.0 * hits / lookups);
+        }
+    }
+
+    private Map<String, Signature> signatures() {
+        long version = catalog.version();
+        if (version != indexVersion) {
+            Map<String, Signature> rebuilt = new LinkedHashMap<>();
+            for (McpSchema.Prompt prompt : catalog.getAllPrompts()) {
+                Set<String> arguments = new LinkedHashSet<>();
+                Set<String> required = new LinkedHashSet<>();
+                if (prompt.arguments() != null) {
+                    for (McpSchema.PromptArgument argument : prompt.arguments()) {
+                        arguments.add(argument.name());
+                        if (Boolean.TRUE.equals(argument.required())) {
+                            required.add(argument.name());
+                        }
+                    }
+                }
+                rebuilt.put(prompt.name(), new Signature(prompt, Collections.unmodifiableSet(arguments), Collections.unmodifiableSet(required)));
+            }
+            index = rebuilt;
+            indexVersion = version;
+        }
+        return index;
+    }
+
+    /**
+     * Parses {@code name=value} pairs; values may be double-quoted to contain spaces. A prompt with a single
+     * argument also accepts the plain text after the command as its value.
+     */
+    private static TreeMap<String, Object> parseArguments(Signature signature, String text) {
+        TreeMap<String, Object> arguments = new TreeMap<>();
+        if (!text.isEmpty() && signature.arguments().size() == 1 && !text.contains("=")) {
+            arguments.put(signature.arguments().iterator().next(), text);
+        } else {
+            for (String token : tokenize(text)) {
+                int equals = token.indexOf('=');
+                if (equals <= 0) {
+                    throw new IllegalArgumentException("Expected name=value but got '" + token + "'. Usage: " + usage(signature));
+                }
+                String name = token.substring(0, equals);
+                if (!signature.arguments().contains(name)) {
+                    throw new IllegalArgumentException("Prompt /" + signature.prompt().name() + " has no argument '" + name + "'. Usage: " + usage(signature));
+                }
+                arguments.put(name, token.substring(equals + 1));
+            }
+        }
+
+        List<String> missing = new ArrayList<>();
+        for (String name : signature.required()) {
+            if (!arguments.containsKey(name)) {
+                missing.add(name);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("Missing required argument(s) " + String.join(", ", missing) + ". Usage: " + usage(signature));
+        }
+        return arguments;
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (!current.isEmpty()) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                }
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote in: " + text);
+        }
+        if (!current.isEmpty()) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    private static String usage(Signature signature) {
+        StringBuilder usage = new StringBuilder("/").append(signature.prompt().name());
+        for (String argument : signature.arguments()) {
+            boolean required = signature.required().contains(argument);
+            usage.append(' ').append(required ? "" : "[").append(argument).append("=<value>").append(required ? "" : "]");
+        }
+        return usage.toString();
+    }
+
+    private static List<OllamaApi.Message> toMessages(McpSchema.GetPromptResult result) {
+        List<OllamaApi.Message> messages = new ArrayList<>();
+        if (result.messages() != null) {
+            for (McpSchema.PromptMessage message : result.messages()) {
+                String role = message.role() == McpSchema.Role.ASSISTANT ? "assistant" : "user";
+                String content = message.content() != null ? ToolResultStore.describe(message.content()) : "";
+                messages.add(new OllamaApi.Message(role, content));
+            }
+        }
+        return List.copyOf(messages);
+    }
+
+    /**
+     * Drops the cached expansions of prompts that a list_changed notification added, changed or removed. An added
+     * prompt may shadow one of the same name on another server.
+     */
+    private void onCatalogChanged(CapabilityCatalog.CatalogDiff diff) {
+        if (!"prompts".equals(diff.kind())) {
+            return;
+        }
+        Set<String> affected = new LinkedHashSet<>();
+        affected.addAll(diff.added());
+        affected.addAll(diff.changed());
+        affected.addAll(diff.removed());
+        synchronized (expansions) {
+            int before = expansions.size();
+            expansions.keySet().removeIf(key -> affected.contains(key.promptName()));
+            if (expansions.size() < before) {
+                logger.debug("Dropped {} cached prompt expansions after {}", before - expansions.size(), diff);
+            }
+        }
+    }
+}
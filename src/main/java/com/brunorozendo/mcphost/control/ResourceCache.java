@@ -0,0 +1,153 @@
+package com.brunorozendo.mcphost.control;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the contents of recently read MCP resources, so that a resource referenced again and again costs no IPC.
+ * The cache is bounded by the approximate size of its contents and evicts the least recently used entry first;
+ * pinned resources (prefetched at startup) are never evicted for size. Entries expire after a time-to-live and are
+ * dropped when their server announces that its resources changed.
+ */
+class ResourceCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResourceCache.class);
+
+    private record Entry(String serverName, McpSchema.ReadResourceResult result, long bytes, long loadedAtNanos) {
+    }
+
+    // Access order, so iteration starts with the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> pinnedUris = new HashSet<>();
+    private long maxBytes;
+    private long ttlNanos;
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    ResourceCache(long maxBytes, Duration ttl) {
+        configure(maxBytes, ttl);
+    }
+
+    /**
+     * Changes the limits. Entries over the new size limit are evicted on the next insertion.
+     */
+    synchronized void configure(long maxBytes, Duration ttl) {
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Marks a resource as pinned: once loaded, it is kept regardless of the size limit.
+     */
+    synchronized void pin(String uri) {
+        pinnedUris.add(uri);
+    }
+
+    /**
+     * @return The cached contents, or null if the resource is not cached or its entry expired.
+     */
+    synchronized McpSchema.ReadResourceResult get(String uri) {
+        Entry entry = entries.get(uri);
+        if (entry != null && System.nanoTime() - entry.loadedAtNanos() > ttlNanos) {
+            remove(uri);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.result();
+    }
+
+    synchronized void put(String uri, String serverName, McpSchema.ReadResourceResult result) {
+        long bytes = sizeOf(result);
+        boolean pinned = pinnedUris.contains(uri);
+        if (!pinned && bytes > maxBytes) {
+            logger.debug("Not caching resource {}: {} bytes exceed the cache size of {} bytes", uri, bytes, maxBytes);
+            return;
+        }
+        remove(uri);
+        entries.put(uri, new Entry(serverName, result, bytes, System.nanoTime()));
+        totalBytes += bytes;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> candidate = eldest.next();
+            if (!pinnedUris.contains(candidate.getKey()) && !candidate.getKey().equals(uri)) {
+                totalBytes -= candidate.getValue().bytes();
+                eldest.remove();
+            }
+        }
+    }
+
+    synchronized void invalidate(String uri) {
+        if (remove(uri)) {
+            logger.debug("Invalidated cached resource {}", uri);
+        }
+    }
+
+    /**
+     * Drops every entry read from the given server.
+     */
+    synchronized void invalidateServer(String serverName) {
+        int before = entries.size();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.serverName().equals(serverName)) {
+                totalBytes -= entry.bytes();
+                iterator.remove();
+            }
+        }
+        if (entries.size() < before) {
+            logger.debug("Invalidated {} cached resources of server '{}'", before - entries.size(), serverName);
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    synchronized String stats() {
+        long lookups = hits + misses;
+        return String.format("%d entries, %,d bytes, %d hits / %d lookups (%.0f%%)",
+                entries.size(), totalBytes, hits, lookups, lookups == 0 ? 0.0 : 100.0 * hits / lookups);
+    }
+
+    private boolean remove(String uri) {
+        Entry removed = entries.remove(uri);
+        if (removed != null) {
+            totalBytes -= removed.bytes();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Approximates the heap taken by the contents: two bytes per character of text or base64 data.
+     */
+    private static long sizeOf(McpSchema.ReadResourceResult result) {
+        long bytes = 0;
+        if (result.contents() != null) {
+            for (McpSchema.ResourceContents contents : result.contents()) {
+                if (contents instanceof McpSchema.TextResourceContents text && text.text() != null) {
+                    bytes += 2L * text.text().length();
+                } else if (contents instanceof McpSchema.BlobResourceContents blob && blob.blob() != null) {
+                    bytes += 2L * blob.blob().length();
+                }
+            }
+        }
+        return bytes;
+    }
+}
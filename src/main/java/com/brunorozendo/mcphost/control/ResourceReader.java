@@ -0,0 +1,172 @@
+package com.brunorozendo.mcphost.control;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Gives the model and the user access to MCP resource contents, which are otherwise only listed in the system
+ * prompt. The model reads them with the local {@value #TOOL_NAME} tool; the user attaches them to a message by
+ * writing {@code @<uri>}. Reads go through the resource cache of the {@link McpConnectionManager}.
+ */
+public class ResourceReader implements LocalTool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResourceReader.class);
+
+    public static final String TOOL_NAME = "read_resource";
+    // @ followed by something that looks like a URI (scheme:rest); trailing punctuation is tried without as well
+    private static final Pattern REFERENCE_PATTERN = Pattern.compile("(?<![\\w@])@([a-zA-Z][a-zA-Z0-9+.-]*:\\S+)");
+
+    private final McpConnectionManager mcpConnectionManager;
+    private final CapabilityCatalog catalog;
+    private final int maxChars;
+
+    /**
+     * @param maxChars At most this many characters of a resource are returned at once; 0 or less means no limit.
+     */
+    public ResourceReader(McpConnectionManager mcpConnectionManager, CapabilityCatalog catalog, int maxChars) {
+        this.mcpConnectionManager = mcpConnectionManager;
+        this.catalog = catalog;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * An attached resource, for reporting to the user.
+     */
+    public record Attachment(String uri, int chars) {
+    }
+
+    /**
+     * The result of expanding the references in a message.
+     */
+    public record Expansion(String text, List<Attachment> attachments, List<String> failures) {
+    }
+
+    /**
+     * Appends the contents of every {@code @<uri>} reference to a known resource to the message. References to
+     * unknown URIs are left alone (they may be e-mail addresses or plain text).
+     */
+    public Expansion expandReferences(String message) {
+        List<Attachment> attachments = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        StringBuilder blocks = new StringBuilder();
+
+        Matcher matcher = REFERENCE_PATTERN.matcher(message);
+        while (matcher.find()) {
+            String uri = resolve(matcher.group(1));
+            if (uri == null || attachments.stream().anyMatch(a -> a.uri().equals(uri))) {
+                continue;
+            }
+            try {
+                String text = truncate(formatContents(mcpConnectionManager.readResource(uri)), 0);
+                blocks.append("\n\n<resource uri=\"").append(uri).append("\">\n").append(text).append("\n</resource>");
+                attachments.add(new Attachment(uri, text.length()));
+            } catch (RuntimeException e) {
+                logger.warn("Could not attach resource '{}': {}", uri, e.getMessage());
+                failures.add(uri + ": " + e.getMessage());
+            }
+        }
+        return new Expansion(attachments.isEmpty() ? message : message + blocks, attachments, failures);
+    }
+
+    /**
+     * Finds the resource a reference names, allowing for punctuation right after it ("see @file:///a.txt.").
+     */
+    private String resolve(String candidate) {
+        String uri = candidate;
+        while (!uri.isEmpty()) {
+            if (isKnown(uri)) {
+                return uri;
+            }
+            char last = uri.charAt(uri.length() - 1);
+            if (".,;:!?)]}'\"".indexOf(last) < 0) {
+                return null;
+            }
+            uri = uri.substring(0, uri.length() - 1);
+        }
+        return null;
+    }
+
+    private boolean isKnown(String uri) {
+        // Pinned resources need not be listed by their server
+        return catalog.getServerForResource(uri) != null || mcpConnectionManager.isPinnedResource(uri);
+    }
+
+    @Override
+    public OllamaApi.Tool definition() {
+        return new OllamaApi.Tool("function", new OllamaApi.OllamaFunction(
+                TOOL_NAME,
+                "Reads the contents of a resource listed in the available resources.",
+                new OllamaApi.JsonSchema("object", null,
+                        Map.of("uri", new OllamaApi.JsonSchema("string", "The URI of the resource"),
+                                "offset", new OllamaApi.JsonSchema("integer", "Character offset to start reading from (default 0)")),
+                        null, List.of("uri"), null, null)));
+    }
+
+    /**
+     * Only offered to the LLM when there is a resource to read.
+     */
+    @Override
+    public boolean isAvailable() {
+        return mcpConnectionManager.hasResources();
+    }
+
+    @Override
+    public McpSchema.CallToolResult call(Map<String, Object> arguments) {
+        if (!(arguments.get("uri") instanceof String uri) || uri.isBlank()) {
+            return error("A resource 'uri' is required.");
+        }
+        int offset = arguments.get("offset") instanceof Number number ? Math.max(number.intValue(), 0) : 0;
+        try {
+            String text = formatContents(mcpConnectionManager.readResource(uri));
+            if (offset >= text.length() && offset > 0) {
+                return error("Offset " + offset + " is beyond the end of the resource (" + text.length() + " characters).");
+            }
+            return new McpSchema.CallToolResult(List.of(new McpSchema.TextContent(truncate(text, offset))), false);
+        } catch (RuntimeException e) {
+            return error(e.getMessage());
+        }
+    }
+
+    /**
+     * Cuts the text to the configured limit starting at the offset, telling the model how to read the rest.
+     */
+    private String truncate(String text, int offset) {
+        String rest = offset > 0 ? text.substring(offset) : text;
+        if (maxChars <= 0 || rest.length() <= maxChars) {
+            return rest;
+        }
+        return rest.substring(0, maxChars) + String.format("\n[... %,d more characters; call %s with offset %d to continue]",
+                rest.length() - maxChars, TOOL_NAME, offset + maxChars);
+    }
+
+    /**
+     * Joins the text contents of a resource; binary contents are summarised.
+     */
+    static String formatContents(McpSchema.ReadResourceResult result) {
+        StringBuilder text = new StringBuilder();
+        for (McpSchema.ResourceContents contents : result.contents() != null ? result.contents() : List.<McpSchema.ResourceContents>of()) {
+            if (!text.isEmpty()) {
+                text.append('\n');
+            }
+            if (contents instanceof McpSchema.TextResourceContents textContents) {
+                text.append(textContents.text() != null ? textContents.text() : "");
+            } else if (contents instanceof McpSchema.BlobResourceContents blob) {
+                int dataLength = blob.blob() != null ? blob.blob().length() : 0;
+                text.append(String.format("[binary resource %s: %s, ~%d KB omitted]", blob.uri(), blob.mimeType(), dataLength * 3 / 4 / 1024));
+            }
+        }
+        return text.toString();
+    }
+
+    private static McpSchema.CallToolResult error(String message) {
+        return new McpSchema.CallToolResult(List.of(new McpSchema.TextContent(message)), true);
+    }
+}
@@ -0,0 +1,93 @@
+package com.brunorozendo.mcphost.control;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import com.brunorozendo.mcphost.util.TerminalRenderer;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Starts tool calls while the model is still streaming the rest of its message. Only tools on a whitelist of
+ * side-effect-free tools are started early; if the turn is abandoned, their results are simply discarded.
+ * <p>
+ * A call is started as soon as the stream reports it complete (name and full arguments), and the result is
+ * picked up when the message has been generated and its tool calls are executed in order.
+ */
+class SpeculativeToolDispatcher implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpeculativeToolDispatcher.class);
+
+    private final Set<String> allowedTools;
+    private final McpConnectionManager mcpConnectionManager;
+    private final CapabilityCatalog catalog;
+    private final TerminalRenderer renderer;
+    private final ExecutorService executor;
+    // Keyed by identity: the stream hands out the same ToolCall objects that end up in the assistant message.
+    // Only the chat thread touches the map.
+    private final Map<OllamaApi.ToolCall, CompletableFuture<McpSchema.CallToolResult>> started = new IdentityHashMap<>();
+
+    SpeculativeToolDispatcher(List<String> allowedTools, McpConnectionManager mcpConnectionManager,
+                              CapabilityCatalog catalog, TerminalRenderer renderer) {
+        this.allowedTools = Set.copyOf(allowedTools);
+        this.mcpConnectionManager = mcpConnectionManager;
+        this.catalog = catalog;
+        this.renderer = renderer;
+        this.executor = this.allowedTools.isEmpty() ? null : Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * Starts the call if its tool is whitelisted and served by an MCP server.
+     */
+    void offer(OllamaApi.ToolCall toolCall) {
+        if (executor == null || toolCall.function() == null) {
+            return;
+        }
+        String toolName = toolCall.function().name();
+        Map<String, Object> toolArgs = toolCall.function().arguments();
+        if (!allowedTools.contains(toolName) || toolArgs == null || catalog.getServerForTool(toolName) == null) {
+            return;
+        }
+
+        logger.debug("Starting tool '{}' while the response is still being generated", toolName);
+        TerminalRenderer.Task progress = renderer.startTask("Executing tool " + toolName + "...");
+        CompletableFuture<McpSchema.CallToolResult> result = CompletableFuture.supplyAsync(
+                () -> mcpConnectionManager.callTool(toolName, toolArgs), executor);
+        result.whenComplete((value, error) -> progress.finish());
+        started.put(toolCall, result);
+    }
+
+    /**
+     * Hands over the call started for this tool call, if any.
+     *
+     * @return The running or completed call, or null if the tool call was not started early.
+     */
+    CompletableFuture<McpSchema.CallToolResult> take(OllamaApi.ToolCall toolCall) {
+        return started.remove(toolCall);
+    }
+
+    /**
+     * Forgets calls whose results will not be used, e.g. because the response failed half-way.
+     * The calls themselves run to completion; whitelisted tools have no side effects.
+     */
+    void discardAll() {
+        if (!started.isEmpty()) {
+            logger.debug("Discarding {} speculatively started tool calls", started.size());
+            started.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
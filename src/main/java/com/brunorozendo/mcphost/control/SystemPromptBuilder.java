@@ -1,13 +1,11 @@
 package com.brunorozendo.mcphost.control;
 
-import com.brunorozendo.mcphost.SchemaConverter;
 import com.brunorozendo.mcphost.model.OllamaApi;
 import io.modelcontextprotocol.spec.McpSchema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * A utility class to construct a detailed system prompt for the LLM,
@@ -17,21 +15,38 @@ public class SystemPromptBuilder {
 
     private static final Logger logger = LoggerFactory.getLogger(SystemPromptBuilder.class);
 
+    // Compact tool descriptions are cut to their first line and at most this many characters
+    private static final int COMPACT_DESCRIPTION_LENGTH = 160;
+
     /**
-     * Builds a comprehensive system prompt string.
+     * Controls how much of the tool catalog is written into the system prompt.
+     */
+    public enum Profile {
+        /** Name, description and every parameter of each tool. */
+        FULL,
+        /** Name and a one-line description of each tool; parameters are only sent in the native 'tools' field. */
+        COMPACT,
+        /** No per-tool text, for backends with native tool support that already receive the 'tools' field. */
+        NONE
+    }
+
+    /**
+     * Assembles the system prompt from already formatted capability sections.
+     * This lets callers cache the sections and only re-format the ones that changed.
      *
-     * @param tools     List of available MCP tools.
-     * @param resources List of available MCP resources.
-     * @param prompts   List of available MCP prompts.
+     * @param toolSections     Formatted tool descriptions (see {@link #formatTool}), one per available tool.
+     * @param resourceSections Formatted resource descriptions (see {@link #formatResource}).
+     * @param promptSections   Formatted prompt descriptions (see {@link #formatPrompt}).
+     * @param profile          The profile the tool sections were formatted with.
      * @return A formatted string to be used as the system prompt.
      */
-    public static String build(List<McpSchema.Tool> tools, List<McpSchema.Resource> resources, List<McpSchema.Prompt> prompts) {
+    static String assemble(List<String> toolSections, List<String> resourceSections, List<String> promptSections, Profile profile) {
         StringBuilder sb = new StringBuilder();
         sb.append("You are a helpful AI assistant with access to a set of capabilities provided by Model Context Protocol (MCP) servers.\n");
         sb.append("You can use the tools provided. When you decide to call a tool, you must respond with a JSON object containing the tool call.\n");
         sb.append("You also have access to a list of resources and prompts for context.\n");
 
-        boolean hasCapabilities = !tools.isEmpty() || !resources.isEmpty() || !prompts.isEmpty();
+        boolean hasCapabilities = !toolSections.isEmpty() || !resourceSections.isEmpty() || !promptSections.isEmpty();
 
         if (!hasCapabilities) {
             sb.append("\nNo external capabilities (tools, resources, or prompts) are currently available.");
@@ -41,42 +56,72 @@ public class SystemPromptBuilder {
 
         sb.append("\nHere are the available capabilities:\n");
 
-        if (!tools.isEmpty()) {
+        if (!toolSections.isEmpty()) {
             sb.append("\n--- AVAILABLE TOOLS ---\n");
-            sb.append("You can call the following tools. For each tool, the name, description, and parameters are provided.\n\n");
-            tools.forEach(tool -> sb.append(formatTool(tool)).append("\n"));
+            switch (profile) {
+                case FULL -> {
+                    sb.append("You can call the following tools. For each tool, the name, description, and parameters are provided.\n\n");
+                    toolSections.forEach(section -> sb.append(section).append("\n"));
+                }
+                case COMPACT -> {
+                    sb.append("You can call the following tools. Their parameters are defined in the tool definitions sent with each request.\n\n");
+                    toolSections.forEach(sb::append);
+                }
+                case NONE -> sb.append("The available tools and their parameters are defined in the tool definitions sent with each request.\n");
+            }
         }
 
-        if (!resources.isEmpty()) {
+        if (!resourceSections.isEmpty()) {
             sb.append("\n--- AVAILABLE RESOURCES ---\n");
             sb.append("The following resources are available for context. You can refer to them in your responses.\n\n");
-            resources.forEach(resource -> sb.append(formatResource(resource)).append("\n"));
+            resourceSections.forEach(section -> sb.append(section).append("\n"));
         }
 
-        if (!prompts.isEmpty()) {
+        if (!promptSections.isEmpty()) {
             sb.append("\n--- AVAILABLE PROMPTS ---\n");
             sb.append("The following prompt templates are available for use.\n\n");
-            prompts.forEach(prompt -> sb.append(formatPrompt(prompt)).append("\n"));
+            promptSections.forEach(section -> sb.append(section).append("\n"));
         }
 
         return sb.toString();
     }
 
-    private static String formatTool(McpSchema.Tool tool) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("Tool: %s\n", tool.name()));
-        sb.append(String.format("  Description: %s\n", tool.description()));
-        if (tool.inputSchema() != null && tool.inputSchema().properties() != null && !tool.inputSchema().properties().isEmpty()) {
-            sb.append("  Parameters:\n");
-            OllamaApi.JsonSchema ollamaSchema = SchemaConverter.convertMcpSchemaRecursive(tool.inputSchema());
-            sb.append(formatJsonSchema(ollamaSchema, "    "));
-        } else {
-            sb.append("  Parameters: None\n");
+    /**
+     * Formats a single tool for the system prompt. The parameters are read from the already converted schema,
+     * so the MCP schema is not converted a second time.
+     */
+    static String formatTool(OllamaApi.Tool tool, Profile profile) {
+        OllamaApi.OllamaFunction function = tool.function();
+        return switch (profile) {
+            case NONE -> "";
+            case COMPACT -> String.format("- %s: %s\n", function.name(), firstLine(function.description()));
+            case FULL -> {
+                StringBuilder sb = new StringBuilder();
+                sb.append(String.format("Tool: %s\n", function.name()));
+                sb.append(String.format("  Description: %s\n", function.description()));
+                OllamaApi.JsonSchema parameters = function.parameters();
+                if (parameters != null && parameters.properties() != null && !parameters.properties().isEmpty()) {
+                    sb.append("  Parameters:\n");
+                    sb.append(formatJsonSchema(parameters, "    "));
+                } else {
+                    sb.append("  Parameters: None\n");
+                }
+                yield sb.toString();
+            }
+        };
+    }
+
+    private static String firstLine(String description) {
+        if (description == null || description.isBlank()) {
+            return "No description";
         }
-        return sb.toString();
+        String line = description.strip().lines().findFirst().orElse("");
+        return line.length() > COMPACT_DESCRIPTION_LENGTH
+                ? line.substring(0, COMPACT_DESCRIPTION_LENGTH - 3) + "..."
+                : line;
     }
 
-    private static String formatResource(McpSchema.Resource resource) {
+    static String formatResource(McpSchema.Resource resource) {
         return String.format("Resource URI: %s\n  Name: %s\n  Description: %s\n  MIME Type: %s\n",
                 resource.uri(),
                 resource.name(),
@@ -84,7 +129,7 @@ public class SystemPromptBuilder {
                 resource.mimeType() != null ? resource.mimeType() : "N/A");
     }
 
-    private static String formatPrompt(McpSchema.Prompt prompt) {
+    static String formatPrompt(McpSchema.Prompt prompt) {
         StringBuilder sb = new StringBuilder();
         sb.append(String.format("Prompt: %s\n", prompt.name()));
         sb.append(String.format("  Description: %s\n", prompt.description()));
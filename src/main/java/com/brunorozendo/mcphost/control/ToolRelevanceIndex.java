@@ -0,0 +1,132 @@
+package com.brunorozendo.mcphost.control;
+
+import io.modelcontextprotocol.spec.McpSchema;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An in-memory inverted index over tool names, descriptions and parameter names, ranked with BM25.
+ * It is built once per catalog version and answers "which tools are relevant to this text?" without
+ * any round trip to the LLM.
+ */
+public class ToolRelevanceIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Name tokens are the strongest signal, so they are counted several times
+    private static final int NAME_BOOST = 3;
+    private static final int PARAMETER_BOOST = 2;
+
+    private final List<String> toolNames = new ArrayList<>();
+    private final int[] documentLengths;
+    private final double averageDocumentLength;
+    // term -> (document index -> term frequency)
+    private final Map<String, Map<Integer, Integer>> postings = new HashMap<>();
+
+    public ToolRelevanceIndex(List<McpSchema.Tool> tools) {
+        this.documentLengths = new int[tools.size()];
+        long totalLength = 0;
+        for (int doc = 0; doc < tools.size(); doc++) {
+            McpSchema.Tool tool = tools.get(doc);
+            toolNames.add(tool.name());
+
+            List<String> terms = new ArrayList<>();
+            for (int i = 0; i < NAME_BOOST; i++) {
+                terms.addAll(tokenize(tool.name()));
+            }
+            terms.addAll(tokenize(tool.description()));
+            if (tool.inputSchema() != null && tool.inputSchema().properties() != null) {
+                for (String parameterName : tool.inputSchema().properties().keySet()) {
+                    for (int i = 0; i < PARAMETER_BOOST; i++) {
+                        terms.addAll(tokenize(parameterName));
+                    }
+                }
+            }
+
+            for (String term : terms) {
+                postings.computeIfAbsent(term, t -> new HashMap<>()).merge(doc, 1, Integer::sum);
+            }
+            documentLengths[doc] = terms.size();
+            totalLength += terms.size();
+        }
+        this.averageDocumentLength = tools.isEmpty() ? 0 : (double) totalLength / tools.size();
+    }
+
+    /**
+     * Ranks the indexed tools against the query text.
+     *
+     * @param query The text to match, e.g. the recent conversation.
+     * @param limit The maximum number of tool names to return.
+     * @return Tool names with a positive score, best match first.
+     */
+    public List<String> search(String query, int limit) {
+        double[] scores = new double[toolNames.size()];
+        int documentCount = toolNames.size();
+
+        // Each distinct query term contributes once, so repeated words in a long conversation do not dominate
+        for (String term : new LinkedHashSet<>(tokenize(query))) {
+            Map<Integer, Integer> termPostings = postings.get(term);
+            if (termPostings == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (documentCount - termPostings.size() + 0.5) / (termPostings.size() + 0.5));
+            termPostings.forEach((doc, tf) -> {
+                double norm = K1 * (1 - B + B * documentLengths[doc] / averageDocumentLength);
+                scores[doc] += idf * (tf * (K1 + 1)) / (tf + norm);
+            });
+        }
+
+        List<Integer> ranked = new ArrayList<>();
+        for (int doc = 0; doc < scores.length; doc++) {
+            if (scores[doc] > 0) {
+                ranked.add(doc);
+            }
+        }
+        ranked.sort((a, b) -> Double.compare(scores[b], scores[a]));
+
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, ranked.size()); i++) {
+            result.add(toolNames.get(ranked.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Splits text into lower-case terms, breaking on non-alphanumerics as well as camelCase and snake_case boundaries.
+     */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        StringBuilder current = new StringBuilder();
+        char previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (Character.isUpperCase(c) && Character.isLowerCase(previous)) {
+                    addTerm(terms, current);
+                }
+                current.append(c);
+            } else {
+                addTerm(terms, current);
+            }
+            previous = c;
+        }
+        addTerm(terms, current);
+        return terms;
+    }
+
+    private static void addTerm(List<String> terms, StringBuilder current) {
+        // Single characters carry no signal and only inflate the postings
+        if (current.length() > 1) {
+            terms.add(current.toString().toLowerCase(Locale.ROOT));
+        }
+        current.setLength(0);
+    }
+}
@@ -0,0 +1,285 @@
+package com.brunorozendo.mcphost.control;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Turns MCP tool results into the text placed in the conversation, keeping memory and request size bounded.
+ * <p>
+ * Results larger than the configured limit are written to a file and replaced by a head/tail preview plus a
+ * handle. The model can page through the rest with the local {@value #TOOL_NAME} tool. Non-text content
+ * (images, binary resources) is summarised instead of being dumped as base64.
+ */
+public class ToolResultStore implements LocalTool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ToolResultStore.class);
+
+    public static final String TOOL_NAME = "read_tool_result";
+    private static final String HANDLE_PREFIX = "result-";
+    private static final String FILE_SUFFIX = ".txt";
+    // Page size of read_tool_result when spilling is disabled but stored results remain, e.g. from a resumed session
+    private static final int DEFAULT_PAGE_CHARS = 20000;
+
+    private final Path directory;
+    private final int maxResultChars;
+    private final int previewChars;
+    // The default and largest number of characters read_tool_result returns at once
+    private final int pageChars;
+    private final boolean ephemeral;
+    private final AtomicInteger nextHandle;
+    private volatile boolean hasStoredResults;
+
+    /**
+     * @param directory      Where spilled results are written. Created on demand.
+     * @param maxResultChars Results longer than this are spilled; 0 or less disables spilling.
+     * @param previewChars   How many characters of the head and of the tail are kept inline.
+     * @param ephemeral      Whether spilled files are deleted when the JVM exits (i.e., the session cannot be resumed).
+     */
+    public ToolResultStore(Path directory, int maxResultChars, int previewChars, boolean ephemeral) {
+        this.directory = directory;
+        this.ephemeral = ephemeral;
+        this.maxResultChars = maxResultChars;
+        this.pageChars = maxResultChars > 0 ? maxResultChars : DEFAULT_PAGE_CHARS;
+        this.previewChars = Math.min(previewChars, Math.max(maxResultChars / 2, 0));
+        this.nextHandle = new AtomicInteger(highestExistingHandle(directory) + 1);
+        this.hasStoredResults = nextHandle.get() > 1;
+    }
+
+    /**
+     * Formats a tool result for the conversation, spilling it to disk when it is too large.
+     */
+    public String format(String toolName, McpSchema.CallToolResult result) {
+        List<McpSchema.Content> contents = result.content() != null ? result.content() : List.of();
+
+        // Measure before joining, so an oversized result is never materialised as one String
+        long totalChars = 0;
+        for (McpSchema.Content content : contents) {
+            totalChars += describe(content).length() + 1;
+        }
+        totalChars = Math.max(totalChars - 1, 0);
+
+        String content;
+        if (contents.isEmpty() || totalChars == 0) {
+            content = "Tool " + toolName + " executed with no output.";
+        } else if (maxResultChars > 0 && totalChars > maxResultChars) {
+            content = spill(toolName, contents, totalChars);
+        } else {
+            StringBuilder sb = new StringBuilder((int) totalChars);
+            for (McpSchema.Content c : contents) {
+                if (sb.length() > 0) sb.append('\n');
+                sb.append(describe(c));
+            }
+            content = sb.toString();
+        }
+
+        if (result.isError() != null && result.isError()) {
+            return "Error from tool " + toolName + ": " + content;
+        }
+        return content;
+    }
+
+    /**
+     * Returns the text of a content item, or a short summary for content that is not useful as text.
+     */
+    static String describe(McpSchema.Content content) {
+        if (content instanceof McpSchema.TextContent text) {
+            return text.text() != null ? text.text() : "";
+        }
+        if (content instanceof McpSchema.ImageContent image) {
+            int dataLength = image.data() != null ? image.data().length() : 0;
+            return String.format("[image: %s, ~%d KB of base64 data omitted]", image.mimeType(), dataLength * 3 / 4 / 1024);
+        }
+        if (content instanceof McpSchema.EmbeddedResource embedded) {
+            McpSchema.ResourceContents resource = embedded.resource();
+            if (resource instanceof McpSchema.TextResourceContents textResource) {
+                return textResource.text() != null ? textResource.text() : "";
+            }
+            if (resource instanceof McpSchema.BlobResourceContents blob) {
+                int dataLength = blob.blob() != null ? blob.blob().length() : 0;
+                return String.format("[binary resource %s: %s, ~%d KB omitted]", blob.uri(), blob.mimeType(), dataLength * 3 / 4 / 1024);
+            }
+        }
+        return "[" + content.getClass().getSimpleName() + " content omitted]";
+    }
+
+    private String spill(String toolName, List<McpSchema.Content> contents, long totalChars) {
+        String handle = HANDLE_PREFIX + nextHandle.getAndIncrement();
+        Path file = directory.resolve(handle + FILE_SUFFIX);
+        StringBuilder head = new StringBuilder(previewChars);
+        TailBuffer tail = new TailBuffer(previewChars);
+
+        try {
+            Files.createDirectories(directory);
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                boolean first = true;
+                for (McpSchema.Content content : contents) {
+                    String text = first ? describe(content) : "\n" + describe(content);
+                    first = false;
+                    writer.write(text);
+                    if (head.length() < previewChars) {
+                        head.append(text, 0, Math.min(text.length(), previewChars - head.length()));
+                    }
+                    tail.append(text);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Could not spill result of tool '{}' to {}: {}", toolName, file, e.getMessage(), e);
+            return String.format("[Tool output of %,d characters was too large to include and could not be saved: %s]\n%s\n...",
+                    totalChars, e.getMessage(), head);
+        }
+        if (ephemeral) {
+            file.toFile().deleteOnExit();
+        }
+        hasStoredResults = true;
+
+        logger.info("Spilled {} characters from tool '{}' to {}", totalChars, toolName, file);
+        return String.format("[Tool output truncated: %,d characters in total. Showing the first %d and the last %d characters. " +
+                        "Call the %s tool with handle \"%s\", an offset and a length to read the rest.]\n%s\n... [%,d characters omitted] ...\n%s",
+                totalChars, head.length(), tail.length(), TOOL_NAME, handle, head, totalChars - head.length() - tail.length(), tail);
+    }
+
+    @Override
+    public OllamaApi.Tool definition() {
+        return new OllamaApi.Tool("function", new OllamaApi.OllamaFunction(
+                TOOL_NAME,
+                "Reads part of a large tool result that was truncated in the conversation.",
+                new OllamaApi.JsonSchema("object", null,
+                        Map.of("handle", new OllamaApi.JsonSchema("string", "The handle given in the truncated result, e.g. \"result-1\""),
+                                "offset", new OllamaApi.JsonSchema("integer", "Character offset to start reading from (default 0)"),
+                                "length", new OllamaApi.JsonSchema("integer", "Number of characters to read (default and maximum " + pageChars + ")")),
+                        null, List.of("handle"), null, null)));
+    }
+
+    /**
+     * Only offered to the LLM once something has actually been spilled.
+     */
+    @Override
+    public boolean isAvailable() {
+        return hasStoredResults;
+    }
+
+    @Override
+    public McpSchema.CallToolResult call(Map<String, Object> arguments) {
+        Object handle = arguments.get("handle");
+        if (!(handle instanceof String handleName) || !handleName.matches(HANDLE_PREFIX + "\\d+")) {
+            return error("A valid 'handle' (e.g. \"result-1\") is required.");
+        }
+        long offset = Math.max(toLong(arguments.get("offset"), 0), 0);
+        int length = (int) Math.min(Math.max(toLong(arguments.get("length"), pageChars), 1), pageChars);
+
+        Path file = directory.resolve(handleName + FILE_SUFFIX);
+        if (!Files.isRegularFile(file)) {
+            return error("No stored result found for handle '" + handleName + "'.");
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            long skipped = reader.skip(offset);
+            char[] buffer = new char[length];
+            int read = 0;
+            int n;
+            while (read < length && (n = reader.read(buffer, read, length - read)) > 0) {
+                read += n;
+            }
+            boolean more = reader.read() >= 0;
+            String text = new String(buffer, 0, read);
+            String footer = more
+                    ? String.format("\n[... more available; continue with offset %d]", skipped + read)
+                    : "\n[end of result]";
+            return new McpSchema.CallToolResult(List.of(new McpSchema.TextContent(text + footer)), false);
+        } catch (IOException e) {
+            logger.error("Error reading stored tool result {}: {}", file, e.getMessage(), e);
+            return error("Could not read stored result '" + handleName + "': " + e.getMessage());
+        }
+    }
+
+    private static McpSchema.CallToolResult error(String message) {
+        return new McpSchema.CallToolResult(List.of(new McpSchema.TextContent(message)), true);
+    }
+
+    private static long toLong(Object value, long defaultValue) {
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        if (value instanceof String text) {
+            try {
+                return Long.parseLong(text.trim());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int highestExistingHandle(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith(HANDLE_PREFIX) && name.endsWith(FILE_SUFFIX))
+                    .mapToInt(name -> {
+                        try {
+                            return Integer.parseInt(name.substring(HANDLE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+                        } catch (NumberFormatException e) {
+                            return 0;
+                        }
+                    })
+                    .max().orElse(0);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Keeps the last N characters appended to it in a ring buffer.
+     */
+    private static final class TailBuffer {
+        private final char[] ring;
+        private int start;
+        private int size;
+
+        TailBuffer(int capacity) {
+            this.ring = new char[Math.max(capacity, 0)];
+        }
+
+        void append(String text) {
+            if (ring.length == 0) return;
+            int from = Math.max(0, text.length() - ring.length);
+            for (int i = from; i < text.length(); i++) {
+                int index = (start + size) % ring.length;
+                ring[index] = text.charAt(i);
+                if (size < ring.length) {
+                    size++;
+                } else {
+                    start = (start + 1) % ring.length;
+                }
+            }
+        }
+
+        int length() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(size);
+            for (int i = 0; i < size; i++) {
+                sb.append(ring[(start + i) % ring.length]);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.brunorozendo.mcphost.control;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import com.brunorozendo.mcphost.util.TokenEstimator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which tools are exposed to the LLM on each request. With a top-K limit configured, only the tools most
+ * relevant to the recent conversation (ranked by a {@link ToolRelevanceIndex}) plus a pinned set are sent, which
+ * keeps prompt size and prefill time independent of the catalog size. Without a limit every tool is exposed.
+ */
+public class ToolSelector {
+
+    private static final Logger logger = LoggerFactory.getLogger(ToolSelector.class);
+
+    // How many trailing messages make up the "recent conversation" used as the relevance query
+    private static final int QUERY_MESSAGES = 4;
+    private static final int QUERY_CHARS_PER_MESSAGE = 2000;
+
+    private final CapabilityCatalog catalog;
+    private final int topK;
+    private final Set<String> pinnedTools = new LinkedHashSet<>();
+
+    private ToolRelevanceIndex index;
+    private long indexVersion = -1;
+    private boolean exposeAllThisTurn;
+    private Set<String> lastExposed;
+
+    /**
+     * The tools chosen for one request.
+     *
+     * @param tools     The tool definitions to send.
+     * @param toolNames The names of the chosen tools, or {@code null} when the whole catalog is exposed.
+     */
+    public record Selection(List<OllamaApi.Tool> tools, Set<String> toolNames) {}
+
+    public ToolSelector(CapabilityCatalog catalog, int topK, List<String> pinnedTools) {
+        this.catalog = catalog;
+        this.topK = topK;
+        if (pinnedTools != null) {
+            this.pinnedTools.addAll(pinnedTools);
+        }
+    }
+
+    public boolean isFiltering() {
+        return topK > 0;
+    }
+
+    /**
+     * Resets the per-turn fallback. Call once for every new user message.
+     */
+    public void startTurn() {
+        exposeAllThisTurn = false;
+    }
+
+    /**
+     * Chooses the tools for the next request based on the conversation so far.
+     */
+    public Selection select(List<OllamaApi.Message> conversationHistory) {
+        List<OllamaApi.Tool> allTools = catalog.getOllamaTools();
+        if (!isFiltering() || exposeAllThisTurn || allTools.size() <= topK + pinnedTools.size()) {
+            lastExposed = null;
+            return new Selection(allTools, null);
+        }
+
+        if (index == null || indexVersion != catalog.version()) {
+            indexVersion = catalog.version();
+            index = new ToolRelevanceIndex(catalog.getAllTools());
+            logger.debug("Built tool relevance index over {} tools (catalog version {})", allTools.size(), indexVersion);
+        }
+
+        Set<String> chosen = new LinkedHashSet<>(pinnedTools);
+        chosen.addAll(index.search(buildQuery(conversationHistory), topK));
+
+        // Keep the catalog order so that the request prefix stays stable between turns
+        List<OllamaApi.Tool> exposed = allTools.stream()
+                .filter(tool -> chosen.contains(tool.function().name()))
+                .toList();
+        lastExposed = chosen;
+
+        if (logger.isInfoEnabled()) {
+            int allTokens = TokenEstimator.estimateTools(allTools);
+            int exposedTokens = TokenEstimator.estimateTools(exposed);
+            logger.info("Exposing {}/{} tools to the LLM: ~{} of ~{} tool tokens (saved ~{}). Tools: {}",
+                    exposed.size(), allTools.size(), exposedTokens, allTokens, allTokens - exposedTokens, chosen);
+        }
+        return new Selection(exposed, chosen);
+    }
+
+    /**
+     * Whether the given tool was part of the last selection.
+     */
+    public boolean wasExposed(String toolName) {
+        return lastExposed == null || lastExposed.contains(toolName);
+    }
+
+    /**
+     * Widens the exposed set after the model asked for a tool it was not shown. A tool that exists in the catalog
+     * is pinned for the rest of the session; an unknown name makes the whole catalog visible for the rest of the turn.
+     */
+    public void widen(String toolName) {
+        if (catalog.findTool(toolName).isPresent()) {
+            logger.info("Model requested tool '{}' outside the exposed set; pinning it for the rest of the session.", toolName);
+            pinnedTools.add(toolName);
+        } else {
+            logger.info("Model requested unknown tool '{}'; exposing the full catalog for the rest of this turn.", toolName);
+            exposeAllThisTurn = true;
+        }
+    }
+
+    private String buildQuery(List<OllamaApi.Message> conversationHistory) {
+        StringBuilder query = new StringBuilder();
+        int taken = 0;
+        for (int i = conversationHistory.size() - 1; i >= 0 && taken < QUERY_MESSAGES; i--) {
+            OllamaApi.Message message = conversationHistory.get(i);
+            if ("system".equals(message.role()) || message.content() == null) {
+                continue;
+            }
+            String content = message.content();
+            query.append(content, 0, Math.min(content.length(), QUERY_CHARS_PER_MESSAGE)).append('\n');
+            taken++;
+        }
+        return query.toString();
+    }
+}
@@ -0,0 +1,137 @@
+package com.brunorozendo.mcphost.control;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps a single turn from looping forever. A turn may run at most {@code maxToolRounds} rounds of tool calls and
+ * {@code maxToolCalls} calls in total, and should be done by its deadline; once any of these is reached, the model
+ * gets one last request without tools and is told to answer with what it has. The limits are checked between
+ * steps, so a running request or tool call is not interrupted.
+ * <p>
+ * A call repeating one already made in the turn, with the same arguments, is not executed again: the model gets
+ * the earlier result, marked as a repeat.
+ */
+class TurnGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(TurnGuard.class);
+
+    static final int DEFAULT_MAX_TOOL_ROUNDS = 20;
+    static final int DEFAULT_MAX_TOOL_CALLS = 50;
+    static final Duration DEFAULT_TURN_TIMEOUT = Duration.ofMinutes(10);
+
+    // Sorted keys, so the same arguments in a different order are the same call
+    private static final ObjectMapper KEY_MAPPER = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final int maxToolRounds;
+    private final int maxToolCalls;
+    private final Duration timeout;
+
+    private long deadlineNanos;
+    private int toolRounds;
+    private int toolCalls;
+    private int repeatedCalls;
+    private final Map<String, String> results = new HashMap<>();
+
+    /**
+     * @param maxToolRounds Rounds of tool calls per turn (0 = no limit).
+     * @param maxToolCalls  Tool calls per turn (0 = no limit).
+     * @param timeout       Time a turn may take, or null or zero for no limit.
+     */
+    TurnGuard(int maxToolRounds, int maxToolCalls, Duration timeout) {
+        this.maxToolRounds = maxToolRounds;
+        this.maxToolCalls = maxToolCalls;
+        this.timeout = timeout != null && !timeout.isZero() && !timeout.isNegative() ? timeout : null;
+    }
+
+    void startTurn() {
+        deadlineNanos = timeout != null ? System.nanoTime() + timeout.toNanos() : 0;
+        toolRounds = 0;
+        toolCalls = 0;
+        repeatedCalls = 0;
+        results.clear();
+    }
+
+    /**
+     * Counts a round of tool calls, i.e. an assistant message that requested tools.
+     */
+    void toolRoundCompleted() {
+        toolRounds++;
+    }
+
+    /**
+     * Counts a tool call about to be made.
+     *
+     * @return Why the call must not be made, or null if it may.
+     */
+    String admitToolCall() {
+        if (maxToolCalls > 0 && toolCalls >= maxToolCalls) {
+            return "Not executed: this turn reached its limit of " + maxToolCalls + " tool calls.";
+        }
+        if (deadlinePassed()) {
+            return "Not executed: this turn ran past its time limit of " + timeout.toSeconds() + " s.";
+        }
+        toolCalls++;
+        return null;
+    }
+
+    /**
+     * @return Why the turn must wrap up instead of sending the tool results back for more calls, or null if it may
+     * continue.
+     */
+    String stopReason() {
+        if (maxToolRounds > 0 && toolRounds >= maxToolRounds) {
+            return "This turn reached its limit of " + maxToolRounds + " rounds of tool calls.";
+        }
+        if (maxToolCalls > 0 && toolCalls >= maxToolCalls) {
+            return "This turn reached its limit of " + maxToolCalls + " tool calls.";
+        }
+        if (deadlinePassed()) {
+            return "This turn ran past its time limit of " + timeout.toSeconds() + " s.";
+        }
+        return null;
+    }
+
+    /**
+     * @return The result of an identical call made earlier in this turn, or null if there was none.
+     */
+    String previousResult(String toolName, Map<String, Object> arguments) {
+        String result = results.get(key(toolName, arguments));
+        if (result != null) {
+            repeatedCalls++;
+            logger.info("Tool '{}' was called again with the same arguments; reusing the earlier result", toolName);
+        }
+        return result;
+    }
+
+    void remember(String toolName, Map<String, Object> arguments, String result) {
+        results.put(key(toolName, arguments), result);
+    }
+
+    /**
+     * A one-line summary of the turn, for the log.
+     */
+    String summary() {
+        return toolRounds + " tool rounds, " + toolCalls + " tool calls (" + repeatedCalls + " repeated)";
+    }
+
+    private boolean deadlinePassed() {
+        return deadlineNanos != 0 && System.nanoTime() - deadlineNanos > 0;
+    }
+
+    private static String key(String toolName, Map<String, Object> arguments) {
+        try {
+            return toolName + '\u0000' + KEY_MAPPER.writeValueAsString(arguments != null ? arguments : Map.of());
+        } catch (JsonProcessingException e) {
+            // Arguments come from parsed JSON, so this does not happen; fall back to a key that never repeats
+            return toolName + '\u0000' + System.identityHashCode(arguments);
+        }
+    }
+}
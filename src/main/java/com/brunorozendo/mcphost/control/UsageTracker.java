@@ -0,0 +1,194 @@
+package com.brunorozendo.mcphost.control;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Accounts the tokens the LLM reports for every request, per turn and for the whole session, and derives prefill
+ * and decode throughput. Servers that report their own timings (Ollama's durations, llama.cpp's {@code timings})
+ * are used as is; otherwise a streamed response is timed on the client, with the time to the first token counted
+ * as prefill and the rest as decoding.
+ * <p>
+ * Optional budgets cap the tokens of a single turn (to stop a runaway tool loop) and of the whole session.
+ */
+class UsageTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(UsageTracker.class);
+
+    /**
+     * The usage of one LLM request. Durations are in nanoseconds; 0 means unknown.
+     */
+    record RequestUsage(int promptTokens, int completionTokens, long loadNanos, long prefillNanos, long decodeNanos,
+                        long wallNanos, boolean serverTimed) {
+
+        int totalTokens() {
+            return promptTokens + completionTokens;
+        }
+
+        /**
+         * The form written to the session journal.
+         */
+        Map<String, Object> toRecord() {
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("promptTokens", promptTokens);
+            record.put("completionTokens", completionTokens);
+            record.put("loadMillis", loadNanos / 1_000_000.0);
+            record.put("prefillMillis", prefillNanos / 1_000_000.0);
+            record.put("decodeMillis", decodeNanos / 1_000_000.0);
+            record.put("wallMillis", wallNanos / 1_000_000.0);
+            record.put("serverTimed", serverTimed);
+            return record;
+        }
+    }
+
+    private static final class Totals {
+        private int requests;
+        private long promptTokens;
+        private long completionTokens;
+        private long loadNanos;
+        private long wallNanos;
+        // Only requests with a known duration count towards throughput
+        private long prefillTokens;
+        private long prefillNanos;
+        private long decodeTokens;
+        private long decodeNanos;
+
+        void add(RequestUsage usage) {
+            requests++;
+            promptTokens += usage.promptTokens();
+            completionTokens += usage.completionTokens();
+            loadNanos += usage.loadNanos();
+            wallNanos += usage.wallNanos();
+            if (usage.prefillNanos() > 0) {
+                prefillTokens += usage.promptTokens();
+                prefillNanos += usage.prefillNanos();
+            }
+            if (usage.decodeNanos() > 0) {
+                decodeTokens += usage.completionTokens();
+                decodeNanos += usage.decodeNanos();
+            }
+        }
+
+        long totalTokens() {
+            return promptTokens + completionTokens;
+        }
+
+        String format() {
+            return String.format("%d requests, %,d prompt + %,d completion = %,d tokens, prefill %s, decode %s, %.1f s waiting for the LLM%s",
+                    requests, promptTokens, completionTokens, totalTokens(), rate(prefillTokens, prefillNanos),
+                    rate(decodeTokens, decodeNanos), wallNanos / 1e9,
+                    loadNanos > 0 ? String.format(" (%.1f s loading the model)", loadNanos / 1e9) : "");
+        }
+
+        private static String rate(long tokens, long nanos) {
+            return nanos > 0 ? String.format("%.1f tok/s", tokens / (nanos / 1e9)) : "n/a";
+        }
+    }
+
+    private final long maxTurnTokens;
+    private final long maxSessionTokens;
+    private final Totals session = new Totals();
+    private Totals turn = new Totals();
+    private int turns;
+    private int contextTokens;
+
+    /**
+     * @param maxTurnTokens    Tokens one turn may use across all its requests (0 = no limit).
+     * @param maxSessionTokens Tokens the whole session may use (0 = no limit).
+     */
+    UsageTracker(long maxTurnTokens, long maxSessionTokens) {
+        this.maxTurnTokens = maxTurnTokens;
+        this.maxSessionTokens = maxSessionTokens;
+    }
+
+    void startTurn() {
+        turn = new Totals();
+        turns++;
+    }
+
+    /**
+     * Records a completed request.
+     *
+     * @param startNanos      When the request was sent.
+     * @param firstTokenNanos When the first content or tool call arrived, or 0 if the response was not streamed.
+     * @param endNanos        When the response was complete.
+     */
+    RequestUsage record(OllamaApi.ChatResponse response, long startNanos, long firstTokenNanos, long endNanos) {
+        int promptTokens = response.promptEvalCount() != null ? response.promptEvalCount() : 0;
+        int completionTokens = response.evalCount() != null ? response.evalCount() : 0;
+        long loadNanos = response.loadDuration() != null ? response.loadDuration() : 0;
+        boolean serverTimed = response.promptEvalDuration() != null || response.evalDuration() != null;
+        long prefillNanos;
+        long decodeNanos;
+        if (serverTimed) {
+            prefillNanos = response.promptEvalDuration() != null ? response.promptEvalDuration() : 0;
+            decodeNanos = response.evalDuration() != null ? response.evalDuration() : 0;
+        } else if (firstTokenNanos > 0) {
+            prefillNanos = firstTokenNanos - startNanos;
+            decodeNanos = endNanos - firstTokenNanos;
+        } else {
+            prefillNanos = 0;
+            decodeNanos = 0;
+        }
+
+        RequestUsage usage = new RequestUsage(promptTokens, completionTokens, loadNanos, prefillNanos, decodeNanos,
+                endNanos - startNanos, serverTimed);
+        turn.add(usage);
+        session.add(usage);
+        if (usage.totalTokens() > 0) {
+            contextTokens = usage.totalTokens();
+        }
+        logger.debug("Request usage: {}", usage);
+        return usage;
+    }
+
+    void endTurn() {
+        if (turn.requests > 0) {
+            logger.info("Turn {} usage: {}", turns, turn.format());
+        }
+    }
+
+    /**
+     * @return Why the current turn must stop, or null if it is within its budgets.
+     */
+    String turnBudgetExceeded() {
+        if (maxTurnTokens > 0 && turn.totalTokens() >= maxTurnTokens) {
+            return String.format("This turn used %,d tokens, reaching its budget of %,d.", turn.totalTokens(), maxTurnTokens);
+        }
+        return sessionBudgetExceeded();
+    }
+
+    /**
+     * @return Why no further request may be made in this session, or null if it is within its budget.
+     */
+    String sessionBudgetExceeded() {
+        if (maxSessionTokens > 0 && session.totalTokens() >= maxSessionTokens) {
+            return String.format("This session used %,d tokens, reaching its budget of %,d.", session.totalTokens(), maxSessionTokens);
+        }
+        return null;
+    }
+
+    /**
+     * The report shown by the {@code /stats} command.
+     */
+    String format() {
+        StringBuilder text = new StringBuilder();
+        text.append("Last turn: ").append(turn.requests > 0 ? turn.format() : "no requests").append('\n');
+        text.append("Session (").append(turns).append(turns == 1 ? " turn" : " turns").append("): ").append(session.format()).append('\n');
+        text.append(String.format("Context size of the last request: %,d tokens", contextTokens));
+        if (maxTurnTokens > 0 || maxSessionTokens > 0) {
+            text.append(String.format("%nBudgets: %s per turn, %s per session",
+                    maxTurnTokens > 0 ? String.format("%,d", maxTurnTokens) : "unlimited",
+                    maxSessionTokens > 0 ? String.format("%,d (%,d left)", maxSessionTokens, Math.max(maxSessionTokens - session.totalTokens(), 0)) : "unlimited"));
+        }
+        return text.toString();
+    }
+
+    String formatSession() {
+        return session.format();
+    }
+}
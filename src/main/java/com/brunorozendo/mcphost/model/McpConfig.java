@@ -44,12 +44,44 @@ public class McpConfig {
         @JsonProperty("env")
         private Map<String, String> env;
 
+        // Resource URIs read when the server starts and kept in the resource cache
+        @JsonProperty("pinnedResources")
+        private List<String> pinnedResources;
+
+        // Overrides of the global timeouts (milliseconds) and call limits for this server; unset uses globalSettings
+        @JsonProperty("timeout")
+        private Integer timeout;
+
+        @JsonProperty("toolTimeout")
+        private Integer toolTimeout;
+
+        @JsonProperty("initializationTimeout")
+        private Integer initializationTimeout;
+
+        @JsonProperty("maxConcurrentCalls")
+        private Integer maxConcurrentCalls;
+
+        @JsonProperty("maxQueuedCalls")
+        private Integer maxQueuedCalls;
+
         public String getCommand() { return command; }
         public void setCommand(String command) { this.command = command; }
         public List<String> getArgs() { return args; }
         public void setArgs(List<String> args) { this.args = args; }
         public Map<String, String> getEnv() { return env; }
         public void setEnv(Map<String, String> env) { this.env = env; }
+        public List<String> getPinnedResources() { return pinnedResources; }
+        public void setPinnedResources(List<String> pinnedResources) { this.pinnedResources = pinnedResources; }
+        public Integer getTimeout() { return timeout; }
+        public void setTimeout(Integer timeout) { this.timeout = timeout; }
+        public Integer getToolTimeout() { return toolTimeout; }
+        public void setToolTimeout(Integer toolTimeout) { this.toolTimeout = toolTimeout; }
+        public Integer getInitializationTimeout() { return initializationTimeout; }
+        public void setInitializationTimeout(Integer initializationTimeout) { this.initializationTimeout = initializationTimeout; }
+        public Integer getMaxConcurrentCalls() { return maxConcurrentCalls; }
+        public void setMaxConcurrentCalls(Integer maxConcurrentCalls) { this.maxConcurrentCalls = maxConcurrentCalls; }
+        public Integer getMaxQueuedCalls() { return maxQueuedCalls; }
+        public void setMaxQueuedCalls(Integer maxQueuedCalls) { this.maxQueuedCalls = maxQueuedCalls; }
     }
 
     /**
@@ -65,11 +97,41 @@ public class McpConfig {
         @JsonProperty("maxConcurrentConnections")
         private int maxConcurrentConnections;
 
+        @JsonProperty("toolTimeout")
+        private int toolTimeout;
+
+        @JsonProperty("initializationTimeout")
+        private int initializationTimeout;
+
+        @JsonProperty("maxConcurrentCallsPerServer")
+        private int maxConcurrentCallsPerServer;
+
+        @JsonProperty("maxQueuedCalls")
+        private int maxQueuedCalls;
+
+        @JsonProperty("resourceCacheMaxBytes")
+        private long resourceCacheMaxBytes;
+
+        @JsonProperty("resourceCacheTtlSeconds")
+        private int resourceCacheTtlSeconds;
+
         public int getDefaultTimeout() { return defaultTimeout; }
         public void setDefaultTimeout(int defaultTimeout) { this.defaultTimeout = defaultTimeout; }
         public boolean isEnableDebugLogging() { return enableDebugLogging; }
         public void setEnableDebugLogging(boolean enableDebugLogging) { this.enableDebugLogging = enableDebugLogging; }
         public int getMaxConcurrentConnections() { return maxConcurrentConnections; }
         public void setMaxConcurrentConnections(int maxConcurrentConnections) { this.maxConcurrentConnections = maxConcurrentConnections; }
+        public int getToolTimeout() { return toolTimeout; }
+        public void setToolTimeout(int toolTimeout) { this.toolTimeout = toolTimeout; }
+        public int getInitializationTimeout() { return initializationTimeout; }
+        public void setInitializationTimeout(int initializationTimeout) { this.initializationTimeout = initializationTimeout; }
+        public int getMaxConcurrentCallsPerServer() { return maxConcurrentCallsPerServer; }
+        public void setMaxConcurrentCallsPerServer(int maxConcurrentCallsPerServer) { this.maxConcurrentCallsPerServer = maxConcurrentCallsPerServer; }
+        public int getMaxQueuedCalls() { return maxQueuedCalls; }
+        public void setMaxQueuedCalls(int maxQueuedCalls) { this.maxQueuedCalls = maxQueuedCalls; }
+        public long getResourceCacheMaxBytes() { return resourceCacheMaxBytes; }
+        public void setResourceCacheMaxBytes(long resourceCacheMaxBytes) { this.resourceCacheMaxBytes = resourceCacheMaxBytes; }
+        public int getResourceCacheTtlSeconds() { return resourceCacheTtlSeconds; }
+        public void setResourceCacheTtlSeconds(int resourceCacheTtlSeconds) { this.resourceCacheTtlSeconds = resourceCacheTtlSeconds; }
     }
 }
@@ -0,0 +1,290 @@
+package com.brunorozendo.mcphost.service;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only, crash-safe journal of a chat session.
+ * <p>
+ * Every record is written as {@code [int length][int crc32][byte type][payload]}, where the payload is the JSON
+ * form of the record. Writes go straight to the file channel; {@code fsync} is batched, either after a number of
+ * records or after a short interval, and runs on a background thread, so a turn never waits on the disk. On open, the journal is scanned and any
+ * torn or corrupt tail left by a crash is cut off, so the file always ends at a complete record.
+ */
+public class SessionJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionJournal.class);
+
+    public static final byte MESSAGE_RECORD = 'M';
+    // Token usage and timings of an LLM request; kept for analysis, not replayed on resume
+    public static final byte USAGE_RECORD = 'U';
+
+    private static final String FILE_SUFFIX = ".journal";
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + 1;
+    private static final int MAX_RECORD_BYTES = 256 * 1024 * 1024;
+    private static final int SYNC_EVERY_RECORDS = 16;
+    private static final long SYNC_INTERVAL_MILLIS = 200;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String sessionId;
+    private final Path file;
+    private final FileChannel channel;
+    private final List<Record> recoveredRecords;
+    private final ScheduledExecutorService syncScheduler;
+    private int unsyncedRecords;
+    private boolean closed;
+
+    /**
+     * A single journal entry.
+     */
+    public record Record(byte type, byte[] payload) {}
+
+    private SessionJournal(String sessionId, Path file, FileChannel channel, List<Record> recoveredRecords) {
+        this.sessionId = sessionId;
+        this.file = file;
+        this.channel = channel;
+        this.recoveredRecords = recoveredRecords;
+        this.syncScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SessionJournalSync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.syncScheduler.scheduleWithFixedDelay(this::syncIfDirty, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens (or creates) the journal of a session. The records already in the file are available
+     * through {@link #getRecoveredMessages()}; new records are appended after them.
+     *
+     * @param directory The directory holding session journals.
+     * @param sessionId The session to open, or {@code null} to start a new one.
+     */
+    public static SessionJournal open(Path directory, String sessionId) throws IOException {
+        Files.createDirectories(directory);
+        String id;
+        Path file;
+        FileChannel channel;
+        if (sessionId != null) {
+            id = sessionId;
+            file = directory.resolve(id + FILE_SUFFIX);
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } else {
+            // A new session must never share a file with another one started in the same second
+            String base = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+                    + "-" + ProcessHandle.current().pid();
+            for (int attempt = 0; ; attempt++) {
+                id = attempt == 0 ? base : base + "-" + attempt;
+                file = directory.resolve(id + FILE_SUFFIX);
+                try {
+                    channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    break;
+                } catch (FileAlreadyExistsException e) {
+                    logger.debug("Session journal {} already exists; trying another id", file);
+                }
+            }
+        }
+        try {
+            List<Record> records = new ArrayList<>();
+            long validLength = readRecords(channel, records);
+            if (validLength < channel.size()) {
+                logger.warn("Session journal {} has a torn tail of {} bytes (likely from a crash); truncating it.",
+                        file, channel.size() - validLength);
+                channel.truncate(validLength);
+                channel.force(true);
+            }
+            channel.position(validLength);
+            logger.info("Opened session journal {} ({} records recovered)", file, records.size());
+            return new SessionJournal(id, file, channel, records);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks whether a journal exists for the given session.
+     */
+    public static boolean exists(Path directory, String sessionId) {
+        return Files.isRegularFile(directory.resolve(sessionId + FILE_SUFFIX));
+    }
+
+    /**
+     * Reads complete, checksum-valid records from the start of the channel.
+     *
+     * @return The length of the valid prefix.
+     */
+    private static long readRecords(FileChannel channel, List<Record> records) throws IOException {
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        CRC32 crc = new CRC32();
+
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            byte type = header.get();
+            if (length < 0 || length > MAX_RECORD_BYTES || position + HEADER_BYTES + length > size) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, position + HEADER_BYTES);
+
+            crc.reset();
+            crc.update(type);
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            records.add(new Record(type, payload.array()));
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of journal");
+            }
+        }
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the conversation messages that were already in the journal when it was opened, in order.
+     */
+    public List<OllamaApi.Message> getRecoveredMessages() {
+        List<OllamaApi.Message> messages = new ArrayList<>();
+        for (Record record : recoveredRecords) {
+            if (record.type() == MESSAGE_RECORD) {
+                try {
+                    messages.add(objectMapper.readValue(record.payload(), OllamaApi.Message.class));
+                } catch (IOException e) {
+                    logger.warn("Skipping unreadable message record in {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Appends a conversation message.
+     */
+    public void appendMessage(OllamaApi.Message message) {
+        try {
+            append(MESSAGE_RECORD, objectMapper.writeValueAsBytes(message));
+        } catch (IOException e) {
+            logger.error("Failed to write message to session journal {}: {}", file, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Appends the usage of an LLM request.
+     */
+    public void appendUsage(Map<String, Object> usage) {
+        try {
+            append(USAGE_RECORD, objectMapper.writeValueAsBytes(usage));
+        } catch (IOException e) {
+            logger.error("Failed to write usage to session journal {}: {}", file, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Appends a raw record. Durability is reached at the next batched sync, which runs on the background thread.
+     */
+    public synchronized void append(byte type, byte[] payload) throws IOException {
+        if (closed) {
+            throw new IOException("Session journal is closed");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(type).put(payload).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        if (++unsyncedRecords == SYNC_EVERY_RECORDS) {
+            // Sync now rather than at the next interval, but not on the caller's thread
+            syncScheduler.execute(this::syncIfDirty);
+        }
+    }
+
+    /**
+     * Runs on the sync thread. The fsync happens outside the lock, so appends are not held up by the disk.
+     */
+    private void syncIfDirty() {
+        synchronized (this) {
+            if (unsyncedRecords == 0 || closed) {
+                return;
+            }
+            unsyncedRecords = 0;
+        }
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // Closed meanwhile; close() has synced the journal
+        } catch (IOException e) {
+            logger.error("Failed to sync session journal {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void sync() throws IOException {
+        channel.force(false);
+        unsyncedRecords = 0;
+    }
+
+    /**
+     * Syncs any pending records and closes the journal.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        // Not shutdownNow(): interrupting a running fsync would close the channel before the final sync
+        syncScheduler.shutdown();
+        try {
+            sync();
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error closing session journal {}: {}", file, e.getMessage());
+        }
+        closed = true;
+    }
+}
@@ -0,0 +1,352 @@
+package com.brunorozendo.mcphost.service.llm;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An exact-match cache of chat responses, in front of another client. Requests are keyed by a SHA-256 hash of
+ * everything that decides the answer: the model, messages, tools, format and options. Recently used responses are
+ * kept in memory; all of them are kept on disk as one gzip-compressed JSON file per response, so reruns of an
+ * evaluation batch or a replayed session are answered without the server. Both stores are bounded by size and
+ * evict the least recently used responses; reading a response from disk refreshes its file's modification time, so
+ * the disk order survives a restart.
+ * <p>
+ * Only deterministic requests (e.g. temperature 0) should be cached: a cached answer is returned as it was, however
+ * the server would sample today. Cached responses carry no token counts or timings, since nothing was evaluated.
+ */
+public class CachingLlmApiClient implements LlmApiClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingLlmApiClient.class);
+
+    private static final String FILE_SUFFIX = ".json.gz";
+    // The memory store holds at most this much of the disk store's budget
+    private static final long MAX_MEMORY_BYTES = 32L * 1024 * 1024;
+
+    private final LlmApiClient delegate;
+    private final Path directory;
+    private final long maxDiskBytes;
+    private final long maxMemoryBytes;
+    // Sorted keys make equal requests hash equally whatever order their maps were built in
+    private final ObjectMapper keyMapper = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private record MemoryEntry(OllamaApi.ChatResponse response, long bytes) {
+    }
+
+    // Compared by identity: a new instance is made each time a response is written, so a reader can tell whether
+    // the file it failed to read is still the current one
+    private static final class DiskEntry {
+        private final long bytes;
+
+        DiskEntry(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    // Both maps are in access order, eldest first, and guarded by this
+    private final LinkedHashMap<String, MemoryEntry> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, DiskEntry> disk = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Opens the cache in a directory, indexing the responses already stored there.
+     *
+     * @param delegate     The client that answers requests the cache cannot.
+     * @param directory    Where the responses are stored; created if missing.
+     * @param maxDiskBytes The most the stored responses may take on disk.
+     * @throws IOException if the directory cannot be created or read.
+     */
+    public CachingLlmApiClient(LlmApiClient delegate, Path directory, long maxDiskBytes) throws IOException {
+        if (maxDiskBytes <= 0) {
+            throw new IllegalArgumentException("The cache size must be positive");
+        }
+        this.delegate = delegate;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.maxMemoryBytes = Math.min(maxDiskBytes, MAX_MEMORY_BYTES);
+        Files.createDirectories(directory);
+        loadIndex();
+    }
+
+    private void loadIndex() throws IOException {
+        record StoredFile(String key, long bytes, FileTime lastUsed) {
+        }
+        List<StoredFile> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(directory, 2)) {
+            for (Iterator<Path> it = paths.iterator(); it.hasNext(); ) {
+                Path path = it.next();
+                String name = path.getFileName().toString();
+                if (name.endsWith(FILE_SUFFIX) && Files.isRegularFile(path)) {
+                    files.add(new StoredFile(name.substring(0, name.length() - FILE_SUFFIX.length()),
+                            Files.size(path), Files.getLastModifiedTime(path)));
+                }
+            }
+        }
+        files.sort(Comparator.comparing(StoredFile::lastUsed));
+        synchronized (this) {
+            for (StoredFile file : files) {
+                disk.put(file.key(), new DiskEntry(file.bytes()));
+                diskBytes += file.bytes();
+            }
+            evictFromDisk();
+        }
+        logger.info("Response cache in {}: {} responses, {} KB", directory, disk.size(), diskBytes / 1024);
+    }
+
+    @Override
+    public OllamaApi.ChatResponse chat(OllamaApi.ChatRequest request) throws Exception {
+        String key = keyOf(request);
+        OllamaApi.ChatResponse cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+        OllamaApi.ChatResponse response = delegate.chat(request);
+        store(key, response);
+        return response;
+    }
+
+    @Override
+    public OllamaApi.ChatResponse chatStream(OllamaApi.ChatRequest request, ChatStreamListener listener) throws Exception {
+        String key = keyOf(request);
+        OllamaApi.ChatResponse cached = lookup(key);
+        if (cached != null) {
+            ChatStreamListener.replay(cached, listener);
+            return cached;
+        }
+        OllamaApi.ChatResponse response = delegate.chatStream(request, listener);
+        store(key, response);
+        return response;
+    }
+
+    /**
+     * Hashes the parts of a request that decide its answer. The stream flag and keep-alive do not.
+     */
+    private String keyOf(OllamaApi.ChatRequest request) throws IOException {
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("model", request.model());
+        content.put("messages", request.messages());
+        content.put("tools", request.tools());
+        content.put("format", request.format());
+        content.put("options", request.options());
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            keyMapper.writeValue(new DigestOutputStream(digest), content);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Feeds the serialized request into the digest without holding it in memory.
+     */
+    private static final class DigestOutputStream extends OutputStream {
+        private final MessageDigest digest;
+
+        DigestOutputStream(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public void write(int b) {
+            digest.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            digest.update(b, off, len);
+        }
+    }
+
+    private OllamaApi.ChatResponse lookup(String key) {
+        while (true) {
+            DiskEntry current;
+            synchronized (this) {
+                MemoryEntry entry = memory.get(key);
+                if (entry != null) {
+                    memoryHits++;
+                    disk.get(key);
+                    logger.debug("Response cache hit (memory): {}", key);
+                    return entry.response();
+                }
+                current = disk.get(key);
+                if (current == null) {
+                    misses++;
+                    return null;
+                }
+            }
+            // The file is read without the lock, so a concurrent store or eviction may replace or delete it meanwhile
+            Path file = fileOf(key);
+            byte[] json;
+            OllamaApi.ChatResponse response;
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+                json = in.readAllBytes();
+                response = objectMapper.readValue(json, OllamaApi.ChatResponse.class);
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (disk.get(key) != current) {
+                        // Replaced or evicted while it was read; look again
+                        continue;
+                    }
+                    misses++;
+                    forget(key);
+                }
+                logger.warn("Dropping unreadable cached response {}: {}", file, e.getMessage());
+                return null;
+            }
+            try {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException e) {
+                logger.debug("Could not refresh cached response {}: {}", file, e.getMessage());
+            }
+            synchronized (this) {
+                diskHits++;
+                if (disk.get(key) == current) {
+                    remember(key, response, json.length);
+                }
+            }
+            logger.debug("Response cache hit (disk): {}", key);
+            return response;
+        }
+    }
+
+    private void store(String key, OllamaApi.ChatResponse response) {
+        if (response == null || response.message() == null) {
+            return;
+        }
+        // Nothing is evaluated when the response is served from the cache
+        OllamaApi.ChatResponse stored = new OllamaApi.ChatResponse(response.model(), response.createdAt(),
+                response.message(), response.done(), null, null, null, null, null, null, response.done_reason());
+        Path file = fileOf(key);
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(stored);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 3);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(json);
+            }
+            Files.createDirectories(file.getParent());
+            Path temporary = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.write(temporary, compressed.toByteArray());
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            synchronized (this) {
+                DiskEntry previous = disk.put(key, new DiskEntry(compressed.size()));
+                diskBytes += compressed.size() - (previous != null ? previous.bytes : 0);
+                remember(key, stored, json.length);
+                evictFromDisk();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not store a response in the cache: {}", e.getMessage());
+        }
+    }
+
+    private Path fileOf(String key) {
+        // Spread the files over 256 subdirectories so none grows too large
+        return directory.resolve(key.substring(0, 2)).resolve(key + FILE_SUFFIX);
+    }
+
+    private void remember(String key, OllamaApi.ChatResponse response, long bytes) {
+        MemoryEntry previous = memory.put(key, new MemoryEntry(response, bytes));
+        memoryBytes += bytes - (previous != null ? previous.bytes() : 0);
+        Iterator<MemoryEntry> eldest = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+            memoryBytes -= eldest.next().bytes();
+            eldest.remove();
+        }
+    }
+
+    private void evictFromDisk() {
+        Iterator<Map.Entry<String, DiskEntry>> eldest = disk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+            Map.Entry<String, DiskEntry> entry = eldest.next();
+            eldest.remove();
+            diskBytes -= entry.getValue().bytes;
+            MemoryEntry inMemory = memory.remove(entry.getKey());
+            if (inMemory != null) {
+                memoryBytes -= inMemory.bytes();
+            }
+            deleteFile(entry.getKey());
+            evictions++;
+        }
+    }
+
+    private void forget(String key) {
+        DiskEntry entry = disk.remove(key);
+        if (entry != null) {
+            diskBytes -= entry.bytes;
+        }
+        MemoryEntry inMemory = memory.remove(key);
+        if (inMemory != null) {
+            memoryBytes -= inMemory.bytes();
+        }
+        deleteFile(key);
+    }
+
+    private void deleteFile(String key) {
+        try {
+            Files.deleteIfExists(fileOf(key));
+        } catch (IOException e) {
+            logger.debug("Could not delete cached response {}: {}", key, e.getMessage());
+        }
+    }
+
+    @Override
+    public String getProviderName() {
+        return delegate.getProviderName();
+    }
+
+    @Override
+    public void warmUp() {
+        delegate.warmUp();
+    }
+
+    /**
+     * Hits and misses so far, the hit ratio, and the size of both stores, followed by the statistics of the
+     * client behind the cache.
+     */
+    @Override
+    public synchronized String stats() {
+        long lookups = memoryHits + diskHits + misses;
+        String text = String.format("Response cache: %d hits (%d memory, %d disk), %d misses, hit ratio %.1f%%; "
+                        + "%d responses in %,d KB on disk, %d in %,d KB in memory, %d evicted",
+                memoryHits + diskHits, memoryHits, diskHits, misses,
+                lookups > 0 ? 100.0 * (memoryHits + diskHits) / lookups : 0.0,
+                disk.size(), diskBytes / 1024, memory.size(), memoryBytes / 1024, evictions);
+        String delegateStats = delegate.stats();
+        return delegateStats != null ? text + System.lineSeparator() + delegateStats : text;
+    }
+}
@@ -0,0 +1,319 @@
+package com.brunorozendo.mcphost.service.llm;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes each chat request to a small, fast model or to the large one. Requests of the configured classes go to
+ * the small model first; everything else goes to the large model. A small-model response that looks unreliable
+ * (empty, cut off at its length limit, or with a tool call that does not fit the offered tools), or a failed
+ * request, is discarded and the request is sent to the large model instead.
+ * <p>
+ * When streaming, the small model's text and tool calls are held back until the response has been checked, so an
+ * escalated answer is never shown next to the large model's and an invalid call never starts running. The small
+ * model is fast, so little is lost by delivering its answer at once.
+ */
+public class CascadingLlmApiClient implements LlmApiClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(CascadingLlmApiClient.class);
+
+    static final int DEFAULT_SHORT_MESSAGE_CHARS = 200;
+
+    /**
+     * The kinds of request that may go to the small model.
+     */
+    public enum RequestClass {
+        // Follows tool results: summarising them, or filling in the arguments of the next call
+        AFTER_TOOLS,
+        // Answers a short user message
+        SHORT,
+        // Anything else; always goes to the large model
+        OTHER;
+
+        /**
+         * Parses a class name as written on the command line, e.g. {@code after-tools}.
+         */
+        public static RequestClass parse(String name) {
+            return valueOf(name.strip().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private record Route(RequestClass requestClass, boolean small) {
+    }
+
+    private final LlmApiClient large;
+    private final LlmApiClient small;
+    private final String smallModel;
+    private final Set<RequestClass> smallClasses;
+    private final int shortMessageChars;
+
+    private final Map<RequestClass, AtomicLong> smallRequests = new EnumMap<>(RequestClass.class);
+    private final Map<RequestClass, AtomicLong> largeRequests = new EnumMap<>(RequestClass.class);
+    private final AtomicLong escalations = new AtomicLong();
+    private final AtomicLong smallNanos = new AtomicLong();
+    private final AtomicLong largeNanos = new AtomicLong();
+
+    /**
+     * @param large             The client of the large model; requests keep their model name when sent to it.
+     * @param small             The client of the small model.
+     * @param smallModel        The name of the small model, put into the requests routed to it.
+     * @param smallClasses      The request classes to try on the small model first.
+     * @param shortMessageChars A user message up to this long counts as {@link RequestClass#SHORT}.
+     */
+    public CascadingLlmApiClient(LlmApiClient large, LlmApiClient small, String smallModel,
+                                 Set<RequestClass> smallClasses, int shortMessageChars) {
+        this.large = large;
+        this.small = small;
+        this.smallModel = smallModel;
+        this.smallClasses = smallClasses.isEmpty() ? EnumSet.noneOf(RequestClass.class) : EnumSet.copyOf(smallClasses);
+        this.smallClasses.remove(RequestClass.OTHER);
+        this.shortMessageChars = shortMessageChars > 0 ? shortMessageChars : DEFAULT_SHORT_MESSAGE_CHARS;
+        for (RequestClass requestClass : RequestClass.values()) {
+            smallRequests.put(requestClass, new AtomicLong());
+            largeRequests.put(requestClass, new AtomicLong());
+        }
+    }
+
+    @Override
+    public OllamaApi.ChatResponse chat(OllamaApi.ChatRequest request) throws Exception {
+        Route route = route(request);
+        if (route.small()) {
+            long start = System.nanoTime();
+            OllamaApi.ChatResponse response = null;
+            String problem;
+            try {
+                response = small.chat(forSmallModel(request));
+                problem = check(request, response);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                problem = "small model failed: " + e.getMessage();
+            }
+            smallNanos.addAndGet(System.nanoTime() - start);
+            if (problem == null) {
+                smallRequests.get(route.requestClass()).incrementAndGet();
+                return response;
+            }
+            escalate(route, problem);
+        }
+        largeRequests.get(route.requestClass()).incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            return large.chat(request);
+        } finally {
+            largeNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public OllamaApi.ChatResponse chatStream(OllamaApi.ChatRequest request, ChatStreamListener listener) throws Exception {
+        Route route = route(request);
+        if (route.small()) {
+            StringBuilder heldBackContent = new StringBuilder();
+            List<OllamaApi.ToolCall> heldBack = new ArrayList<>();
+            long start = System.nanoTime();
+            OllamaApi.ChatResponse response = null;
+            String problem;
+            try {
+                response = small.chatStream(forSmallModel(request), new ChatStreamListener() {
+                    @Override
+                    public void onContent(String delta) {
+                        heldBackContent.append(delta);
+                    }
+
+                    @Override
+                    public void onToolCall(OllamaApi.ToolCall toolCall) {
+                        heldBack.add(toolCall);
+                    }
+                });
+                problem = check(request, response);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                problem = "small model failed: " + e.getMessage();
+            }
+            smallNanos.addAndGet(System.nanoTime() - start);
+            if (problem == null) {
+                smallRequests.get(route.requestClass()).incrementAndGet();
+                if (!heldBackContent.isEmpty()) {
+                    listener.onContent(heldBackContent.toString());
+                }
+                heldBack.forEach(listener::onToolCall);
+                return response;
+            }
+            escalate(route, problem);
+        }
+        largeRequests.get(route.requestClass()).incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            return large.chatStream(request, listener);
+        } finally {
+            largeNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private Route route(OllamaApi.ChatRequest request) {
+        RequestClass requestClass = classify(request.messages());
+        Route route = new Route(requestClass, smallClasses.contains(requestClass));
+        logger.debug("Routing {} request to the {} model", requestClass, route.small() ? "small" : "large");
+        return route;
+    }
+
+    private RequestClass classify(List<OllamaApi.Message> messages) {
+        if (messages.isEmpty()) {
+            return RequestClass.OTHER;
+        }
+        OllamaApi.Message last = messages.get(messages.size() - 1);
+        if ("tool".equals(last.role())) {
+            return RequestClass.AFTER_TOOLS;
+        }
+        if ("user".equals(last.role()) && last.content() != null && last.content().length() <= shortMessageChars) {
+            return RequestClass.SHORT;
+        }
+        return RequestClass.OTHER;
+    }
+
+    private OllamaApi.ChatRequest forSmallModel(OllamaApi.ChatRequest request) {
+        return new OllamaApi.ChatRequest(smallModel, request.messages(), request.stream(), request.tools(),
+                request.format(), request.options(), request.keep_alive());
+    }
+
+    private void escalate(Route route, String problem) {
+        escalations.incrementAndGet();
+        logger.info("Escalating {} request to the large model: {}", route.requestClass(), problem);
+    }
+
+    /**
+     * @return Why the small model's response cannot be used, or null if it can.
+     */
+    private static String check(OllamaApi.ChatRequest request, OllamaApi.ChatResponse response) {
+        if (response == null || response.message() == null) {
+            return "no response";
+        }
+        OllamaApi.Message message = response.message();
+        boolean hasToolCalls = message.tool_calls() != null && !message.tool_calls().isEmpty();
+        if (!hasToolCalls && (message.content() == null || message.content().isBlank())) {
+            return "empty response";
+        }
+        if ("length".equals(response.done_reason())) {
+            return "response cut off at its length limit";
+        }
+        if (hasToolCalls) {
+            for (OllamaApi.ToolCall toolCall : message.tool_calls()) {
+                String problem = checkToolCall(request.tools(), toolCall);
+                if (problem != null) {
+                    return problem;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String checkToolCall(List<OllamaApi.Tool> tools, OllamaApi.ToolCall toolCall) {
+        if (toolCall.function() == null || toolCall.function().name() == null) {
+            return "tool call without a name";
+        }
+        String name = toolCall.function().name();
+        OllamaApi.Tool tool = tools == null ? null : tools.stream()
+                .filter(t -> name.equals(t.function().name()))
+                .findFirst()
+                .orElse(null);
+        if (tool == null) {
+            return "call to unknown tool '" + name + "'";
+        }
+        OllamaApi.JsonSchema parameters = tool.function().parameters();
+        Map<String, Object> arguments = toolCall.function().arguments();
+        if (parameters == null) {
+            return null;
+        }
+        if (arguments == null) {
+            return "call to '" + name + "' without arguments";
+        }
+        if (parameters.required() != null) {
+            for (String required : parameters.required()) {
+                if (!arguments.containsKey(required)) {
+                    return "call to '" + name + "' is missing required argument '" + required + "'";
+                }
+            }
+        }
+        if (parameters.properties() != null) {
+            for (Map.Entry<String, Object> argument : arguments.entrySet()) {
+                OllamaApi.JsonSchema schema = parameters.properties().get(argument.getKey());
+                if (schema != null && !fits(schema, argument.getValue())) {
+                    return "argument '" + argument.getKey() + "' of '" + name + "' does not match its schema";
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean fits(OllamaApi.JsonSchema schema, Object value) {
+        if (value == null) {
+            return true;
+        }
+        if (schema.enumValues() != null && !schema.enumValues().isEmpty() && !schema.enumValues().contains(value)) {
+            return false;
+        }
+        if (schema.type() == null) {
+            return true;
+        }
+        return switch (schema.type()) {
+            case "string" -> value instanceof String;
+            case "integer" -> value instanceof Integer || value instanceof Long
+                    || (value instanceof Number number && number.doubleValue() == Math.rint(number.doubleValue()));
+            case "number" -> value instanceof Number;
+            case "boolean" -> value instanceof Boolean;
+            case "array" -> value instanceof List;
+            case "object" -> value instanceof Map;
+            default -> true;
+        };
+    }
+
+    @Override
+    public String getProviderName() {
+        return large.getProviderName();
+    }
+
+    @Override
+    public void warmUp() {
+        large.warmUp();
+        small.warmUp();
+    }
+
+    /**
+     * Routing decisions so far: requests answered by each model per class, escalations, and the average time
+     * each model took.
+     */
+    @Override
+    public String stats() {
+        StringBuilder text = new StringBuilder();
+        long smallTotal = 0;
+        long largeTotal = 0;
+        for (RequestClass requestClass : RequestClass.values()) {
+            long smallCount = smallRequests.get(requestClass).get();
+            long largeCount = largeRequests.get(requestClass).get();
+            smallTotal += smallCount;
+            largeTotal += largeCount;
+            if (smallCount + largeCount > 0) {
+                text.append(String.format("%n  %s: %d small, %d large", requestClass.name().toLowerCase(Locale.ROOT).replace('_', '-'),
+                        smallCount, largeCount));
+            }
+        }
+        long smallAttempts = smallTotal + escalations.get();
+        return String.format("Model routing: %d requests answered by the small model (avg %.0f ms per attempt), %d by the large model "
+                        + "(avg %.0f ms), %d escalated%s",
+                smallTotal, smallAttempts > 0 ? smallNanos.get() / 1e6 / smallAttempts : 0.0,
+                largeTotal, largeTotal > 0 ? largeNanos.get() / 1e6 / largeTotal : 0.0,
+                escalations.get(), text);
+    }
+}
@@ -0,0 +1,37 @@
+package com.brunorozendo.mcphost.service.llm;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+
+/**
+ * Receives an assistant message while it is being generated. Callbacks run on the thread that called
+ * {@link LlmApiClient#chatStream}, in the order the server sent the parts.
+ */
+public interface ChatStreamListener {
+
+    /**
+     * Called with each piece of message text as it arrives.
+     */
+    void onContent(String delta);
+
+    /**
+     * Called once per tool call, as soon as its name and complete arguments are known.
+     */
+    default void onToolCall(OllamaApi.ToolCall toolCall) {
+    }
+
+    /**
+     * Delivers a complete response to a listener, for clients and servers that do not stream.
+     */
+    static void replay(OllamaApi.ChatResponse response, ChatStreamListener listener) {
+        if (response == null || response.message() == null) {
+            return;
+        }
+        OllamaApi.Message message = response.message();
+        if (message.content() != null && !message.content().isEmpty()) {
+            listener.onContent(message.content());
+        }
+        if (message.tool_calls() != null) {
+            message.tool_calls().forEach(listener::onToolCall);
+        }
+    }
+}
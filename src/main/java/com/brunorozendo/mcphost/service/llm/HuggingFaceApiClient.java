@@ -4,36 +4,61 @@ import com.brunorozendo.mcphost.model.OllamaApi;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.List;
-import java.util.Map;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * A client for interacting with Hugging Face Text Generation Inference (TGI) API.
  * Supports OpenAI-compatible endpoints (v1.4.0+).
+ * <p>
+ * Remote endpoints are often rate limited and far away, so requests pass through a {@link RateLimiter} and are
+ * retried after a 429 (or a 503 while the endpoint scales up), large request bodies are gzip-compressed, and
+ * complete (non-streamed) responses are accepted gzip-compressed. A server that rejects compressed requests gets
+ * them uncompressed from then on.
  */
 public class HuggingFaceApiClient implements LlmApiClient {
     private static final Logger logger = LoggerFactory.getLogger(HuggingFaceApiClient.class);
+    // Bodies smaller than this are not worth compressing
+    private static final int MIN_COMPRESSED_BYTES = 4096;
+    private static final int MAX_THROTTLED_RETRIES = 8;
     private final String baseUrl;
     private final String apiKey;
+    private final RateLimiter rateLimiter;
+    private volatile boolean compressRequests;
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
+    private final OpenAiRequestWriter requestWriter;
+    private final OpenAiResponseReader responseReader;
+    private final OpenAiStreamReader streamReader;
+    private final RequestLogger requestLogger = new RequestLogger(logger, "HuggingFace TGI");
 
     public HuggingFaceApiClient(String baseUrl, String apiKey) {
+        this(baseUrl, apiKey, 0, !isLoopback(baseUrl));
+    }
+
+    /**
+     * @param maxRequestsPerSecond The highest request rate; 0 sends as fast as the server allows.
+     * @param compressRequests     Whether to gzip large request bodies.
+     */
+    public HuggingFaceApiClient(String baseUrl, String apiKey, double maxRequestsPerSecond, boolean compressRequests) {
         this.baseUrl = baseUrl;
         this.apiKey = apiKey;
+        this.rateLimiter = new RateLimiter(maxRequestsPerSecond);
+        this.compressRequests = compressRequests;
 
         this.httpClient = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(30))
@@ -43,241 +68,177 @@ public class HuggingFaceApiClient implements LlmApiClient {
                 .setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
                 .setSerializationInclusion(com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL)
                 .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        // TGI uses "tgi" as the model identifier
+        this.requestWriter = new OpenAiRequestWriter(objectMapper, "tgi", false, List.of());
+        this.responseReader = new OpenAiResponseReader(objectMapper);
+        this.streamReader = new OpenAiStreamReader(objectMapper);
     }
 
     @Override
     public OllamaApi.ChatResponse chat(OllamaApi.ChatRequest request) throws Exception {
-        // Convert Ollama format to OpenAI format for TGI
-        ObjectNode openAiRequest = convertToOpenAiFormat(request);
-        
-        String requestBody = objectMapper.writeValueAsString(openAiRequest);
-        logger.debug("HuggingFace TGI Request to {}: {}", baseUrl + "/v1/chat/completions", requestBody);
-
-        HttpRequest.Builder httpRequestBuilder = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl + "/v1/chat/completions"))
-                .header("Content-Type", "application/json")
-                .timeout(Duration.ofMinutes(5))
-                .POST(HttpRequest.BodyPublishers.ofString(requestBody));
-        
-        // Add authorization header if API key is provided
-        if (apiKey != null && !apiKey.isEmpty()) {
-            httpRequestBuilder.header("Authorization", "Bearer " + apiKey);
-        }
-        
-        HttpRequest httpRequest = httpRequestBuilder.build();
-        HttpResponse<String> httpResponse = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-
-        // Log response
-        logResponse(httpResponse);
-
-        if (httpResponse.statusCode() >= 200 && httpResponse.statusCode() < 300) {
-            return convertFromOpenAiFormat(httpResponse.body(), request.model());
-        } else {
-            String errorMessage = "HuggingFace TGI API request failed with status " + httpResponse.statusCode() +
-                    ": " + httpResponse.body();
-            logger.error(errorMessage);
-            throw new RuntimeException(errorMessage);
-        }
+        HttpResponse<InputStream> httpResponse = send(request);
+        // Parse straight from the body stream; the response is never held as a String or a JSON tree
+        OllamaApi.ChatResponse response = responseReader.read(decodedBody(httpResponse), request.model());
+        logger.trace("HuggingFace TGI Response: {}", response);
+        return response;
     }
 
     @Override
-    public String getProviderName() {
-        return "huggingface";
+    public OllamaApi.ChatResponse chatStream(OllamaApi.ChatRequest request, ChatStreamListener listener) throws Exception {
+        OllamaApi.ChatRequest streamingRequest = new OllamaApi.ChatRequest(request.model(), request.messages(), true,
+                request.tools(), request.format(), request.options(), request.keep_alive());
+        HttpResponse<InputStream> httpResponse = send(streamingRequest);
+
+        OllamaApi.ChatResponse response;
+        boolean eventStream = httpResponse.headers().firstValue("Content-Type")
+                .map(type -> type.startsWith("text/event-stream"))
+                .orElse(false);
+        if (eventStream) {
+            response = streamReader.read(httpResponse.body(), request.model(), listener);
+        } else {
+            // The server ignored the stream flag and answered with a single document
+            response = responseReader.read(decodedBody(httpResponse), request.model());
+            ChatStreamListener.replay(response, listener);
+        }
+        logger.trace("HuggingFace TGI Response: {}", response);
+        return response;
     }
 
-    private ObjectNode convertToOpenAiFormat(OllamaApi.ChatRequest request) throws Exception {
-        ObjectNode openAiRequest = objectMapper.createObjectNode();
-        
-        // Model name - TGI uses "tgi" as the model identifier
-        openAiRequest.put("model", "tgi");
-        
-        // Convert messages
-        ArrayNode messages = objectMapper.createArrayNode();
-        for (OllamaApi.Message msg : request.messages()) {
-            ObjectNode message = objectMapper.createObjectNode();
-            message.put("role", msg.role());
-            
-            if (msg.content() != null) {
-                message.put("content", msg.content());
+    /**
+     * Posts a chat request and returns the response if it succeeded; the caller consumes its body. Throttled
+     * requests are retried once the rate limiter allows.
+     */
+    private HttpResponse<InputStream> send(OllamaApi.ChatRequest request) throws Exception {
+        byte[] requestBody = requestWriter.write(request);
+        requestLogger.logRequest(baseUrl + "/v1/chat/completions", request, requestBody.length);
+        byte[] compressedBody = compressRequests && requestBody.length >= MIN_COMPRESSED_BYTES ? gzip(requestBody) : null;
+
+        for (int attempt = 0; ; attempt++) {
+            rateLimiter.acquire();
+            HttpResponse<InputStream> httpResponse = httpClient.send(buildRequest(request, requestBody, compressedBody),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            int status = httpResponse.statusCode();
+
+            if (status >= 200 && status < 300) {
+                logger.debug("HuggingFace TGI Response Status: {}", status);
+                rateLimiter.onSuccess(httpResponse.headers());
+                return httpResponse;
             }
-            
-            // Convert tool calls if present
-            if (msg.tool_calls() != null && !msg.tool_calls().isEmpty()) {
-                ArrayNode toolCalls = objectMapper.createArrayNode();
-                for (OllamaApi.ToolCall toolCall : msg.tool_calls()) {
-                    ObjectNode tc = objectMapper.createObjectNode();
-                    tc.put("type", "function");
-                    ObjectNode function = objectMapper.createObjectNode();
-                    function.put("name", toolCall.function().name());
-                    
-                    // Convert arguments to JSON string as expected by OpenAI format
-                    String argsJson = objectMapper.writeValueAsString(toolCall.function().arguments());
-                    function.put("arguments", argsJson);
-                    
-                    tc.set("function", function);
-                    toolCalls.add(tc);
-                }
-                message.set("tool_calls", toolCalls);
+            String errorBody = readErrorBody(httpResponse);
+            if ((status == 429 || status == 503) && attempt < MAX_THROTTLED_RETRIES) {
+                logger.debug("HuggingFace TGI request throttled with status {}: {}", status, errorBody);
+                rateLimiter.onThrottled(httpResponse.headers());
+                continue;
             }
-            
-            messages.add(message);
-        }
-        openAiRequest.set("messages", messages);
-        
-        // Convert tools if present
-        if (request.tools() != null && !request.tools().isEmpty()) {
-            ArrayNode tools = objectMapper.createArrayNode();
-            for (OllamaApi.Tool tool : request.tools()) {
-                ObjectNode t = objectMapper.createObjectNode();
-                t.put("type", tool.type());
-                ObjectNode function = objectMapper.createObjectNode();
-                function.put("name", tool.function().name());
-                function.put("description", tool.function().description());
-                
-                // Convert parameters
-                if (tool.function().parameters() != null) {
-                    function.set("parameters", convertJsonSchema(tool.function().parameters()));
-                }
-                
-                t.set("function", function);
-                tools.add(t);
-            }
-            openAiRequest.set("tools", tools);
-        }
-        
-        // Set streaming to false (matching Ollama behavior)
-        openAiRequest.put("stream", request.stream());
-        
-        // Add common parameters
-        if (request.options() != null) {
-            Map<String, Object> options = request.options();
-            if (options.containsKey("temperature")) {
-                openAiRequest.put("temperature", (Double) options.get("temperature"));
-            }
-            if (options.containsKey("max_tokens")) {
-                openAiRequest.put("max_tokens", (Integer) options.get("max_tokens"));
-            }
-            if (options.containsKey("top_p")) {
-                openAiRequest.put("top_p", (Double) options.get("top_p"));
+            if (compressedBody != null && rejectsCompression(status, errorBody)) {
+                // Send this request, and all later ones, uncompressed
+                logger.info("The HuggingFace endpoint does not accept compressed requests (status {}); sending them uncompressed.", status);
+                compressRequests = false;
+                compressedBody = null;
+                continue;
             }
+            String errorMessage = "HuggingFace TGI API request failed with status " + status + ": " + errorBody;
+            logger.error(errorMessage);
+            throw new RuntimeException(errorMessage);
         }
-        
-        return openAiRequest;
     }
 
-    private JsonNode convertJsonSchema(OllamaApi.JsonSchema schema) {
-        ObjectNode node = objectMapper.createObjectNode();
-        
-        if (schema.type() != null) {
-            node.put("type", schema.type());
+    /**
+     * Whether an error answers the request's compression rather than its content: a 415, or a 400 whose message
+     * is about the encoding. Any other 400 would fail uncompressed too, so it is not retried.
+     */
+    private static boolean rejectsCompression(int status, String errorBody) {
+        if (status == 415) {
+            return true;
         }
-        if (schema.description() != null) {
-            node.put("description", schema.description());
+        if (status != 400 || errorBody == null) {
+            return false;
         }
-        if (schema.properties() != null) {
-            ObjectNode properties = objectMapper.createObjectNode();
-            for (Map.Entry<String, OllamaApi.JsonSchema> entry : schema.properties().entrySet()) {
-                properties.set(entry.getKey(), convertJsonSchema(entry.getValue()));
-            }
-            node.set("properties", properties);
+        String text = errorBody.toLowerCase(Locale.ROOT);
+        return text.contains("encoding") || text.contains("gzip") || text.contains("compress");
+    }
+
+    private HttpRequest buildRequest(OllamaApi.ChatRequest request, byte[] body, byte[] compressedBody) {
+        HttpRequest.Builder httpRequestBuilder = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/v1/chat/completions"))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofMinutes(5))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(compressedBody != null ? compressedBody : body));
+        if (compressedBody != null) {
+            httpRequestBuilder.header("Content-Encoding", "gzip");
         }
-        if (schema.items() != null) {
-            node.set("items", convertJsonSchema(schema.items()));
+        // A compressed event stream could hold tokens back in the server's compression buffer
+        if (!request.stream()) {
+            httpRequestBuilder.header("Accept-Encoding", "gzip");
         }
-        if (schema.required() != null) {
-            ArrayNode required = objectMapper.createArrayNode();
-            for (String req : schema.required()) {
-                required.add(req);
-            }
-            node.set("required", required);
+
+        // Add authorization header if API key is provided
+        if (apiKey != null && !apiKey.isEmpty()) {
+            httpRequestBuilder.header("Authorization", "Bearer " + apiKey);
         }
-        if (schema.enumValues() != null) {
-            ArrayNode enumValues = objectMapper.createArrayNode();
-            for (Object val : schema.enumValues()) {
-                enumValues.add(objectMapper.valueToTree(val));
-            }
-            node.set("enum", enumValues);
+        return httpRequestBuilder.build();
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+            gzip.write(body);
         }
-        if (schema.format() != null) {
-            node.put("format", schema.format());
+        return buffer.toByteArray();
+    }
+
+    /**
+     * The response body, decompressed if the server compressed it.
+     */
+    private static InputStream decodedBody(HttpResponse<InputStream> httpResponse) throws IOException {
+        boolean gzipped = httpResponse.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        return gzipped ? new GZIPInputStream(httpResponse.body(), 8192) : httpResponse.body();
+    }
+
+    static boolean isLoopback(String baseUrl) {
+        try {
+            String host = URI.create(baseUrl).getHost();
+            return host == null || host.equals("localhost") || host.startsWith("127.") || host.equals("[::1]") || host.equals("::1");
+        } catch (IllegalArgumentException e) {
+            return false;
         }
-        
-        return node;
     }
 
-    private OllamaApi.ChatResponse convertFromOpenAiFormat(String responseBody, String modelName) throws Exception {
-        JsonNode response = objectMapper.readTree(responseBody);
-        
-        // Extract the message from the first choice
-        JsonNode choice = response.get("choices").get(0);
-        JsonNode message = choice.get("message");
-        
-        // Convert message
-        String role = message.get("role").asText();
-        String content = message.has("content") && !message.get("content").isNull() 
-            ? message.get("content").asText() 
-            : "";
-        
-        // Convert tool calls if present
-        List<OllamaApi.ToolCall> toolCalls = null;
-        if (message.has("tool_calls") && message.get("tool_calls").isArray()) {
-            toolCalls = new ArrayList<>();
-            for (JsonNode tc : message.get("tool_calls")) {
-                if (tc.has("function")) {
-                    JsonNode func = tc.get("function");
-                    String name = func.get("name").asText();
-                    
-                    // Parse arguments - they might be a string or object
-                    Map<String, Object> arguments = new HashMap<>();
-                    if (func.has("arguments")) {
-                        JsonNode argsNode = func.get("arguments");
-                        if (argsNode.isTextual()) {
-                            // Arguments are JSON string
-                            arguments = objectMapper.readValue(argsNode.asText(), Map.class);
-                        } else {
-                            // Arguments are already an object
-                            arguments = objectMapper.convertValue(argsNode, Map.class);
-                        }
-                    }
-                    
-                    OllamaApi.FunctionCall functionCall = new OllamaApi.FunctionCall(name, arguments);
-                    toolCalls.add(new OllamaApi.ToolCall(functionCall));
-                }
+    @Override
+    public String getProviderName() {
+        return "huggingface";
+    }
+
+    /**
+     * Opens the connection with a lightweight request to {@code /health}.
+     */
+    @Override
+    public void warmUp() {
+        try {
+            HttpRequest.Builder httpRequestBuilder = HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/health"))
+                    .timeout(Duration.ofSeconds(5))
+                    .GET();
+            if (apiKey != null && !apiKey.isEmpty()) {
+                httpRequestBuilder.header("Authorization", "Bearer " + apiKey);
             }
+            HttpResponse<Void> response = httpClient.send(httpRequestBuilder.build(), HttpResponse.BodyHandlers.discarding());
+            logger.debug("HuggingFace TGI warm-up request returned status {}", response.statusCode());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.debug("HuggingFace TGI warm-up request failed: {}", e.getMessage());
         }
-        
-        OllamaApi.Message ollamaMessage = new OllamaApi.Message(role, content, null, toolCalls);
-        
-        // Extract finish reason
-        String finishReason = choice.has("finish_reason") && !choice.get("finish_reason").isNull()
-            ? choice.get("finish_reason").asText()
-            : null;
-        
-        // Create response - TGI doesn't provide all the timing information that Ollama does
-        return new OllamaApi.ChatResponse(
-            modelName,
-            response.get("created").asText(),
-            ollamaMessage,
-            true, // done
-            null, // totalDuration
-            null, // loadDuration
-            null, // promptEvalCount
-            null, // promptEvalDuration
-            null, // evalCount
-            null, // evalDuration
-            finishReason
-        );
     }
 
-    private void logResponse(HttpResponse<String> httpResponse) {
-        int statusCode = httpResponse.statusCode();
-        String body = httpResponse.body();
-
-        if (statusCode >= 200 && statusCode < 300) {
-            logger.debug("HuggingFace TGI Response Status: {}", statusCode);
-            logger.trace("HuggingFace TGI Response Body: {}", body);
-        } else {
-            logger.error("HuggingFace TGI Error Response (Status {}): {}", statusCode, body);
+    /**
+     * Reads the body of a failed response. Error bodies are small, so they are read as a String.
+     */
+    private static String readErrorBody(HttpResponse<InputStream> httpResponse) throws IOException {
+        try (InputStream body = decodedBody(httpResponse)) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
         }
     }
 }
@@ -4,21 +4,18 @@ import com.brunorozendo.mcphost.model.OllamaApi;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.List;
-import java.util.Map;
-import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  * A client for interacting with llama.cpp server API.
@@ -29,6 +26,10 @@ public class LlamaServerApiClient implements LlmApiClient {
     private final String baseUrl;
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
+    private final OpenAiRequestWriter requestWriter;
+    private final OpenAiResponseReader responseReader;
+    private final OpenAiStreamReader streamReader;
+    private final RequestLogger requestLogger = new RequestLogger(logger, "Llama Server");
 
     public LlamaServerApiClient(String baseUrl) {
         this.baseUrl = baseUrl;
@@ -42,33 +43,65 @@ public class LlamaServerApiClient implements LlmApiClient {
                 .setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
                 .setSerializationInclusion(com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL)
                 .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        // llama.cpp serves the single model loaded at startup, so no model name is sent; it expects
+        // a properties field on every object schema and accepts its own sampling options
+        this.requestWriter = new OpenAiRequestWriter(objectMapper, null, true, List.of("top_k", "repeat_penalty"));
+        this.responseReader = new OpenAiResponseReader(objectMapper);
+        this.streamReader = new OpenAiStreamReader(objectMapper);
     }
 
     @Override
     public OllamaApi.ChatResponse chat(OllamaApi.ChatRequest request) throws Exception {
-        // Convert Ollama format to OpenAI format for llama.cpp server
-        ObjectNode openAiRequest = convertToOpenAiFormat(request);
-        
-        String requestBody = objectMapper.writeValueAsString(openAiRequest);
-        logger.debug("Llama Server Request to {}: {}", baseUrl + "/v1/chat/completions", requestBody);
+        HttpResponse<InputStream> httpResponse = send(request);
+        // Parse straight from the body stream; the response is never held as a String or a JSON tree
+        OllamaApi.ChatResponse response = responseReader.read(httpResponse.body(), request.model());
+        logger.trace("Llama Server Response: {}", response);
+        return response;
+    }
+
+    @Override
+    public OllamaApi.ChatResponse chatStream(OllamaApi.ChatRequest request, ChatStreamListener listener) throws Exception {
+        OllamaApi.ChatRequest streamingRequest = new OllamaApi.ChatRequest(request.model(), request.messages(), true,
+                request.tools(), request.format(), request.options(), request.keep_alive());
+        HttpResponse<InputStream> httpResponse = send(streamingRequest);
+
+        OllamaApi.ChatResponse response;
+        boolean eventStream = httpResponse.headers().firstValue("Content-Type")
+                .map(type -> type.startsWith("text/event-stream"))
+                .orElse(false);
+        if (eventStream) {
+            response = streamReader.read(httpResponse.body(), request.model(), listener);
+        } else {
+            // The server ignored the stream flag and answered with a single document
+            response = responseReader.read(httpResponse.body(), request.model());
+            ChatStreamListener.replay(response, listener);
+        }
+        logger.trace("Llama Server Response: {}", response);
+        return response;
+    }
+
+    /**
+     * Posts a chat request and returns the response if it succeeded; the caller consumes its body.
+     */
+    private HttpResponse<InputStream> send(OllamaApi.ChatRequest request) throws Exception {
+        byte[] requestBody = requestWriter.write(request);
+        requestLogger.logRequest(baseUrl + "/v1/chat/completions", request, requestBody.length);
 
         HttpRequest httpRequest = HttpRequest.newBuilder()
                 .uri(URI.create(baseUrl + "/v1/chat/completions"))
                 .header("Content-Type", "application/json")
                 .timeout(Duration.ofMinutes(5))
-                .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(requestBody))
                 .build();
         
-        HttpResponse<String> httpResponse = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-
-        // Log response
-        logResponse(httpResponse);
+        HttpResponse<InputStream> httpResponse = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
 
         if (httpResponse.statusCode() >= 200 && httpResponse.statusCode() < 300) {
-            return convertFromOpenAiFormat(httpResponse.body(), request.model());
+            logger.debug("Llama Server Response Status: {}", httpResponse.statusCode());
+            return httpResponse;
         } else {
             String errorMessage = "Llama Server API request failed with status " + httpResponse.statusCode() +
-                    ": " + httpResponse.body();
+                    ": " + readErrorBody(httpResponse);
             logger.error(errorMessage);
             throw new RuntimeException(errorMessage);
         }
@@ -79,231 +112,31 @@ public class LlamaServerApiClient implements LlmApiClient {
         return "llama-server";
     }
 
-    private ObjectNode convertToOpenAiFormat(OllamaApi.ChatRequest request) throws Exception {
-        ObjectNode openAiRequest = objectMapper.createObjectNode();
-        
-        // llama.cpp server doesn't use model name in the request
-        // as it serves a single model loaded at startup
-        
-        // Convert messages
-        ArrayNode messages = objectMapper.createArrayNode();
-        for (OllamaApi.Message msg : request.messages()) {
-            ObjectNode message = objectMapper.createObjectNode();
-            message.put("role", msg.role());
-            
-            if (msg.content() != null) {
-                message.put("content", msg.content());
-            }
-            
-            // Convert tool calls if present
-            if (msg.tool_calls() != null && !msg.tool_calls().isEmpty()) {
-                ArrayNode toolCalls = objectMapper.createArrayNode();
-                for (OllamaApi.ToolCall toolCall : msg.tool_calls()) {
-                    ObjectNode tc = objectMapper.createObjectNode();
-                    tc.put("type", "function");
-                    ObjectNode function = objectMapper.createObjectNode();
-                    function.put("name", toolCall.function().name());
-                    
-                    // Convert arguments to JSON string as expected by OpenAI format
-                    String argsJson = objectMapper.writeValueAsString(toolCall.function().arguments());
-                    function.put("arguments", argsJson);
-                    
-                    tc.set("function", function);
-                    toolCalls.add(tc);
-                }
-                message.set("tool_calls", toolCalls);
-            }
-            
-            messages.add(message);
-        }
-        openAiRequest.set("messages", messages);
-        
-        // Convert tools if present (llama.cpp server may support function calling)
-        if (request.tools() != null && !request.tools().isEmpty()) {
-            ArrayNode tools = objectMapper.createArrayNode();
-            for (OllamaApi.Tool tool : request.tools()) {
-                ObjectNode t = objectMapper.createObjectNode();
-                t.put("type", tool.type());
-                ObjectNode function = objectMapper.createObjectNode();
-                function.put("name", tool.function().name());
-                function.put("description", tool.function().description());
-                
-                // Convert parameters
-                if (tool.function().parameters() != null) {
-                    function.set("parameters", convertJsonSchema(tool.function().parameters()));
-                }
-                
-                t.set("function", function);
-                tools.add(t);
-            }
-            openAiRequest.set("tools", tools);
-        }
-        
-        // Set streaming to false
-        openAiRequest.put("stream", request.stream());
-        
-        // Add common parameters from options
-        if (request.options() != null) {
-            Map<String, Object> options = request.options();
-            if (options.containsKey("temperature")) {
-                openAiRequest.put("temperature", (Double) options.get("temperature"));
-            }
-            if (options.containsKey("max_tokens")) {
-                openAiRequest.put("max_tokens", (Integer) options.get("max_tokens"));
-            }
-            if (options.containsKey("top_p")) {
-                openAiRequest.put("top_p", (Double) options.get("top_p"));
-            }
-            if (options.containsKey("top_k")) {
-                openAiRequest.put("top_k", (Integer) options.get("top_k"));
-            }
-            if (options.containsKey("repeat_penalty")) {
-                openAiRequest.put("repeat_penalty", (Double) options.get("repeat_penalty"));
-            }
-        }
-        
-        return openAiRequest;
-    }
-
-    private JsonNode convertJsonSchema(OllamaApi.JsonSchema schema) {
-        ObjectNode node = objectMapper.createObjectNode();
-        
-        if (schema.type() != null) {
-            node.put("type", schema.type());
-        }
-        if (schema.description() != null) {
-            node.put("description", schema.description());
-        }
-
-        // For object types, always include properties field (even if empty)
-        if ("object".equals(schema.type())) {
-            ObjectNode properties = objectMapper.createObjectNode();
-            if (schema.properties() != null) {
-                for (Map.Entry<String, OllamaApi.JsonSchema> entry : schema.properties().entrySet()) {
-                    properties.set(entry.getKey(), convertJsonSchema(entry.getValue()));
-                }
-            }
-            node.set("properties", properties);
-        } else if (schema.properties() != null) {
-            // For non-object types, only add properties if they exist
-            ObjectNode properties = objectMapper.createObjectNode();
-            for (Map.Entry<String, OllamaApi.JsonSchema> entry : schema.properties().entrySet()) {
-                properties.set(entry.getKey(), convertJsonSchema(entry.getValue()));
-            }
-            node.set("properties", properties);
-        }
-        if (schema.items() != null) {
-            node.set("items", convertJsonSchema(schema.items()));
-        }
-        if (schema.required() != null) {
-            ArrayNode required = objectMapper.createArrayNode();
-            for (String req : schema.required()) {
-                required.add(req);
-            }
-            node.set("required", required);
-        }
-        if (schema.enumValues() != null) {
-            ArrayNode enumValues = objectMapper.createArrayNode();
-            for (Object val : schema.enumValues()) {
-                enumValues.add(objectMapper.valueToTree(val));
-            }
-            node.set("enum", enumValues);
-        }
-        if (schema.format() != null) {
-            node.put("format", schema.format());
-        }
-        
-        return node;
-    }
-
-    private OllamaApi.ChatResponse convertFromOpenAiFormat(String responseBody, String modelName) throws Exception {
-        JsonNode response = objectMapper.readTree(responseBody);
-        
-        // Extract the message from the first choice
-        JsonNode choice = response.get("choices").get(0);
-        JsonNode message = choice.get("message");
-        
-        // Convert message
-        String role = message.get("role").asText();
-        String content = message.has("content") && !message.get("content").isNull() 
-            ? message.get("content").asText() 
-            : "";
-        
-        // Convert tool calls if present
-        List<OllamaApi.ToolCall> toolCalls = null;
-        if (message.has("tool_calls") && message.get("tool_calls").isArray()) {
-            toolCalls = new ArrayList<>();
-            for (JsonNode tc : message.get("tool_calls")) {
-                if (tc.has("function")) {
-                    JsonNode func = tc.get("function");
-                    String name = func.get("name").asText();
-                    
-                    // Parse arguments
-                    Map<String, Object> arguments = new HashMap<>();
-                    if (func.has("arguments")) {
-                        JsonNode argsNode = func.get("arguments");
-                        if (argsNode.isTextual()) {
-                            // Arguments are JSON string
-                            arguments = objectMapper.readValue(argsNode.asText(), Map.class);
-                        } else {
-                            // Arguments are already an object
-                            arguments = objectMapper.convertValue(argsNode, Map.class);
-                        }
-                    }
-                    
-                    OllamaApi.FunctionCall functionCall = new OllamaApi.FunctionCall(name, arguments);
-                    toolCalls.add(new OllamaApi.ToolCall(functionCall));
-                }
-            }
-        }
-        
-        OllamaApi.Message ollamaMessage = new OllamaApi.Message(role, content, null, toolCalls);
-        
-        // Extract finish reason
-        String finishReason = choice.has("finish_reason") && !choice.get("finish_reason").isNull()
-            ? choice.get("finish_reason").asText()
-            : null;
-        
-        // Extract usage information if available
-        Long totalDuration = null;
-        Integer promptTokens = null;
-        Integer completionTokens = null;
-        
-        if (response.has("usage")) {
-            JsonNode usage = response.get("usage");
-            if (usage.has("prompt_tokens")) {
-                promptTokens = usage.get("prompt_tokens").asInt();
-            }
-            if (usage.has("completion_tokens")) {
-                completionTokens = usage.get("completion_tokens").asInt();
-            }
+    /**
+     * Opens the connection with a lightweight request to {@code /health}.
+     */
+    @Override
+    public void warmUp() {
+        try {
+            HttpRequest.Builder httpRequestBuilder = HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/health"))
+                    .timeout(Duration.ofSeconds(5))
+                    .GET();
+            HttpResponse<Void> response = httpClient.send(httpRequestBuilder.build(), HttpResponse.BodyHandlers.discarding());
+            logger.debug("Llama Server warm-up request returned status {}", response.statusCode());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.debug("Llama Server warm-up request failed: {}", e.getMessage());
         }
-        
-        // Create response
-        return new OllamaApi.ChatResponse(
-            modelName,
-            response.has("created") ? response.get("created").asText() : String.valueOf(System.currentTimeMillis()),
-            ollamaMessage,
-            true, // done
-            totalDuration,
-            null, // loadDuration
-            promptTokens,
-            null, // promptEvalDuration
-            completionTokens,
-            null, // evalDuration
-            finishReason
-        );
     }
 
-    private void logResponse(HttpResponse<String> httpResponse) {
-        int statusCode = httpResponse.statusCode();
-        String body = httpResponse.body();
-
-        if (statusCode >= 200 && statusCode < 300) {
-            logger.debug("Llama Server Response Status: {}", statusCode);
-            logger.trace("Llama Server Response Body: {}", body);
-        } else {
-            logger.error("Llama Server Error Response (Status {}): {}", statusCode, body);
+    /**
+     * Reads the body of a failed response. Error bodies are small, so they are read as a String.
+     */
+    private static String readErrorBody(HttpResponse<InputStream> httpResponse) throws IOException {
+        try (InputStream body = httpResponse.body()) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
         }
     }
 }
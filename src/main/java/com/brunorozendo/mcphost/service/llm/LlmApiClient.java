@@ -14,11 +14,43 @@ public interface LlmApiClient {
      * @throws Exception if the request fails or the response cannot be parsed.
      */
     OllamaApi.ChatResponse chat(OllamaApi.ChatRequest request) throws Exception;
-    
+
+    /**
+     * Sends a chat request and asks the server to stream the answer, passing each part to the listener as it
+     * arrives. Clients that cannot stream fall back to {@link #chat} and deliver the whole message at once.
+     *
+     * @param request  The chat request object. Its {@code stream} flag is ignored.
+     * @param listener Receives the message text and tool calls while they are generated.
+     * @return The complete response, with the full message as if it had not been streamed.
+     * @throws Exception if the request fails or the response cannot be parsed.
+     */
+    default OllamaApi.ChatResponse chatStream(OllamaApi.ChatRequest request, ChatStreamListener listener) throws Exception {
+        OllamaApi.ChatResponse response = chat(request);
+        ChatStreamListener.replay(response, listener);
+        return response;
+    }
+
     /**
      * Gets the name of the LLM provider.
      *
      * @return The provider name (e.g., "ollama", "huggingface", "llama-server")
      */
     String getProviderName();
+
+    /**
+     * Prepares the client for the first chat request, e.g. by opening the connection to the server.
+     * Called during startup while other phases run, so the first turn does not pay for it.
+     * Failures must not be thrown; the first chat request reports them.
+     */
+    default void warmUp() {
+    }
+
+    /**
+     * Describes what the client has done so far, e.g. how it routed or cached requests, for {@code /stats}.
+     *
+     * @return The statistics, or null if the client keeps none.
+     */
+    default String stats() {
+        return null;
+    }
 }
@@ -19,6 +19,22 @@ public class LlmApiClientFactory {
      * @throws IllegalArgumentException if the model specification is invalid
      */
     public static LlmApiClient createClient(String modelSpec, String baseUrl, String apiKey) {
+        return createClient(modelSpec, baseUrl, apiKey, 0, true);
+    }
+
+    /**
+     * Creates an LLM API client based on the model specification, with the transport settings of remote endpoints.
+     *
+     * @param modelSpec            The model specification
+     * @param baseUrl              The base URL for the API (optional for some providers)
+     * @param apiKey               The API key (optional for some providers)
+     * @param maxRequestsPerSecond The highest request rate for rate-limited providers (0 = no client-side limit)
+     * @param compressRequests     Whether large request bodies may be gzip-compressed; they never are for local servers
+     * @return The appropriate LLM API client
+     * @throws IllegalArgumentException if the model specification is invalid
+     */
+    public static LlmApiClient createClient(String modelSpec, String baseUrl, String apiKey,
+                                            double maxRequestsPerSecond, boolean compressRequests) {
         if (modelSpec == null || modelSpec.isEmpty()) {
             throw new IllegalArgumentException("Model specification cannot be null or empty");
         }
@@ -41,7 +57,8 @@ public class LlmApiClientFactory {
                 if (baseUrl == null || baseUrl.isEmpty()) {
                     baseUrl = "http://localhost:8080"; // Default TGI port
                 }
-                return new HuggingFaceApiClient(baseUrl, apiKey);
+                return new HuggingFaceApiClient(baseUrl, apiKey, maxRequestsPerSecond,
+                        compressRequests && !HuggingFaceApiClient.isLoopback(baseUrl));
                 
             case "llama-server":
             case "llamaserver":
@@ -1,17 +1,23 @@
 package com.brunorozendo.mcphost.service.llm;
 
 import com.brunorozendo.mcphost.model.OllamaApi;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A client for interacting with the Ollama REST API.
@@ -21,6 +27,7 @@ public class OllamaApiClientImpl implements LlmApiClient {
     private final String baseUrl;
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
+    private final RequestLogger requestLogger = new RequestLogger(logger, "Ollama");
 
     public OllamaApiClientImpl(String baseUrl) {
         this.baseUrl = baseUrl;
@@ -42,26 +49,94 @@ public class OllamaApiClientImpl implements LlmApiClient {
 
     @Override
     public OllamaApi.ChatResponse chat(OllamaApi.ChatRequest request) throws Exception {
-        String requestBody = objectMapper.writeValueAsString(request);
-        logger.debug("Ollama Request to {}: {}", baseUrl + "/api/chat", requestBody);
+        // Deserialize straight from the body stream instead of buffering it as a String first
+        OllamaApi.ChatResponse response;
+        try (InputStream body = send(request)) {
+            response = objectMapper.readValue(body, OllamaApi.ChatResponse.class);
+        }
+        logger.trace("Ollama Response: {}", response);
+        return response;
+    }
+
+    /**
+     * Streams the answer. Ollama sends one JSON object per line, each carrying the next piece of the message;
+     * tool calls arrive complete in a single chunk, and the last chunk ({@code done}) carries the statistics.
+     */
+    @Override
+    public OllamaApi.ChatResponse chatStream(OllamaApi.ChatRequest request, ChatStreamListener listener) throws Exception {
+        OllamaApi.ChatRequest streamingRequest = new OllamaApi.ChatRequest(request.model(), request.messages(), true,
+                request.tools(), request.format(), request.options(), request.keep_alive());
+
+        StringBuilder content = new StringBuilder();
+        List<OllamaApi.ToolCall> toolCalls = new ArrayList<>();
+        String role = "assistant";
+        OllamaApi.ChatResponse last = null;
+        try (InputStream body = send(streamingRequest);
+             MappingIterator<OllamaApi.ChatResponse> chunks = objectMapper.readerFor(OllamaApi.ChatResponse.class).readValues(body)) {
+            while (chunks.hasNextValue()) {
+                last = chunks.nextValue();
+                OllamaApi.Message delta = last.message();
+                if (delta == null) {
+                    continue;
+                }
+                if (delta.role() != null) {
+                    role = delta.role();
+                }
+                if (delta.content() != null && !delta.content().isEmpty()) {
+                    content.append(delta.content());
+                    listener.onContent(delta.content());
+                }
+                if (delta.tool_calls() != null) {
+                    for (OllamaApi.ToolCall toolCall : delta.tool_calls()) {
+                        toolCalls.add(toolCall);
+                        listener.onToolCall(toolCall);
+                    }
+                }
+            }
+        }
+        if (last == null) {
+            throw new IOException("Ollama returned an empty response stream");
+        }
+
+        OllamaApi.ChatResponse response = new OllamaApi.ChatResponse(
+                last.model(),
+                last.createdAt(),
+                new OllamaApi.Message(role, content.toString(), null, toolCalls.isEmpty() ? null : toolCalls),
+                last.done(),
+                last.totalDuration(),
+                last.loadDuration(),
+                last.promptEvalCount(),
+                last.promptEvalDuration(),
+                last.evalCount(),
+                last.evalDuration(),
+                last.done_reason()
+        );
+        logger.trace("Ollama Response: {}", response);
+        return response;
+    }
+
+    /**
+     * Posts a chat request and returns the body of a successful response; the caller closes it.
+     */
+    private InputStream send(OllamaApi.ChatRequest request) throws Exception {
+        byte[] requestBody = objectMapper.writeValueAsBytes(request);
+        requestLogger.logRequest(baseUrl + "/api/chat", request, requestBody.length);
 
         HttpRequest httpRequest = HttpRequest.newBuilder()
                 .uri(URI.create(baseUrl + "/api/chat"))
                 .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(requestBody))
                 .timeout(Duration.ofMinutes(5)) // Set a generous timeout for the LLM to respond
                 .build();
 
-        HttpResponse<String> httpResponse = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-
-        // Log response status and body for debugging
-        logResponse(httpResponse);
+        HttpResponse<InputStream> httpResponse = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
 
         if (httpResponse.statusCode() >= 200 && httpResponse.statusCode() < 300) {
-            return objectMapper.readValue(httpResponse.body(), OllamaApi.ChatResponse.class);
+            logger.debug("Ollama Response Status: {}", httpResponse.statusCode());
+            return httpResponse.body();
         } else {
             String errorMessage = "Ollama API request failed with status " + httpResponse.statusCode() +
-                    ": " + httpResponse.body();
+                    ": " + readErrorBody(httpResponse);
             logger.error(errorMessage);
             throw new RuntimeException(errorMessage);
         }
@@ -72,16 +147,31 @@ public class OllamaApiClientImpl implements LlmApiClient {
         return "ollama";
     }
 
-    private void logResponse(HttpResponse<String> httpResponse) {
-        int statusCode = httpResponse.statusCode();
-        String body = httpResponse.body();
+    /**
+     * Opens the connection with a lightweight request to {@code /api/version}.
+     */
+    @Override
+    public void warmUp() {
+        try {
+            HttpRequest.Builder httpRequestBuilder = HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/api/version"))
+                    .timeout(Duration.ofSeconds(5))
+                    .GET();
+            HttpResponse<Void> response = httpClient.send(httpRequestBuilder.build(), HttpResponse.BodyHandlers.discarding());
+            logger.debug("Ollama warm-up request returned status {}", response.statusCode());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.debug("Ollama warm-up request failed: {}", e.getMessage());
+        }
+    }
 
-        if (statusCode >= 200 && statusCode < 300) {
-            logger.debug("Ollama Response Status: {}", statusCode);
-            // Use TRACE for successful large bodies to avoid cluttering logs
-            logger.trace("Ollama Response Body: {}", body);
-        } else {
-            logger.error("Ollama Error Response (Status {}): {}", statusCode, body);
+    /**
+     * Reads the body of a failed response. Error bodies are small, so they are read as a String.
+     */
+    private static String readErrorBody(HttpResponse<InputStream> httpResponse) throws IOException {
+        try (InputStream body = httpResponse.body()) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
         }
     }
 }
@@ -0,0 +1,173 @@
+package com.brunorozendo.mcphost.service.llm;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes an {@link OllamaApi.ChatRequest} as an OpenAI-compatible chat completion request, streaming it straight
+ * to a {@link JsonGenerator} instead of building a JSON tree first. Shared by the clients for OpenAI-compatible
+ * providers (Hugging Face TGI, llama.cpp server), which differ only in a few details of the format.
+ */
+class OpenAiRequestWriter {
+
+    private static final List<String> COMMON_OPTIONS = List.of("temperature", "max_tokens", "top_p");
+
+    private final ObjectMapper objectMapper;
+    private final String modelName;
+    private final boolean alwaysWriteObjectProperties;
+    private final List<String> supportedOptions;
+    // Reused across requests; write() is synchronized so a client can be shared between threads
+    private final ByteArrayBuilder buffer = new ByteArrayBuilder(8192);
+
+    /**
+     * @param objectMapper                The mapper whose factory creates the generator.
+     * @param modelName                   The model identifier to send, or null to omit the field.
+     * @param alwaysWriteObjectProperties Whether object schemas always get a {@code properties} field, even when empty.
+     * @param extraOptions                Request options passed through in addition to temperature, max_tokens and top_p.
+     */
+    OpenAiRequestWriter(ObjectMapper objectMapper, String modelName, boolean alwaysWriteObjectProperties, List<String> extraOptions) {
+        this.objectMapper = objectMapper;
+        this.modelName = modelName;
+        this.alwaysWriteObjectProperties = alwaysWriteObjectProperties;
+        this.supportedOptions = new ArrayList<>(COMMON_OPTIONS);
+        this.supportedOptions.addAll(extraOptions);
+    }
+
+    /**
+     * Encodes the request as UTF-8 JSON.
+     */
+    synchronized byte[] write(OllamaApi.ChatRequest request) throws IOException {
+        buffer.reset();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            if (modelName != null) {
+                generator.writeStringField("model", modelName);
+            }
+
+            generator.writeArrayFieldStart("messages");
+            for (OllamaApi.Message message : request.messages()) {
+                writeMessage(generator, message);
+            }
+            generator.writeEndArray();
+
+            if (request.tools() != null && !request.tools().isEmpty()) {
+                generator.writeArrayFieldStart("tools");
+                for (OllamaApi.Tool tool : request.tools()) {
+                    writeTool(generator, tool);
+                }
+                generator.writeEndArray();
+            }
+
+            generator.writeBooleanField("stream", request.stream());
+            if (request.stream()) {
+                // Streamed responses only report token usage (in a final chunk) when asked to
+                generator.writeObjectFieldStart("stream_options");
+                generator.writeBooleanField("include_usage", true);
+                generator.writeEndObject();
+            }
+
+            if (request.options() != null) {
+                for (String option : supportedOptions) {
+                    Object value = request.options().get(option);
+                    // Ollama's generation limit is the OpenAI max_tokens
+                    if (value == null && "max_tokens".equals(option)) {
+                        value = request.options().get("num_predict");
+                    }
+                    if (value != null) {
+                        generator.writeFieldName(option);
+                        generator.writeObject(value);
+                    }
+                }
+            }
+            generator.writeEndObject();
+        }
+        return buffer.toByteArray();
+    }
+
+    private void writeMessage(JsonGenerator generator, OllamaApi.Message message) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("role", message.role());
+        if (message.content() != null) {
+            generator.writeStringField("content", message.content());
+        }
+        if (message.tool_calls() != null && !message.tool_calls().isEmpty()) {
+            generator.writeArrayFieldStart("tool_calls");
+            for (OllamaApi.ToolCall toolCall : message.tool_calls()) {
+                generator.writeStartObject();
+                generator.writeStringField("type", "function");
+                generator.writeObjectFieldStart("function");
+                generator.writeStringField("name", toolCall.function().name());
+                // The OpenAI format requires arguments as a JSON-encoded string
+                generator.writeStringField("arguments", objectMapper.writeValueAsString(toolCall.function().arguments()));
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeTool(JsonGenerator generator, OllamaApi.Tool tool) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", tool.type());
+        generator.writeObjectFieldStart("function");
+        generator.writeStringField("name", tool.function().name());
+        generator.writeStringField("description", tool.function().description());
+        if (tool.function().parameters() != null) {
+            generator.writeFieldName("parameters");
+            writeSchema(generator, tool.function().parameters());
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private void writeSchema(JsonGenerator generator, OllamaApi.JsonSchema schema) throws IOException {
+        generator.writeStartObject();
+        if (schema.type() != null) {
+            generator.writeStringField("type", schema.type());
+        }
+        if (schema.description() != null) {
+            generator.writeStringField("description", schema.description());
+        }
+        if (schema.properties() != null || (alwaysWriteObjectProperties && "object".equals(schema.type()))) {
+            generator.writeObjectFieldStart("properties");
+            if (schema.properties() != null) {
+                for (Map.Entry<String, OllamaApi.JsonSchema> entry : schema.properties().entrySet()) {
+                    generator.writeFieldName(entry.getKey());
+                    writeSchema(generator, entry.getValue());
+                }
+            }
+            generator.writeEndObject();
+        }
+        if (schema.items() != null) {
+            generator.writeFieldName("items");
+            writeSchema(generator, schema.items());
+        }
+        if (schema.required() != null) {
+            generator.writeArrayFieldStart("required");
+            for (String required : schema.required()) {
+                generator.writeString(required);
+            }
+            generator.writeEndArray();
+        }
+        if (schema.enumValues() != null) {
+            generator.writeArrayFieldStart("enum");
+            for (Object value : schema.enumValues()) {
+                generator.writeObject(value);
+            }
+            generator.writeEndArray();
+        }
+        if (schema.format() != null) {
+            generator.writeStringField("format", schema.format());
+        }
+        generator.writeEndObject();
+    }
+}
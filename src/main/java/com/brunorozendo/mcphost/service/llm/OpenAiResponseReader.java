@@ -0,0 +1,229 @@
+package com.brunorozendo.mcphost.service.llm;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads an OpenAI-compatible chat completion response straight from the HTTP body stream into
+ * {@link OllamaApi.ChatResponse}, without buffering the body as a String or building a JSON tree.
+ * Shared by the clients for OpenAI-compatible providers (Hugging Face TGI, llama.cpp server).
+ */
+class OpenAiResponseReader {
+
+    private final ObjectMapper objectMapper;
+
+    OpenAiResponseReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Parses a chat completion response.
+     *
+     * @param body      The response body stream. It is consumed and closed.
+     * @param modelName The model name to report in the response.
+     */
+    OllamaApi.ChatResponse read(InputStream body, String modelName) throws IOException {
+        String created = null;
+        OllamaApi.Message message = null;
+        String finishReason = null;
+        Integer promptTokens = null;
+        Integer completionTokens = null;
+        Timings timings = Timings.NONE;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "created" -> created = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    case "choices" -> {
+                        expect(parser, value, JsonToken.START_ARRAY);
+                        // Only the first choice is used; the rest are skipped
+                        boolean first = true;
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            if (!first) {
+                                parser.skipChildren();
+                                continue;
+                            }
+                            first = false;
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String choiceField = parser.currentName();
+                                JsonToken choiceValue = parser.nextToken();
+                                if ("message".equals(choiceField) && choiceValue == JsonToken.START_OBJECT) {
+                                    message = readMessage(parser);
+                                } else if ("finish_reason".equals(choiceField) && choiceValue == JsonToken.VALUE_STRING) {
+                                    finishReason = parser.getText();
+                                } else {
+                                    parser.skipChildren();
+                                }
+                            }
+                        }
+                    }
+                    case "usage" -> {
+                        if (value == JsonToken.START_OBJECT) {
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String usageField = parser.currentName();
+                                JsonToken usageValue = parser.nextToken();
+                                if ("prompt_tokens".equals(usageField) && usageValue == JsonToken.VALUE_NUMBER_INT) {
+                                    promptTokens = parser.getIntValue();
+                                } else if ("completion_tokens".equals(usageField) && usageValue == JsonToken.VALUE_NUMBER_INT) {
+                                    completionTokens = parser.getIntValue();
+                                } else {
+                                    parser.skipChildren();
+                                }
+                            }
+                        }
+                    }
+                    case "timings" -> timings = readTimings(parser, value);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        if (message == null) {
+            throw new IOException("Response did not contain a message in its first choice");
+        }
+
+        return new OllamaApi.ChatResponse(
+                modelName,
+                created != null ? created : String.valueOf(System.currentTimeMillis()),
+                message,
+                true, // done
+                null, // totalDuration
+                null, // loadDuration
+                promptTokens,
+                timings.promptNanos(),
+                completionTokens,
+                timings.predictedNanos(),
+                finishReason
+        );
+    }
+
+    /**
+     * Prompt processing and generation times, in nanoseconds like Ollama's durations, or null when not reported.
+     */
+    record Timings(Long promptNanos, Long predictedNanos) {
+        static final Timings NONE = new Timings(null, null);
+    }
+
+    /**
+     * Reads the {@code timings} object llama.cpp server adds to its responses ({@code prompt_ms}, {@code predicted_ms}).
+     */
+    static Timings readTimings(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return Timings.NONE;
+        }
+        Long promptNanos = null;
+        Long predictedNanos = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken timingValue = parser.nextToken();
+            boolean number = timingValue == JsonToken.VALUE_NUMBER_FLOAT || timingValue == JsonToken.VALUE_NUMBER_INT;
+            if ("prompt_ms".equals(field) && number) {
+                promptNanos = (long) (parser.getDoubleValue() * 1_000_000);
+            } else if ("predicted_ms".equals(field) && number) {
+                predictedNanos = (long) (parser.getDoubleValue() * 1_000_000);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Timings(promptNanos, predictedNanos);
+    }
+
+    private OllamaApi.Message readMessage(JsonParser parser) throws IOException {
+        String role = "assistant";
+        String content = "";
+        List<OllamaApi.ToolCall> toolCalls = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "role" -> role = parser.getText();
+                case "content" -> content = value == JsonToken.VALUE_NULL ? "" : parser.getText();
+                case "tool_calls" -> {
+                    if (value == JsonToken.START_ARRAY) {
+                        toolCalls = new ArrayList<>();
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            OllamaApi.FunctionCall functionCall = readToolCall(parser);
+                            if (functionCall != null) {
+                                toolCalls.add(new OllamaApi.ToolCall(functionCall));
+                            }
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return new OllamaApi.Message(role, content, null, toolCalls);
+    }
+
+    private OllamaApi.FunctionCall readToolCall(JsonParser parser) throws IOException {
+        OllamaApi.FunctionCall functionCall = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("function".equals(field) && value == JsonToken.START_OBJECT) {
+                String name = null;
+                Map<String, Object> arguments = new HashMap<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String functionField = parser.currentName();
+                    JsonToken functionValue = parser.nextToken();
+                    if ("name".equals(functionField)) {
+                        name = parser.getText();
+                    } else if ("arguments".equals(functionField)) {
+                        arguments = readArguments(parser, functionValue);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                functionCall = new OllamaApi.FunctionCall(name, arguments);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return functionCall;
+    }
+
+    /**
+     * Reads tool call arguments, which OpenAI-compatible servers send either as a JSON-encoded string or as an object.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readArguments(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.START_OBJECT) {
+            return objectMapper.readValue(parser, Map.class);
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            // Parse the nested document directly from the parser's character buffer instead of copying it to a String first
+            int length = parser.getTextLength();
+            if (length == 0) {
+                return new HashMap<>();
+            }
+            try (JsonParser nested = objectMapper.getFactory().createParser(parser.getTextCharacters(), parser.getTextOffset(), length)) {
+                Map<String, Object> arguments = objectMapper.readValue(nested, Map.class);
+                return arguments != null ? arguments : new HashMap<>();
+            }
+        }
+        parser.skipChildren();
+        return new HashMap<>();
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Malformed response: expected " + expected + " but found " + actual + " at " + parser.currentLocation());
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.brunorozendo.mcphost.service.llm;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a streamed OpenAI-compatible chat completion (server-sent events, one {@code data:} line per chunk) and
+ * hands each piece to a {@link ChatStreamListener} as it arrives. Tool calls are streamed as fragments of their
+ * arguments JSON; a call is reported as soon as its name is known and its arguments form a complete JSON object, or
+ * at the latest when the server moves on to the next call or finishes the choice.
+ * Shared by the clients for OpenAI-compatible providers (Hugging Face TGI, llama.cpp server).
+ */
+class OpenAiStreamReader {
+
+    private final ObjectMapper objectMapper;
+
+    OpenAiStreamReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * A tool call whose arguments are still arriving.
+     */
+    private static final class PendingToolCall {
+        private final int index;
+        private String name;
+        private final StringBuilder arguments = new StringBuilder();
+        // Where the scan for the end of the arguments object has got to
+        private int scanned;
+        private int depth;
+        private boolean inString;
+        private boolean escaped;
+
+        PendingToolCall(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Scans the fragments added since the last call for the brace that closes the arguments object.
+         */
+        boolean argumentsComplete() {
+            for (; scanned < arguments.length(); scanned++) {
+                char c = arguments.charAt(scanned);
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if ((c == '}' || c == ']') && --depth == 0) {
+                    scanned++;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Everything gathered from the chunks so far.
+     */
+    private static final class StreamState {
+        private String role = "assistant";
+        private final StringBuilder content = new StringBuilder();
+        private final List<OllamaApi.ToolCall> toolCalls = new ArrayList<>();
+        private PendingToolCall pendingToolCall;
+        // The index of the call reported last; later fragments of it (e.g. trailing whitespace) are ignored
+        private int completedIndex = -1;
+        private String created;
+        private String finishReason;
+        private Integer promptTokens;
+        private Integer completionTokens;
+        private OpenAiResponseReader.Timings timings = OpenAiResponseReader.Timings.NONE;
+    }
+
+    /**
+     * Parses a streamed chat completion.
+     *
+     * @param body      The response body stream. It is consumed and closed.
+     * @param modelName The model name to report in the response.
+     * @param listener  Receives the content and tool calls as they arrive.
+     * @return The complete response, assembled from all chunks.
+     */
+    OllamaApi.ChatResponse read(InputStream body, String modelName, ChatStreamListener listener) throws IOException {
+        StreamState state = new StreamState();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("data:")) {
+                    continue; // Blank separators, comments and event names
+                }
+                String data = line.substring(5).trim();
+                if (data.equals("[DONE]")) {
+                    break;
+                }
+                if (!data.isEmpty()) {
+                    readChunk(data, state, listener);
+                }
+            }
+        }
+        completeToolCall(state, listener);
+
+        return new OllamaApi.ChatResponse(
+                modelName,
+                state.created != null ? state.created : String.valueOf(System.currentTimeMillis()),
+                new OllamaApi.Message(state.role, state.content.toString(), null,
+                        state.toolCalls.isEmpty() ? null : state.toolCalls),
+                true, // done
+                null, // totalDuration
+                null, // loadDuration
+                state.promptTokens,
+                state.timings.promptNanos(),
+                state.completionTokens,
+                state.timings.predictedNanos(),
+                state.finishReason
+        );
+    }
+
+    private void readChunk(String data, StreamState state, ChatStreamListener listener) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Malformed stream chunk: " + data);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "created" -> state.created = value == JsonToken.VALUE_NULL ? state.created : parser.getText();
+                    case "choices" -> {
+                        if (value != JsonToken.START_ARRAY) {
+                            parser.skipChildren();
+                            continue;
+                        }
+                        // Only the first choice is used; the rest are skipped
+                        boolean first = true;
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            if (first) {
+                                readChoice(parser, state, listener);
+                                first = false;
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    }
+                    case "usage" -> readUsage(parser, value, state);
+                    case "timings" -> state.timings = OpenAiResponseReader.readTimings(parser, value);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private void readChoice(JsonParser parser, StreamState state, ChatStreamListener listener) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("delta".equals(field) && value == JsonToken.START_OBJECT) {
+                readDelta(parser, state, listener);
+            } else if ("finish_reason".equals(field) && value == JsonToken.VALUE_STRING) {
+                state.finishReason = parser.getText();
+                completeToolCall(state, listener);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readDelta(JsonParser parser, StreamState state, ChatStreamListener listener) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "role" -> {
+                    if (value == JsonToken.VALUE_STRING) state.role = parser.getText();
+                }
+                case "content" -> {
+                    if (value == JsonToken.VALUE_STRING && parser.getTextLength() > 0) {
+                        String text = parser.getText();
+                        state.content.append(text);
+                        listener.onContent(text);
+                    }
+                }
+                case "tool_calls" -> {
+                    if (value != JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readToolCallDelta(parser, state, listener);
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private void readToolCallDelta(JsonParser parser, StreamState state, ChatStreamListener listener) throws IOException {
+        PendingToolCall pending = state.pendingToolCall;
+        boolean completed = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("index".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                int index = parser.getIntValue();
+                if (index == state.completedIndex) {
+                    completed = true;
+                } else if (pending == null || pending.index != index) {
+                    // Servers send the calls one after another, so a new index means the previous call is complete
+                    completeToolCall(state, listener);
+                    pending = new PendingToolCall(index);
+                    state.pendingToolCall = pending;
+                }
+            } else if ("function".equals(field) && value == JsonToken.START_OBJECT) {
+                if (completed || (pending == null && state.completedIndex == 0)) {
+                    // A fragment of a call that has already been reported
+                    parser.skipChildren();
+                    continue;
+                }
+                if (pending == null) {
+                    // Some servers omit the index when there is only one call
+                    pending = new PendingToolCall(0);
+                    state.pendingToolCall = pending;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String functionField = parser.currentName();
+                    JsonToken functionValue = parser.nextToken();
+                    if ("name".equals(functionField) && functionValue == JsonToken.VALUE_STRING) {
+                        pending.name = pending.name == null ? parser.getText() : pending.name + parser.getText();
+                    } else if ("arguments".equals(functionField) && functionValue == JsonToken.VALUE_STRING) {
+                        pending.arguments.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    } else if ("arguments".equals(functionField) && functionValue == JsonToken.START_OBJECT) {
+                        pending.arguments.append(objectMapper.writeValueAsString(objectMapper.readValue(parser, Map.class)));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        // Report the call now rather than when the next one starts, so it can start running while the rest streams
+        if (pending != null && pending.name != null && pending == state.pendingToolCall && pending.argumentsComplete()) {
+            completeToolCall(state, listener);
+        }
+    }
+
+    private void readUsage(JsonParser parser, JsonToken value, StreamState state) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken usageValue = parser.nextToken();
+            if ("prompt_tokens".equals(field) && usageValue == JsonToken.VALUE_NUMBER_INT) {
+                state.promptTokens = parser.getIntValue();
+            } else if ("completion_tokens".equals(field) && usageValue == JsonToken.VALUE_NUMBER_INT) {
+                state.completionTokens = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void completeToolCall(StreamState state, ChatStreamListener listener) throws IOException {
+        PendingToolCall pending = state.pendingToolCall;
+        if (pending == null) {
+            return;
+        }
+        state.pendingToolCall = null;
+        state.completedIndex = pending.index;
+        Map<String, Object> arguments = null;
+        if (!pending.arguments.isEmpty()) {
+            arguments = objectMapper.readValue(pending.arguments.toString(), Map.class);
+        }
+        OllamaApi.ToolCall toolCall = new OllamaApi.ToolCall(
+                new OllamaApi.FunctionCall(pending.name, arguments != null ? arguments : new HashMap<>()));
+        state.toolCalls.add(toolCall);
+        listener.onToolCall(toolCall);
+    }
+}
@@ -0,0 +1,175 @@
+package com.brunorozendo.mcphost.service.llm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client-side token bucket for a remote LLM endpoint that enforces a rate limit. The rate adapts to what the
+ * server allows: each 429 answer halves it and each success raises it a little again, up to the configured
+ * maximum, so a long batch settles just below the server's limit instead of failing. {@code Retry-After} and the
+ * {@code RateLimit-Remaining} / {@code RateLimit-Reset} headers (with or without the {@code X-} prefix) pause all
+ * requests until the server is ready again.
+ */
+class RateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+
+    private static final double MIN_RATE = 0.05;
+    private static final Duration DEFAULT_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(2);
+    // How many requests may be sent at once after an idle period
+    private static final double BURST = 2;
+    private static final long OBSERVATION_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final double maxRate;
+    // Requests per second, or 0 while no limit has been needed
+    private double rate;
+    private double tokens = BURST;
+    private long refilledAt = System.nanoTime();
+    private long pausedUntil = System.nanoTime();
+    private int consecutiveThrottles;
+
+    // Requests sent in the current observation window, to learn a starting rate from the first 429
+    private long windowStart = System.nanoTime();
+    private int windowRequests;
+
+    /**
+     * @param maxRequestsPerSecond The highest rate to send at; 0 sends as fast as the server allows.
+     */
+    RateLimiter(double maxRequestsPerSecond) {
+        this.maxRate = Math.max(maxRequestsPerSecond, 0);
+        this.rate = maxRate;
+    }
+
+    /**
+     * Waits until a request may be sent.
+     */
+    void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (now - windowStart > OBSERVATION_NANOS) {
+                windowStart = now;
+                windowRequests = 0;
+            }
+            windowRequests++;
+
+            waitNanos = Math.max(pausedUntil - now, 0);
+            if (rate > 0) {
+                tokens = Math.min(BURST, tokens + (now - refilledAt) / 1e9 * rate);
+                refilledAt = now;
+                // Reserve the token now; a negative balance is the queue of waiting requests
+                tokens -= 1;
+                if (tokens < 0) {
+                    waitNanos = Math.max(waitNanos, (long) (-tokens / rate * 1e9));
+                }
+            }
+        }
+        if (waitNanos > 0) {
+            logger.debug("Rate limit: waiting {} ms before the next request", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Notes a successful response: raises the rate a little and honours an exhausted quota.
+     */
+    synchronized void onSuccess(HttpHeaders headers) {
+        consecutiveThrottles = 0;
+        if (rate > 0 && (maxRate == 0 || rate < maxRate)) {
+            rate = maxRate > 0 ? Math.min(maxRate, rate * 1.05) : rate * 1.05;
+        }
+        Optional<String> remaining = header(headers, "ratelimit-remaining");
+        if (remaining.isPresent() && remaining.get().strip().equals("0")) {
+            Duration reset = header(headers, "ratelimit-reset").map(RateLimiter::parseReset).orElse(DEFAULT_BACKOFF);
+            pause(reset, "the quota is used up");
+        }
+    }
+
+    /**
+     * Notes a 429 (or 503) answer: lowers the rate and pauses until the server says it is ready. The next
+     * {@link #acquire()} waits out the pause.
+     */
+    synchronized void onThrottled(HttpHeaders headers) {
+        consecutiveThrottles++;
+        long now = System.nanoTime();
+        if (rate == 0) {
+            // Start from half the rate that was just too fast
+            double observed = windowRequests / Math.max((now - windowStart) / 1e9, 1.0);
+            rate = Math.max(observed / 2, MIN_RATE);
+        } else {
+            rate = Math.max(rate / 2, MIN_RATE);
+        }
+        tokens = Math.min(tokens, 0);
+
+        Duration delay = header(headers, "retry-after").map(RateLimiter::parseRetryAfter)
+                .or(() -> header(headers, "ratelimit-reset").map(RateLimiter::parseReset))
+                .orElseGet(() -> {
+                    // Exponential backoff when the server does not say
+                    Duration backoff = DEFAULT_BACKOFF.multipliedBy(1L << Math.min(consecutiveThrottles - 1, 7));
+                    return backoff.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff;
+                });
+        pause(delay, "the server is throttling requests");
+        logger.info("Rate limited by the server; retrying in {} ms, sending at most {} requests/s from now on",
+                delay.toMillis(), String.format("%.2f", rate));
+    }
+
+    private void pause(Duration delay, String reason) {
+        long until = System.nanoTime() + delay.toNanos();
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+            logger.debug("Pausing requests for {} ms: {}", delay.toMillis(), reason);
+        }
+    }
+
+    private static Optional<String> header(HttpHeaders headers, String name) {
+        return headers.firstValue(name).or(() -> headers.firstValue("x-" + name));
+    }
+
+    /**
+     * {@code Retry-After} is either a number of seconds or an HTTP date.
+     */
+    static Duration parseRetryAfter(String value) {
+        String text = value.strip();
+        try {
+            return clamp(Duration.ofMillis((long) (Double.parseDouble(text) * 1000)));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(text, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return clamp(Duration.between(ZonedDateTime.now(date.getZone()), date));
+            } catch (DateTimeParseException ignored) {
+                return DEFAULT_BACKOFF;
+            }
+        }
+    }
+
+    /**
+     * A reset is given in seconds from now or, by some servers, as a Unix timestamp.
+     */
+    static Duration parseReset(String value) {
+        try {
+            double seconds = Double.parseDouble(value.strip());
+            if (seconds > 1_000_000_000) {
+                seconds -= System.currentTimeMillis() / 1000.0;
+            }
+            return clamp(Duration.ofMillis((long) (seconds * 1000)));
+        } catch (NumberFormatException e) {
+            return DEFAULT_BACKOFF;
+        }
+    }
+
+    private static Duration clamp(Duration delay) {
+        if (delay.isNegative()) {
+            return Duration.ZERO;
+        }
+        return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+    }
+}
@@ -0,0 +1,80 @@
+package com.brunorozendo.mcphost.service.llm;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import org.slf4j.Logger;
+
+import java.util.List;
+
+/**
+ * Logs LLM requests at DEBUG without repeating the whole conversation every turn.
+ * <p>
+ * Each request carries the full history, so logging request bodies makes log volume grow with the square of the
+ * session length. This logger remembers how much of the history it has already written and only logs the
+ * messages appended since the previous request, plus the sizes of the system prompt and tool sections.
+ * Nothing is formatted unless DEBUG is enabled.
+ */
+class RequestLogger {
+
+    private final Logger logger;
+    private final String providerLabel;
+
+    // The history as of the previous request: its length and its last message, compared by identity
+    private int loggedMessageCount;
+    private OllamaApi.Message lastLoggedMessage;
+
+    RequestLogger(Logger logger, String providerLabel) {
+        this.logger = logger;
+        this.providerLabel = providerLabel;
+    }
+
+    /**
+     * Logs the parts of the request that are new since the previous call.
+     *
+     * @param url       The endpoint the request is sent to.
+     * @param request   The request.
+     * @param bodyBytes The size of the encoded request body.
+     */
+    synchronized void logRequest(String url, OllamaApi.ChatRequest request, int bodyBytes) {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
+        List<OllamaApi.Message> messages = request.messages();
+
+        int firstNew = 0;
+        boolean continuation = loggedMessageCount > 0
+                && messages.size() >= loggedMessageCount
+                && messages.get(loggedMessageCount - 1) == lastLoggedMessage;
+        if (continuation) {
+            firstNew = loggedMessageCount;
+        }
+        boolean replaced = loggedMessageCount > 0 && !continuation;
+
+        int systemChars = 0;
+        if (!messages.isEmpty() && "system".equals(messages.get(0).role()) && messages.get(0).content() != null) {
+            systemChars = messages.get(0).content().length();
+        }
+        int toolCount = request.tools() != null ? request.tools().size() : 0;
+
+        logger.debug("{} Request to {}: {} bytes, {} messages ({} new{}), system prompt {} chars, {} tools",
+                providerLabel, url, bodyBytes, messages.size(), messages.size() - firstNew,
+                replaced ? ", history replaced" : "", systemChars, toolCount);
+
+        for (int i = firstNew; i < messages.size(); i++) {
+            OllamaApi.Message message = messages.get(i);
+            if (i == 0 && "system".equals(message.role())) {
+                // Its size is in the summary line; log the text itself only at TRACE
+                logger.trace("  [0] system: {}", message.content());
+                continue;
+            }
+            logger.debug("  [{}] {}: {}", i, message.role(), message.content());
+            if (message.tool_calls() != null) {
+                for (OllamaApi.ToolCall toolCall : message.tool_calls()) {
+                    logger.debug("  [{}]   tool call {} {}", i, toolCall.function().name(), toolCall.function().arguments());
+                }
+            }
+        }
+
+        loggedMessageCount = messages.size();
+        lastLoggedMessage = messages.isEmpty() ? null : messages.get(messages.size() - 1);
+    }
+}
@@ -0,0 +1,112 @@
+package com.brunorozendo.mcphost.util;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Records when each startup phase began and ended, relative to process start, so that the startup
+ * pipeline can be inspected with {@code --startup-report}. Phases may run concurrently on different threads.
+ */
+public class StartupTimeline {
+
+    private static final int BAR_WIDTH = 40;
+
+    /**
+     * A finished phase. Times are in milliseconds since the process started.
+     */
+    public record Phase(String name, String thread, double startMillis, double endMillis) {
+        public double durationMillis() {
+            return endMillis - startMillis;
+        }
+    }
+
+    private final long originNanos;
+    private final List<Phase> phases = new ArrayList<>();
+
+    public StartupTimeline() {
+        // Anchor the timeline at process start when the OS reports it, so JVM (or native image) boot time shows up
+        // as the gap before the first phase. Fall back to now.
+        long sinceProcessStartNanos = ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toNanos())
+                .filter(nanos -> nanos >= 0)
+                .orElse(0L);
+        this.originNanos = System.nanoTime() - sinceProcessStartNanos;
+    }
+
+    /**
+     * Runs a phase and records its start and end time.
+     */
+    public <T> T measure(String name, Supplier<T> phase) {
+        long start = System.nanoTime();
+        try {
+            return phase.get();
+        } finally {
+            record(name, start, System.nanoTime());
+        }
+    }
+
+    /**
+     * Runs a phase and records its start and end time.
+     */
+    public void measure(String name, Runnable phase) {
+        long start = System.nanoTime();
+        try {
+            phase.run();
+        } finally {
+            record(name, start, System.nanoTime());
+        }
+    }
+
+    private synchronized void record(String name, long startNanos, long endNanos) {
+        phases.add(new Phase(name, Thread.currentThread().getName(), toMillis(startNanos), toMillis(endNanos)));
+    }
+
+    private double toMillis(long nanos) {
+        return (nanos - originNanos) / 1_000_000.0;
+    }
+
+    /**
+     * Milliseconds elapsed since the process started.
+     */
+    public double elapsedMillis() {
+        return toMillis(System.nanoTime());
+    }
+
+    /**
+     * Returns the recorded phases ordered by start time.
+     */
+    public synchronized List<Phase> getPhases() {
+        List<Phase> sorted = new ArrayList<>(phases);
+        sorted.sort(Comparator.comparingDouble(Phase::startMillis));
+        return sorted;
+    }
+
+    /**
+     * Formats the timeline as a table with a bar per phase, showing which phases overlapped.
+     */
+    public String report() {
+        List<Phase> sorted = getPhases();
+        double total = Math.max(elapsedMillis(), 1);
+        int nameWidth = sorted.stream().mapToInt(p -> p.name().length()).max().orElse(5);
+
+        StringBuilder sb = new StringBuilder();
+        // Set by GraalVM in native executables
+        String runtime = "runtime".equals(System.getProperty("org.graalvm.nativeimage.imagecode"))
+                ? "native image" : "JVM " + Runtime.version();
+        sb.append(String.format("Startup timeline (ms since process start, %s):%n", runtime));
+        sb.append(String.format("  %-" + nameWidth + "s %9s %9s %9s%n", "phase", "start", "end", "duration"));
+        for (Phase phase : sorted) {
+            int from = Math.min((int) Math.round(phase.startMillis() / total * BAR_WIDTH), BAR_WIDTH - 1);
+            int to = Math.max(from + 1, (int) Math.round(phase.endMillis() / total * BAR_WIDTH));
+            sb.append(String.format("  %-" + nameWidth + "s %9.1f %9.1f %9.1f  |%s%s%s|%n",
+                    phase.name(), phase.startMillis(), phase.endMillis(), phase.durationMillis(),
+                    " ".repeat(from), "#".repeat(Math.min(to, BAR_WIDTH) - from), " ".repeat(Math.max(BAR_WIDTH - to, 0))));
+        }
+        sb.append(String.format("  ready after %.1f ms", total));
+        return sb.toString();
+    }
+}
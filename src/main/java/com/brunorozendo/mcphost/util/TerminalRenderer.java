@@ -0,0 +1,333 @@
+package com.brunorozendo.mcphost.util;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns the console for the interactive session. Callers never write to the terminal themselves: they queue text
+ * and register running tasks, and a single render thread writes everything in batched frames. The status line
+ * (spinner and the labels of running tasks) is only redrawn where it changed, so an idle spinner costs a couple of
+ * bytes per tick and a stream of tokens never waits for the terminal.
+ * <p>
+ * When the output is not a terminal (piped or redirected), no status line is drawn and only the text is written.
+ */
+public class TerminalRenderer implements AutoCloseable {
+
+    private static final char[] SPINNER = {'|', '/', '-', '\\'};
+    // Text queued within one frame is written together
+    private static final long FRAME_MILLIS = 16;
+    private static final long SPINNER_MILLIS = 150;
+    // Display limits for long blocks such as tool results; the full text still goes to the conversation
+    private static final int MAX_LINE_CHARS = 400;
+
+    private final PrintStream out;
+    private final boolean interactive;
+    private final int maxDisplayLines;
+    private final Thread thread;
+
+    // Everything below is guarded by the lock
+    private final Object lock = new Object();
+    private final StringBuilder pending = new StringBuilder();
+    private final List<Task> tasks = new ArrayList<>();
+    private long queuedVersion;
+    private long renderedVersion;
+    private boolean inputLineEnded;
+    private boolean closed;
+
+    // Owned by the render thread
+    private String drawnStatus = "";
+    private boolean lineOpen;
+
+    /**
+     * A running operation shown in the status line until it is finished.
+     */
+    public final class Task {
+        private volatile String label;
+
+        private Task(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Changes the label, e.g. to show progress.
+         */
+        public void update(String label) {
+            synchronized (lock) {
+                this.label = label;
+                changed();
+            }
+        }
+
+        /**
+         * Removes the task from the status line. Finishing a task twice has no effect.
+         */
+        public void finish() {
+            synchronized (lock) {
+                if (tasks.remove(this)) {
+                    changed();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param out             Where to write, usually {@code System.out}.
+     * @param maxDisplayLines Blocks printed with {@link #printBlock} are cut after this many lines (0 = no limit).
+     */
+    public TerminalRenderer(PrintStream out, int maxDisplayLines) {
+        this(out, System.console() != null, maxDisplayLines);
+    }
+
+    TerminalRenderer(PrintStream out, boolean interactive, int maxDisplayLines) {
+        this.out = out;
+        this.interactive = interactive;
+        this.maxDisplayLines = maxDisplayLines;
+        this.thread = new Thread(this::renderLoop, "terminal-renderer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues text to be written as is, e.g. a streamed token.
+     */
+    public void print(String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            pending.append(text);
+            changed();
+        }
+    }
+
+    /**
+     * Queues a line of text.
+     */
+    public void println(String line) {
+        synchronized (lock) {
+            pending.append(line).append('\n');
+            changed();
+        }
+    }
+
+    /**
+     * Queues a possibly huge block of text, e.g. a tool result, cut to the display limits with a note saying how
+     * much was left out.
+     */
+    public void printBlock(String prefix, String text) {
+        println(prefix + truncate(text, maxDisplayLines));
+    }
+
+    /**
+     * Tells the renderer that the user pressed Enter after a prompt, so the cursor is at the start of a new line.
+     */
+    public void inputLineEntered() {
+        synchronized (lock) {
+            inputLineEnded = true;
+            changed();
+        }
+    }
+
+    /**
+     * Shows a spinning task in the status line.
+     */
+    public Task startTask(String label) {
+        synchronized (lock) {
+            Task task = new Task(label);
+            tasks.add(task);
+            changed();
+            return task;
+        }
+    }
+
+    /**
+     * Waits until everything queued so far is on the screen and the status line reflects the current tasks.
+     * Call before reading input, so the prompt appears after all output.
+     */
+    public void flush() {
+        synchronized (lock) {
+            long target = queuedVersion;
+            while (renderedVersion < target && !closed && thread.isAlive()) {
+                try {
+                    lock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes what is still queued, clears the status line and stops the render thread. Later output is dropped.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            tasks.clear();
+            changed();
+        }
+        flush();
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            thread.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cuts text to at most {@code maxLines} lines of at most {@link #MAX_LINE_CHARS} characters each.
+     */
+    static String truncate(String text, int maxLines) {
+        if (text == null || maxLines <= 0) {
+            return text;
+        }
+        StringBuilder shown = new StringBuilder();
+        int lines = 0;
+        int position = 0;
+        while (position < text.length() && lines < maxLines) {
+            int end = text.indexOf('\n', position);
+            int lineEnd = end < 0 ? text.length() : end;
+            if (lines > 0) {
+                shown.append('\n');
+            }
+            if (lineEnd - position > MAX_LINE_CHARS) {
+                shown.append(text, position, position + MAX_LINE_CHARS).append(" …");
+            } else {
+                shown.append(text, position, lineEnd);
+            }
+            lines++;
+            position = end < 0 ? text.length() : end + 1;
+        }
+        if (position < text.length()) {
+            long remaining = 1;
+            for (int i = text.indexOf('\n', position); i >= 0 && i < text.length() - 1; i = text.indexOf('\n', i + 1)) {
+                remaining++;
+            }
+            shown.append("\n… (").append(remaining).append(remaining == 1 ? " more line" : " more lines")
+                    .append(" not shown, ").append(text.length()).append(" characters in total)");
+        }
+        return shown.toString();
+    }
+
+    private void changed() {
+        queuedVersion++;
+        lock.notifyAll();
+    }
+
+    private void renderLoop() {
+        while (true) {
+            String text;
+            List<String> labels = new ArrayList<>();
+            boolean lineEnded;
+            long version;
+            synchronized (lock) {
+                while (!closed && renderedVersion == queuedVersion) {
+                    if (interactive && !tasks.isEmpty()) {
+                        // Nothing new, but the spinner is due to move
+                        waitQuietly(SPINNER_MILLIS - System.currentTimeMillis() % SPINNER_MILLIS);
+                        break;
+                    }
+                    waitQuietly(0);
+                }
+                if (closed && renderedVersion == queuedVersion) {
+                    return;
+                }
+                text = pending.toString();
+                pending.setLength(0);
+                for (Task task : tasks) {
+                    labels.add(task.label);
+                }
+                lineEnded = inputLineEnded;
+                inputLineEnded = false;
+                version = queuedVersion;
+            }
+
+            if (lineEnded) {
+                lineOpen = false;
+            }
+            String frame = buildFrame(text, labels);
+            if (!frame.isEmpty()) {
+                out.print(frame);
+                out.flush();
+            }
+
+            synchronized (lock) {
+                renderedVersion = version;
+                lock.notifyAll();
+            }
+            // Let more text accumulate, so a fast token stream is written in a few large frames
+            try {
+                Thread.sleep(FRAME_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void waitQuietly(long millis) {
+        try {
+            lock.wait(millis);
+        } catch (InterruptedException e) {
+            closed = true;
+        }
+    }
+
+    private String buildFrame(String text, List<String> labels) {
+        StringBuilder frame = new StringBuilder();
+        if (!text.isEmpty()) {
+            if (!drawnStatus.isEmpty()) {
+                // Text goes where the status line was; the status is redrawn below it
+                frame.append('\r').append(" ".repeat(drawnStatus.length())).append('\r');
+                drawnStatus = "";
+            }
+            frame.append(text);
+            lineOpen = text.charAt(text.length() - 1) != '\n';
+        }
+        if (!interactive || lineOpen) {
+            // A streamed answer is mid-line; the status line would overwrite it
+            return frame.toString();
+        }
+        String status = labels.isEmpty() ? ""
+                : String.join(" | ", labels) + " " + SPINNER[(int) (System.currentTimeMillis() / SPINNER_MILLIS % SPINNER.length)] + " ";
+        appendLineDiff(frame, drawnStatus, status);
+        drawnStatus = status;
+        return frame.toString();
+    }
+
+    /**
+     * Rewrites the status line from the first character that differs, blanking what is left of a longer old line.
+     */
+    private static void appendLineDiff(StringBuilder frame, String drawn, String status) {
+        if (drawn.equals(status)) {
+            return;
+        }
+        if (status.isEmpty()) {
+            frame.append('\r').append(" ".repeat(drawn.length())).append('\r');
+            return;
+        }
+        int common = 0;
+        int limit = Math.min(drawn.length(), status.length());
+        while (common < limit && drawn.charAt(common) == status.charAt(common)) {
+            common++;
+        }
+        if (common == 0) {
+            frame.append('\r');
+        } else {
+            frame.append("\b".repeat(drawn.length() - common));
+        }
+        frame.append(status, common, status.length());
+        int leftover = drawn.length() - status.length();
+        if (leftover > 0) {
+            frame.append(" ".repeat(leftover)).append("\b".repeat(leftover));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.brunorozendo.mcphost.util;
+
+/**
+ * Splits a stream of model output into a thinking channel (text inside {@code <think>...</think>}) and an answer
+ * channel as the chunks arrive. Tags may be split across chunks and are matched case-insensitively; only the few
+ * characters of a possibly incomplete tag at the end of a chunk are held back, never the whole message.
+ * <p>
+ * Text after an unterminated {@code <think>} is treated as thinking, which is how reasoning models stream it.
+ */
+public class ThinkTagStreamParser {
+
+    private static final String OPEN_TAG = "<think>";
+    private static final String CLOSE_TAG = "</think>";
+
+    /**
+     * Receives the text of each channel, in the order it appeared in the stream.
+     */
+    public interface Listener {
+        void onThinking(String text);
+
+        void onAnswer(String text);
+    }
+
+    private final Listener listener;
+    // The start of a tag that may be completed by the next chunk; at most one tag long
+    private final StringBuilder pending = new StringBuilder();
+    private final StringBuilder segment = new StringBuilder();
+    private boolean thinking;
+    private boolean segmentIsThinking;
+    private int thinkingChunks;
+    private int thinkingChars;
+    private int answerChars;
+
+    public ThinkTagStreamParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Processes the next chunk of the stream.
+     */
+    public void accept(String chunk) {
+        if (chunk == null || chunk.isEmpty()) {
+            return;
+        }
+        String text;
+        if (pending.isEmpty()) {
+            text = chunk;
+        } else {
+            text = pending.append(chunk).toString();
+            pending.setLength(0);
+        }
+
+        int thinkingBefore = thinkingChars;
+        int position = 0;
+        int length = text.length();
+        while (position < length) {
+            int tagStart = text.indexOf('<', position);
+            if (tagStart < 0) {
+                append(text, position, length);
+                break;
+            }
+            append(text, position, tagStart);
+
+            String tag = thinking ? CLOSE_TAG : OPEN_TAG;
+            int available = Math.min(tag.length(), length - tagStart);
+            if (!text.regionMatches(true, tagStart, tag, 0, available)) {
+                append(text, tagStart, tagStart + 1);
+                position = tagStart + 1;
+            } else if (available < tag.length()) {
+                // The chunk ends inside what may be a tag; decide once the next chunk arrives
+                pending.append(text, tagStart, length);
+                break;
+            } else {
+                thinking = !thinking;
+                position = tagStart + tag.length();
+            }
+        }
+        flushSegment();
+        if (thinkingChars > thinkingBefore) {
+            thinkingChunks++;
+        }
+    }
+
+    /**
+     * Ends the stream. A held-back partial tag turned out to be plain text and is emitted as such.
+     */
+    public void finish() {
+        if (!pending.isEmpty()) {
+            String rest = pending.toString();
+            pending.setLength(0);
+            append(rest, 0, rest.length());
+            flushSegment();
+        }
+    }
+
+    /**
+     * Whether the stream is currently inside a {@code <think>} block.
+     */
+    public boolean isThinking() {
+        return thinking;
+    }
+
+    /**
+     * The number of chunks that carried thinking text. Streaming servers send about one token per chunk.
+     */
+    public int getThinkingChunks() {
+        return thinkingChunks;
+    }
+
+    public int getThinkingChars() {
+        return thinkingChars;
+    }
+
+    public int getAnswerChars() {
+        return answerChars;
+    }
+
+    private void append(String text, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        if (segmentIsThinking != thinking) {
+            flushSegment();
+            segmentIsThinking = thinking;
+        }
+        segment.append(text, from, to);
+        if (thinking) {
+            thinkingChars += to - from;
+        } else {
+            answerChars += to - from;
+        }
+    }
+
+    private void flushSegment() {
+        if (segment.isEmpty()) {
+            return;
+        }
+        String text = segment.toString();
+        segment.setLength(0);
+        if (segmentIsThinking) {
+            listener.onThinking(text);
+        } else {
+            listener.onAnswer(text);
+        }
+    }
+}
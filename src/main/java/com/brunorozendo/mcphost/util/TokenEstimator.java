@@ -0,0 +1,60 @@
+package com.brunorozendo.mcphost.util;
+
+import com.brunorozendo.mcphost.model.OllamaApi;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.List;
+
+/**
+ * A cheap, tokenizer-free estimate of how many tokens a piece of text will cost the LLM.
+ * Uses the common ~4 characters per token heuristic, which is accurate enough for budgeting and reporting.
+ */
+public class TokenEstimator {
+
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return estimateChars(text.length());
+    }
+
+    /**
+     * Estimates the tokens of a text of the given length, for callers that only counted its characters.
+     */
+    public static int estimateChars(int chars) {
+        return (chars + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * Estimates the tokens used by a list of messages, including a small per-message overhead for the role markers.
+     */
+    public static int estimateMessages(List<OllamaApi.Message> messages) {
+        int total = 0;
+        for (OllamaApi.Message message : messages) {
+            total += 4 + estimate(message.content());
+            if (message.tool_calls() != null) {
+                total += estimateJson(message.tool_calls());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Estimates the tokens used by tool definitions as they are sent in the request's native 'tools' field.
+     */
+    public static int estimateTools(List<OllamaApi.Tool> tools) {
+        return tools == null || tools.isEmpty() ? 0 : estimateJson(tools);
+    }
+
+    private static int estimateJson(Object value) {
+        try {
+            return estimate(objectMapper.writeValueAsString(value));
+        } catch (JsonProcessingException e) {
+            return 0;
+        }
+    }
+}
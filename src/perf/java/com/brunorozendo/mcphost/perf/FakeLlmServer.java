@@ -0,0 +1,291 @@
+package com.brunorozendo.mcphost.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+/**
+ * A stand-in LLM server for offline workloads. It speaks both the Ollama chat API and the OpenAI-compatible
+ * chat completions API (as served by TGI and llama.cpp), and follows a fixed script:
+ * <ul>
+ *   <li>a user message mentioning "tool" gets a call to the first offered tool, with placeholder arguments;</li>
+ *   <li>a tool result gets a short final answer quoting it;</li>
+ *   <li>anything else gets a reply with a short {@code <think>} block.</li>
+ * </ul>
+ * Requests with {@code "stream": true} are answered in small pieces, as newline-delimited JSON (Ollama) or
+ * server-sent events (OpenAI), with tool call arguments split across chunks.
+ */
+public class FakeLlmServer implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // Characters per streamed chunk, roughly one token
+    private static final int CHUNK_CHARS = 4;
+
+    private final HttpServer server;
+    private final Duration responseDelay;
+
+    private FakeLlmServer(HttpServer server, Duration responseDelay) {
+        this.server = server;
+        this.responseDelay = responseDelay;
+    }
+
+    /**
+     * Starts a server on the loopback interface.
+     *
+     * @param port          The port, or 0 for any free port.
+     * @param responseDelay Simulated generation time added to every chat response.
+     */
+    public static FakeLlmServer start(int port, Duration responseDelay) throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        FakeLlmServer fake = new FakeLlmServer(httpServer, responseDelay);
+        httpServer.createContext("/api/version", exchange -> fake.send(exchange, 200, "{\"version\":\"0.0.0-fake\"}"));
+        httpServer.createContext("/health", exchange -> fake.send(exchange, 200, "{\"status\":\"ok\"}"));
+        httpServer.createContext("/api/chat", exchange -> fake.handleChat(exchange, false));
+        httpServer.createContext("/v1/chat/completions", exchange -> fake.handleChat(exchange, true));
+        httpServer.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        httpServer.start();
+        return fake;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + port();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handleChat(HttpExchange exchange, boolean openAi) throws IOException {
+        JsonNode request;
+        int requestBytes;
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] bytes = body.readAllBytes();
+            requestBytes = bytes.length;
+            request = MAPPER.readTree(bytes);
+        }
+        if (!responseDelay.isZero()) {
+            try {
+                Thread.sleep(responseDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        JsonNode messages = request.path("messages");
+        JsonNode last = messages.size() > 0 ? messages.get(messages.size() - 1) : MAPPER.createObjectNode();
+        String role = last.path("role").asText();
+        JsonNode firstTool = request.path("tools").path(0).path("function");
+
+        String content;
+        ObjectNode toolCall = null;
+        if ("user".equals(role) && last.path("content").asText().toLowerCase().contains("tool") && !firstTool.isMissingNode()) {
+            content = "";
+            toolCall = MAPPER.createObjectNode();
+            toolCall.put("name", firstTool.path("name").asText());
+            toolCall.set("arguments", placeholderArguments(firstTool.path("parameters")));
+        } else if ("tool".equals(role)) {
+            String result = last.path("content").asText();
+            content = "The tool returned: " + result.substring(0, Math.min(result.length(), 80));
+        } else {
+            content = "<think>The user said hello; a short greeting is enough.</think>Hello! How can I help you today?";
+        }
+
+        int promptTokens = requestBytes / 4;
+        int completionTokens = Math.max(content.length() / 4, 1);
+        if (request.path("stream").asBoolean(false)) {
+            if (openAi) {
+                streamOpenAi(exchange, content, toolCall, promptTokens, completionTokens);
+            } else {
+                streamOllama(exchange, request.path("model").asText("fake"), content, toolCall, promptTokens, completionTokens);
+            }
+            return;
+        }
+        ObjectNode response = openAi
+                ? openAiResponse(content, toolCall, promptTokens, completionTokens)
+                : ollamaResponse(request.path("model").asText("fake"), content, toolCall, promptTokens, completionTokens);
+        send(exchange, 200, MAPPER.writeValueAsString(response));
+    }
+
+    private static ObjectNode placeholderArguments(JsonNode schema) {
+        ObjectNode arguments = MAPPER.createObjectNode();
+        JsonNode properties = schema.path("properties");
+        for (JsonNode required : schema.path("required")) {
+            String name = required.asText();
+            switch (properties.path(name).path("type").asText("string")) {
+                case "integer", "number" -> arguments.put(name, 100);
+                case "boolean" -> arguments.put(name, true);
+                case "array" -> arguments.putArray(name);
+                case "object" -> arguments.putObject(name);
+                default -> arguments.put(name, "sample text for " + name);
+            }
+        }
+        return arguments;
+    }
+
+    private static ObjectNode ollamaResponse(String model, String content, ObjectNode toolCall, int promptTokens, int completionTokens) {
+        ObjectNode response = MAPPER.createObjectNode();
+        response.put("model", model);
+        response.put("created_at", "2025-01-01T00:00:00Z");
+        ObjectNode message = response.putObject("message");
+        message.put("role", "assistant");
+        message.put("content", content);
+        if (toolCall != null) {
+            message.putArray("tool_calls").addObject().set("function", toolCall);
+        }
+        response.put("done", true);
+        response.put("prompt_eval_count", promptTokens);
+        response.put("eval_count", completionTokens);
+        response.put("done_reason", "stop");
+        return response;
+    }
+
+    private static ObjectNode openAiResponse(String content, ObjectNode toolCall, int promptTokens, int completionTokens) throws IOException {
+        ObjectNode response = MAPPER.createObjectNode();
+        response.put("id", "chatcmpl-fake");
+        response.put("object", "chat.completion");
+        response.put("created", System.currentTimeMillis() / 1000);
+        response.put("model", "fake");
+        ObjectNode choice = response.putArray("choices").addObject();
+        choice.put("index", 0);
+        ObjectNode message = choice.putObject("message");
+        message.put("role", "assistant");
+        message.put("content", content);
+        if (toolCall != null) {
+            ObjectNode call = message.putArray("tool_calls").addObject();
+            call.put("id", "call_0");
+            call.put("type", "function");
+            ObjectNode function = call.putObject("function");
+            function.put("name", toolCall.get("name").asText());
+            function.put("arguments", MAPPER.writeValueAsString(toolCall.get("arguments")));
+        }
+        choice.put("finish_reason", toolCall != null ? "tool_calls" : "stop");
+        ObjectNode usage = response.putObject("usage");
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", completionTokens);
+        usage.put("total_tokens", promptTokens + completionTokens);
+        return response;
+    }
+
+    private static void streamOllama(HttpExchange exchange, String model, String content, ObjectNode toolCall,
+                                     int promptTokens, int completionTokens) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < content.length(); i += CHUNK_CHARS) {
+                ObjectNode chunk = ollamaResponse(model, content.substring(i, Math.min(content.length(), i + CHUNK_CHARS)),
+                        null, promptTokens, completionTokens);
+                chunk.put("done", false);
+                chunk.remove(List.of("prompt_eval_count", "eval_count", "done_reason"));
+                writeLine(out, MAPPER.writeValueAsString(chunk) + "\n");
+            }
+            if (toolCall != null) {
+                ObjectNode chunk = ollamaResponse(model, "", toolCall, promptTokens, completionTokens);
+                chunk.put("done", false);
+                chunk.remove(List.of("prompt_eval_count", "eval_count", "done_reason"));
+                writeLine(out, MAPPER.writeValueAsString(chunk) + "\n");
+            }
+            writeLine(out, MAPPER.writeValueAsString(ollamaResponse(model, "", null, promptTokens, completionTokens)) + "\n");
+        }
+    }
+
+    private static void streamOpenAi(HttpExchange exchange, String content, ObjectNode toolCall,
+                                     int promptTokens, int completionTokens) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < content.length(); i += CHUNK_CHARS) {
+                ObjectNode delta = MAPPER.createObjectNode();
+                if (i == 0) delta.put("role", "assistant");
+                delta.put("content", content.substring(i, Math.min(content.length(), i + CHUNK_CHARS)));
+                writeEvent(out, openAiChunk(delta, null));
+            }
+            if (toolCall != null) {
+                // The name comes first, then the arguments JSON in two fragments
+                String arguments = MAPPER.writeValueAsString(toolCall.get("arguments"));
+                int split = arguments.length() / 2;
+                ObjectNode first = MAPPER.createObjectNode();
+                ObjectNode call = first.putArray("tool_calls").addObject();
+                call.put("index", 0);
+                call.put("id", "call_0");
+                call.put("type", "function");
+                call.putObject("function").put("name", toolCall.get("name").asText()).put("arguments", arguments.substring(0, split));
+                writeEvent(out, openAiChunk(first, null));
+                ObjectNode second = MAPPER.createObjectNode();
+                ObjectNode rest = second.putArray("tool_calls").addObject();
+                rest.put("index", 0);
+                rest.putObject("function").put("arguments", arguments.substring(split));
+                writeEvent(out, openAiChunk(second, null));
+            }
+            ObjectNode last = openAiChunk(MAPPER.createObjectNode(), toolCall != null ? "tool_calls" : "stop");
+            ObjectNode usage = last.putObject("usage");
+            usage.put("prompt_tokens", promptTokens);
+            usage.put("completion_tokens", completionTokens);
+            usage.put("total_tokens", promptTokens + completionTokens);
+            writeEvent(out, last);
+            writeLine(out, "data: [DONE]\n\n");
+        }
+    }
+
+    private static ObjectNode openAiChunk(ObjectNode delta, String finishReason) {
+        ObjectNode chunk = MAPPER.createObjectNode();
+        chunk.put("id", "chatcmpl-fake");
+        chunk.put("object", "chat.completion.chunk");
+        chunk.put("created", System.currentTimeMillis() / 1000);
+        chunk.put("model", "fake");
+        ObjectNode choice = chunk.putArray("choices").addObject();
+        choice.put("index", 0);
+        choice.set("delta", delta);
+        if (finishReason != null) {
+            choice.put("finish_reason", finishReason);
+        } else {
+            choice.putNull("finish_reason");
+        }
+        return chunk;
+    }
+
+    private static void writeEvent(OutputStream out, ObjectNode chunk) throws IOException {
+        writeLine(out, "data: " + MAPPER.writeValueAsString(chunk) + "\n\n");
+    }
+
+    private static void writeLine(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Runs the server standalone: {@code FakeLlmServer [port] [delayMillis]}.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 11434;
+        Duration delay = Duration.ofMillis(args.length > 1 ? Long.parseLong(args[1]) : 0);
+        FakeLlmServer server = start(port, delay);
+        System.err.println("Fake LLM server listening on " + server.baseUrl());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,191 @@
+package com.brunorozendo.mcphost.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A stand-in MCP server speaking JSON-RPC over stdio, used by the training, benchmark and load-test workloads.
+ * It offers a few tools, a resource and a prompt, and answers with deterministic results. Requests are handled one
+ * at a time, like most stdio servers. Protocol messages go to stdout; anything else must go to stderr.
+ * <p>
+ * Usage: {@code FakeMcpServer [--tool-latency-ms N] [--payload-chars N]}. The tool latency is added to every tool
+ * call; a payload size pads every tool result to at least that many characters.
+ */
+public class FakeMcpServer {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static long toolLatencyMillis;
+    private static int payloadChars;
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tool-latency-ms" -> toolLatencyMillis = Long.parseLong(args[++i]);
+                case "--payload-chars" -> payloadChars = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        PrintStream out = new PrintStream(System.out, false, StandardCharsets.UTF_8);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isBlank()) continue;
+            JsonNode request = MAPPER.readTree(line);
+            if (!request.has("id") || !request.has("method")) {
+                continue; // Notifications and responses need no reply
+            }
+            ObjectNode response = MAPPER.createObjectNode();
+            response.put("jsonrpc", "2.0");
+            response.set("id", request.get("id"));
+            try {
+                response.set("result", handle(request.get("method").asText(), request.path("params")));
+            } catch (IllegalArgumentException e) {
+                ObjectNode error = response.putObject("error");
+                error.put("code", -32601);
+                error.put("message", e.getMessage());
+            }
+            out.println(MAPPER.writeValueAsString(response));
+            out.flush();
+        }
+    }
+
+    private static JsonNode handle(String method, JsonNode params) {
+        return switch (method) {
+            case "initialize" -> initialize(params);
+            case "ping" -> MAPPER.createObjectNode();
+            case "tools/list" -> listTools();
+            case "tools/call" -> callTool(params);
+            case "resources/list" -> listResources();
+            case "resources/read" -> readResource(params);
+            case "prompts/list" -> listPrompts();
+            case "prompts/get" -> getPrompt(params);
+            default -> throw new IllegalArgumentException("Method not found: " + method);
+        };
+    }
+
+    private static JsonNode initialize(JsonNode params) {
+        ObjectNode result = MAPPER.createObjectNode();
+        result.put("protocolVersion", params.path("protocolVersion").asText("2024-11-05"));
+        ObjectNode capabilities = result.putObject("capabilities");
+        capabilities.putObject("tools").put("listChanged", true);
+        capabilities.putObject("resources").put("listChanged", true);
+        capabilities.putObject("prompts").put("listChanged", true);
+        ObjectNode serverInfo = result.putObject("serverInfo");
+        serverInfo.put("name", "fake-mcp-server");
+        serverInfo.put("version", "1.0");
+        return result;
+    }
+
+    private static JsonNode listTools() {
+        ObjectNode result = MAPPER.createObjectNode();
+        ArrayNode tools = result.putArray("tools");
+        tools.add(tool("echo", "Returns the given text unchanged.", "text", "string", "The text to echo"));
+        tools.add(tool("word_count", "Counts the words in a text.", "text", "string", "The text to count"));
+        tools.add(tool("generate_report", "Generates a report of the requested size in characters.", "size", "integer", "Report size in characters"));
+
+        ObjectNode search = tool("search_files", "Searches files by name and content.", "query", "string", "What to search for");
+        ObjectNode filters = ((ObjectNode) search.get("inputSchema").get("properties")).putObject("filters");
+        filters.put("type", "object");
+        filters.put("description", "Optional filters");
+        ObjectNode filterProperties = filters.putObject("properties");
+        filterProperties.putObject("extension").put("type", "string");
+        filterProperties.putObject("maxResults").put("type", "integer");
+        tools.add(search);
+        return result;
+    }
+
+    private static ObjectNode tool(String name, String description, String parameter, String type, String parameterDescription) {
+        ObjectNode tool = MAPPER.createObjectNode();
+        tool.put("name", name);
+        tool.put("description", description);
+        ObjectNode schema = tool.putObject("inputSchema");
+        schema.put("type", "object");
+        ObjectNode property = schema.putObject("properties").putObject(parameter);
+        property.put("type", type);
+        property.put("description", parameterDescription);
+        schema.putArray("required").add(parameter);
+        return tool;
+    }
+
+    private static JsonNode callTool(JsonNode params) {
+        String name = params.path("name").asText();
+        JsonNode arguments = params.path("arguments");
+        String text = switch (name) {
+            case "echo" -> arguments.path("text").asText();
+            case "word_count" -> String.valueOf(arguments.path("text").asText().split("\\s+").length);
+            case "generate_report" -> "report line\n".repeat(Math.max(arguments.path("size").asInt(1000), 12) / 12);
+            case "search_files" -> "src/Main.java\nsrc/Config.java\nREADME.md";
+            default -> throw new IllegalArgumentException("Unknown tool: " + name);
+        };
+        if (toolLatencyMillis > 0) {
+            try {
+                Thread.sleep(toolLatencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (text.length() < payloadChars) {
+            text = text + "\n" + "payload ".repeat((payloadChars - text.length()) / 8 + 1);
+        }
+        return textResult("content", text);
+    }
+
+    private static JsonNode listResources() {
+        ObjectNode result = MAPPER.createObjectNode();
+        ObjectNode resource = result.putArray("resources").addObject();
+        resource.put("uri", "fake://readme");
+        resource.put("name", "readme");
+        resource.put("description", "A short project description");
+        resource.put("mimeType", "text/plain");
+        return result;
+    }
+
+    private static JsonNode readResource(JsonNode params) {
+        ObjectNode result = MAPPER.createObjectNode();
+        ObjectNode contents = result.putArray("contents").addObject();
+        contents.put("uri", params.path("uri").asText());
+        contents.put("mimeType", "text/plain");
+        contents.put("text", "This project connects LLMs to MCP servers.");
+        return result;
+    }
+
+    private static JsonNode listPrompts() {
+        ObjectNode result = MAPPER.createObjectNode();
+        ObjectNode prompt = result.putArray("prompts").addObject();
+        prompt.put("name", "summarize");
+        prompt.put("description", "Summarizes a topic");
+        ObjectNode argument = prompt.putArray("arguments").addObject();
+        argument.put("name", "topic");
+        argument.put("description", "The topic to summarize");
+        argument.put("required", true);
+        return result;
+    }
+
+    private static JsonNode getPrompt(JsonNode params) {
+        ObjectNode result = MAPPER.createObjectNode();
+        result.put("description", "Summarizes a topic");
+        ObjectNode message = result.putArray("messages").addObject();
+        message.put("role", "user");
+        ObjectNode content = message.putObject("content");
+        content.put("type", "text");
+        content.put("text", "Summarize " + params.path("arguments").path("topic").asText("the project") + " in one paragraph.");
+        return result;
+    }
+
+    private static JsonNode textResult(String field, String text) {
+        ObjectNode result = MAPPER.createObjectNode();
+        ObjectNode content = result.putArray(field).addObject();
+        content.put("type", "text");
+        content.put("text", text);
+        result.put("isError", false);
+        return result;
+    }
+}
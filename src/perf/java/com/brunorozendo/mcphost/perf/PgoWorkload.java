@@ -0,0 +1,57 @@
+package com.brunorozendo.mcphost.perf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives an instrumented native executable (built with {@code --pgo-instrument}) through scripted sessions with
+ * every LLM provider format, writing one profile per provider for the optimized rebuild.
+ * <p>
+ * Usage: {@code PgoWorkload [--profiles-dir DIR] [--workdir DIR] -- <instrumented executable>}
+ */
+public class PgoWorkload {
+
+    private static final List<String> PROVIDERS = List.of("ollama", "llama-server", "hf");
+
+    public static void main(String[] args) throws Exception {
+        Path profilesDir = Path.of("build", "pgo", "profiles");
+        Path workDir = Path.of("build", "pgo", "workload");
+        List<String> command = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--profiles-dir" -> profilesDir = Path.of(args[++i]);
+                case "--workdir" -> workDir = Path.of(args[++i]);
+                case "--" -> {
+                    command.addAll(List.of(args).subList(i + 1, args.length));
+                    i = args.length;
+                }
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        if (command.isEmpty()) {
+            throw new IllegalArgumentException("Usage: PgoWorkload [--profiles-dir DIR] [--workdir DIR] -- <instrumented executable>");
+        }
+        Files.createDirectories(profilesDir);
+
+        try (FakeLlmServer llmServer = FakeLlmServer.start(0, Duration.ZERO)) {
+            for (String provider : PROVIDERS) {
+                Path profile = profilesDir.toAbsolutePath().resolve(provider + ".iprof");
+                List<String> instrumented = new ArrayList<>(command);
+                instrumented.add("-XX:ProfilesDumpFile=" + profile);
+
+                ScriptedSession.Result result = ScriptedSession.run(instrumented, provider, llmServer, workDir.resolve(provider),
+                        ScriptedSession.EXTENDED_SCRIPT, false);
+                if (!result.succeeded() || !Files.isRegularFile(profile)) {
+                    System.err.printf("Profiling session for %s failed (exit code %d, profile written: %s)%n",
+                            provider, result.exitCode(), Files.isRegularFile(profile));
+                    System.exit(1);
+                }
+                System.out.printf("Collected %s (%d KB) in %.0f ms%n", profile.getFileName(), Files.size(profile) / 1024, result.totalMillis());
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.brunorozendo.mcphost.perf;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Launches mcphost as a child process, wired to a {@link FakeLlmServer} and a {@link FakeMcpServer}, feeds it a
+ * scripted conversation on stdin and measures how long it took until the interactive prompt appeared.
+ */
+public class ScriptedSession {
+
+    /**
+     * A greeting, a turn that makes the fake LLM call a tool, and exit.
+     */
+    public static final List<String> DEFAULT_SCRIPT = List.of("hello", "please use a tool", "exit");
+
+    /**
+     * A longer conversation for profile collection: several plain and tool-calling turns.
+     */
+    public static final List<String> EXTENDED_SCRIPT = List.of(
+            "hello", "please use a tool", "what did that return?", "use a tool again with different input",
+            "summarize the conversation so far", "one more tool call please", "thanks", "exit");
+
+    private static final String READY_MARKER = "Interactive chat started";
+    private static final long TIMEOUT_SECONDS = 120;
+
+    /**
+     * The outcome of one session. Times are in milliseconds since the process was launched; the peak resident
+     * set size is in KB, or -1 if it could not be sampled on this platform.
+     */
+    public record Result(int exitCode, double timeToPromptMillis, double totalMillis, long peakRssKb) {
+        public boolean succeeded() {
+            return exitCode == 0 && timeToPromptMillis >= 0;
+        }
+    }
+
+    private ScriptedSession() {
+    }
+
+    /**
+     * Runs one session.
+     *
+     * @param hostCommand The command that starts mcphost, without its arguments. A leading {@code java} is
+     *                    replaced by the JVM running this workload.
+     * @param provider    The provider prefix for {@code --model} (ollama, llama-server, hf).
+     * @param llmServer   The fake LLM server to point mcphost at.
+     * @param workDir     Where the MCP configuration and logs are written.
+     * @param script      The lines typed into the session.
+     * @param echoOutput  Whether to copy the session's output to stdout.
+     */
+    public static Result run(List<String> hostCommand, String provider, FakeLlmServer llmServer, Path workDir,
+                             List<String> script, boolean echoOutput) throws IOException, InterruptedException {
+        Files.createDirectories(workDir);
+        Path config = writeMcpConfig(workDir);
+
+        List<String> command = new ArrayList<>(hostCommand);
+        if (!command.isEmpty() && command.get(0).equals("java")) {
+            command.set(0, currentJava());
+        }
+        command.addAll(List.of(
+                "--model", provider + ":fake",
+                "--base-url", llmServer.baseUrl(),
+                "--config", config.toString(),
+                "--no-journal"));
+
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(workDir.toFile())
+                .redirectErrorStream(true);
+        builder.environment().put("LOG_DIR", workDir.resolve("logs").toString());
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        RssSampler rssSampler = new RssSampler(process.toHandle());
+        rssSampler.start();
+        try (OutputStream stdin = process.getOutputStream()) {
+            stdin.write((String.join("\n", script) + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // The host exited before reading its input; the exit code tells why
+        }
+
+        double timeToPrompt = -1;
+        try (BufferedReader stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = stdout.readLine()) != null) {
+                if (timeToPrompt < 0 && line.contains(READY_MARKER)) {
+                    timeToPrompt = (System.nanoTime() - start) / 1_000_000.0;
+                }
+                if (echoOutput) {
+                    System.out.println(line);
+                }
+            }
+        }
+
+        boolean exited = process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        double total = (System.nanoTime() - start) / 1_000_000.0;
+        rssSampler.interrupt();
+        if (!exited) {
+            process.destroyForcibly();
+            return new Result(-1, timeToPrompt, total, rssSampler.peakKb());
+        }
+        return new Result(process.exitValue(), timeToPrompt, total, rssSampler.peakKb());
+    }
+
+    /**
+     * Polls the resident set size of a process while it runs and keeps the maximum. Uses /proc on Linux
+     * (whose VmHWM already is the peak) and {@code ps} elsewhere.
+     */
+    private static final class RssSampler extends Thread {
+        private static final Path PROC = Path.of("/proc");
+
+        private final ProcessHandle process;
+        private volatile long peakKb = -1;
+
+        RssSampler(ProcessHandle process) {
+            this.process = process;
+            setDaemon(true);
+            setName("rss-sampler-" + process.pid());
+        }
+
+        long peakKb() {
+            return peakKb;
+        }
+
+        @Override
+        public void run() {
+            while (process.isAlive() && !isInterrupted()) {
+                long sample = Files.isDirectory(PROC) ? sampleProc() : samplePs();
+                if (sample > peakKb) {
+                    peakKb = sample;
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private long sampleProc() {
+            try {
+                for (String line : Files.readAllLines(PROC.resolve(process.pid() + "/status"))) {
+                    if (line.startsWith("VmHWM:")) {
+                        return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // The process exited between the liveness check and the read
+            }
+            return -1;
+        }
+
+        private long samplePs() {
+            try {
+                Process ps = new ProcessBuilder("ps", "-o", "rss=", "-p", String.valueOf(process.pid())).start();
+                String output = new String(ps.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+                ps.waitFor();
+                return output.isEmpty() ? -1 : Long.parseLong(output);
+            } catch (IOException | NumberFormatException e) {
+                return -1;
+            } catch (InterruptedException e) {
+                interrupt();
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Writes an mcp.json that starts a {@link FakeMcpServer} with the JVM and classpath of this workload.
+     */
+    static Path writeMcpConfig(Path workDir) throws IOException {
+        String json = """
+                {
+                  "mcpServers": {
+                    "fake": {
+                      "command": %s,
+                      "args": ["-cp", %s, "%s"]
+                    }
+                  }
+                }
+                """.formatted(quote(currentJava()), quote(System.getProperty("java.class.path")), FakeMcpServer.class.getName());
+        Path config = workDir.resolve("mcp.json");
+        Files.writeString(config, json);
+        return config;
+    }
+
+    static String currentJava() {
+        return ProcessHandle.current().info().command().orElse("java");
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,201 @@
+package com.brunorozendo.mcphost.perf;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Compares the startup of several ways of launching mcphost (plain JVM, AppCDS, native image, ...) by running the
+ * same scripted session with each of them several times. For each variant it reports time to the first prompt,
+ * peak RSS and the size of the launched artifact (jar or executable).
+ * <p>
+ * With {@code --baseline FILE} the results are checked against a recorded baseline and the run fails when a
+ * metric regressed by more than its tolerance; {@code --update-baseline} records the current results instead.
+ * <p>
+ * Usage: {@code StartupBenchmark [--runs N] [--workdir DIR] [--report FILE] [--baseline FILE [--update-baseline]]
+ * --variant NAME <command...> [--variant NAME <command...>]...}
+ */
+public class StartupBenchmark {
+
+    // Allowed relative growth per metric before the gate fails; a baseline file can override them
+    private static final Map<String, Double> DEFAULT_TOLERANCES = Map.of(
+            "timeToPromptMillis", 0.25,
+            "peakRssKb", 0.15,
+            "artifactBytes", 0.05);
+
+    public static void main(String[] args) throws Exception {
+        int runs = 5;
+        Path workDir = Path.of("build", "startup-benchmark");
+        Path reportFile = null;
+        Path baselineFile = null;
+        boolean updateBaseline = false;
+        Map<String, List<String>> variants = new LinkedHashMap<>();
+
+        List<String> current = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--variant")) {
+                current = new ArrayList<>();
+                variants.put(args[++i], current);
+            } else if (current != null) {
+                current.add(args[i]);
+            } else {
+                switch (args[i]) {
+                    case "--runs" -> runs = Integer.parseInt(args[++i]);
+                    case "--workdir" -> workDir = Path.of(args[++i]);
+                    case "--report" -> reportFile = Path.of(args[++i]);
+                    case "--baseline" -> baselineFile = Path.of(args[++i]);
+                    case "--update-baseline" -> updateBaseline = true;
+                    default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+                }
+            }
+        }
+        if (variants.isEmpty()) {
+            throw new IllegalArgumentException("At least one --variant NAME <command...> is required");
+        }
+
+        Properties results = new Properties();
+        boolean allSucceeded = true;
+        System.out.printf("%-10s %5s %10s %10s %11s %11s %13s%n",
+                "variant", "runs", "min ms", "median ms", "session ms", "peak RSS MB", "artifact MB");
+        try (FakeLlmServer llmServer = FakeLlmServer.start(0, Duration.ZERO)) {
+            for (Map.Entry<String, List<String>> variant : variants.entrySet()) {
+                String name = variant.getKey();
+                Path variantDir = workDir.resolve(name);
+                // One unmeasured run warms the OS file cache and lets auto-created archives be written
+                ScriptedSession.run(variant.getValue(), "ollama", llmServer, variantDir, ScriptedSession.DEFAULT_SCRIPT, false);
+
+                List<Double> toPrompt = new ArrayList<>();
+                List<Double> total = new ArrayList<>();
+                List<Double> rss = new ArrayList<>();
+                for (int run = 0; run < runs; run++) {
+                    ScriptedSession.Result result = ScriptedSession.run(variant.getValue(), "ollama", llmServer, variantDir,
+                            ScriptedSession.DEFAULT_SCRIPT, false);
+                    if (!result.succeeded()) {
+                        System.out.printf("%-10s failed with exit code %d%n", name, result.exitCode());
+                        allSucceeded = false;
+                        break;
+                    }
+                    toPrompt.add(result.timeToPromptMillis());
+                    total.add(result.totalMillis());
+                    if (result.peakRssKb() > 0) {
+                        rss.add((double) result.peakRssKb());
+                    }
+                }
+                if (toPrompt.isEmpty()) {
+                    continue;
+                }
+
+                long artifactBytes = artifactSize(variant.getValue());
+                double medianRss = rss.isEmpty() ? -1 : median(rss);
+                results.setProperty(name + ".timeToPromptMillis", String.format("%.0f", median(toPrompt)));
+                if (medianRss > 0) results.setProperty(name + ".peakRssKb", String.format("%.0f", medianRss));
+                if (artifactBytes > 0) results.setProperty(name + ".artifactBytes", String.valueOf(artifactBytes));
+
+                System.out.printf("%-10s %5d %10.0f %10.0f %11.0f %11s %13s%n", name, toPrompt.size(),
+                        toPrompt.stream().mapToDouble(Double::doubleValue).min().orElse(0), median(toPrompt), median(total),
+                        medianRss > 0 ? String.format("%.1f", medianRss / 1024) : "n/a",
+                        artifactBytes > 0 ? String.format("%.1f", artifactBytes / 1024.0 / 1024.0) : "n/a");
+            }
+        }
+
+        if (reportFile != null) {
+            store(results, reportFile, "Startup benchmark results");
+        }
+        if (baselineFile != null) {
+            if (updateBaseline) {
+                keepTolerances(results, baselineFile);
+                store(results, baselineFile, "Startup baseline; the gate fails when a metric grows beyond tolerance.<metric>");
+                System.out.println("Baseline written to " + baselineFile);
+            } else if (!checkBaseline(results, baselineFile)) {
+                allSucceeded = false;
+            }
+        }
+        if (!allSucceeded) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares the results with the baseline. Metrics missing on either side are skipped.
+     *
+     * @return Whether no metric regressed beyond its tolerance.
+     */
+    static boolean checkBaseline(Properties results, Path baselineFile) throws IOException {
+        if (!Files.isRegularFile(baselineFile)) {
+            System.out.println("No startup baseline at " + baselineFile + "; record one with --update-baseline.");
+            return true;
+        }
+        Properties baseline = new Properties();
+        try (Reader reader = Files.newBufferedReader(baselineFile)) {
+            baseline.load(reader);
+        }
+
+        boolean passed = true;
+        for (String key : results.stringPropertyNames()) {
+            if (key.startsWith("tolerance.")) continue;
+            String expected = baseline.getProperty(key);
+            if (expected == null) continue;
+            String metric = key.substring(key.indexOf('.') + 1);
+            double tolerance = Double.parseDouble(baseline.getProperty("tolerance." + metric,
+                    String.valueOf(DEFAULT_TOLERANCES.getOrDefault(metric, 0.10))));
+            double actual = Double.parseDouble(results.getProperty(key));
+            double limit = Double.parseDouble(expected) * (1 + tolerance);
+            if (actual > limit) {
+                System.out.printf("REGRESSION %s: %.0f exceeds baseline %s by more than %.0f%%%n", key, actual, expected, tolerance * 100);
+                passed = false;
+            } else {
+                System.out.printf("ok         %s: %.0f (baseline %s)%n", key, actual, expected);
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * Carries tolerance overrides from an existing baseline over into the new one.
+     */
+    private static void keepTolerances(Properties results, Path baselineFile) throws IOException {
+        if (!Files.isRegularFile(baselineFile)) return;
+        Properties previous = new Properties();
+        try (Reader reader = Files.newBufferedReader(baselineFile)) {
+            previous.load(reader);
+        }
+        for (String key : previous.stringPropertyNames()) {
+            if (key.startsWith("tolerance.")) {
+                results.setProperty(key, previous.getProperty(key));
+            }
+        }
+    }
+
+    /**
+     * The size of what the command launches: the jar after {@code -jar}, or else the executable itself.
+     */
+    static long artifactSize(List<String> command) throws IOException {
+        int jarIndex = command.indexOf("-jar");
+        Path artifact = Path.of(jarIndex >= 0 && jarIndex + 1 < command.size() ? command.get(jarIndex + 1) : command.get(0));
+        return Files.isRegularFile(artifact) ? Files.size(artifact) : -1;
+    }
+
+    private static void store(Properties properties, Path file, String comment) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            properties.store(writer, comment);
+        }
+    }
+
+    static double median(List<Double> values) {
+        List<Double> sorted = new ArrayList<>(values);
+        sorted.sort(Double::compare);
+        int middle = sorted.size() / 2;
+        return sorted.size() % 2 == 1 ? sorted.get(middle) : (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+    }
+}
@@ -0,0 +1,45 @@
+package com.brunorozendo.mcphost.perf;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs one scripted session of mcphost against stand-in servers, so that a JVM flag such as
+ * {@code -XX:ArchiveClassesAtExit} can record what a typical session loads.
+ * <p>
+ * Usage: {@code TrainingRun [--provider ollama|llama-server|hf] [--workdir DIR] -- <command that starts mcphost>}
+ */
+public class TrainingRun {
+
+    public static void main(String[] args) throws Exception {
+        String provider = "ollama";
+        Path workDir = Path.of("build", "training");
+        List<String> command = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--provider" -> provider = args[++i];
+                case "--workdir" -> workDir = Path.of(args[++i]);
+                case "--" -> {
+                    command.addAll(List.of(args).subList(i + 1, args.length));
+                    i = args.length;
+                }
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        if (command.isEmpty()) {
+            throw new IllegalArgumentException("Usage: TrainingRun [--provider P] [--workdir DIR] -- <command>");
+        }
+
+        try (FakeLlmServer llmServer = FakeLlmServer.start(0, Duration.ZERO)) {
+            ScriptedSession.Result result = ScriptedSession.run(command, provider, llmServer, workDir, ScriptedSession.DEFAULT_SCRIPT, true);
+            System.err.printf("Training session finished with exit code %d: prompt after %.0f ms, total %.0f ms%n",
+                    result.exitCode(), result.timeToPromptMillis(), result.totalMillis());
+            if (!result.succeeded()) {
+                System.exit(1);
+            }
+        }
+    }
+}